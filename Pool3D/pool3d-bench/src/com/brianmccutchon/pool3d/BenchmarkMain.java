@@ -0,0 +1,34 @@
+package com.brianmccutchon.pool3d;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always enabled, so every result
+ * comes with its allocation rate ({@code gc.alloc.rate.norm} is the number
+ * of bytes allocated per operation). The arguments are the usual JMH
+ * command line options, such as a regular expression selecting the
+ * benchmarks to run.
+ *
+ * @author Brian McCutchon
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		Options opts = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		try {
+			new Runner(opts).run();
+		} catch (RunnerException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
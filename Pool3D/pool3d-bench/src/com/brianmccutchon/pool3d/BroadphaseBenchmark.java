@@ -0,0 +1,68 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the broadphases on a full frame of a box of moving balls. The
+ * table grows with the number of balls so that the density stays the same.
+ *
+ * @author Brian McCutchon
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadphaseBenchmark {
+
+	@Param({ "brute", "grid", "sap" })
+	public String broadphase;
+
+	@Param({ "16", "256", "2048" })
+	public int balls;
+
+	private PhysicsWorld world;
+
+	@Setup
+	public void setUp() {
+		// About one ball per 64 cubic units, as on the default table
+		double side = 4 * Math.cbrt(balls);
+		world = new PhysicsWorld(balls, side, side, side);
+		world.setBroadphase(
+				broadphase.equals("grid") ? new GridBroadphase() :
+				broadphase.equals("sap")  ? new SweepAndPruneBroadphase() :
+				new BruteForceBroadphase());
+
+		Random rand = new Random(42);
+		double half = side/2 - PoolBall.RADIUS;
+		for (int i = 0; i < balls; i++) {
+			world.setPosition(i, (rand.nextDouble()*2 - 1) * half,
+					(rand.nextDouble()*2 - 1) * half,
+					(rand.nextDouble()*2 - 1) * half);
+		}
+	}
+
+	/**
+	 * Keeps the balls moving. Air resistance would otherwise bring them to
+	 * rest during a long run, making later frames cheaper than earlier ones.
+	 */
+	@Setup(Level.Iteration)
+	public void shake() {
+		Random rand = new Random(7);
+		for (int i = 0; i < balls; i++) {
+			world.setVelocity(i, rand.nextGaussian() * 0.2,
+					rand.nextGaussian() * 0.2, rand.nextGaussian() * 0.2);
+		}
+	}
+
+	@Benchmark
+	public PhysicsWorld step() {
+		world.step();
+		return world;
+	}
+
+}
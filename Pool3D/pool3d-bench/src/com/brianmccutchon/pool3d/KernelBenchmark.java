@@ -0,0 +1,174 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the step kernels on the per-ball work of a step: moving every
+ * ball of a large table and bouncing those at the walls. "loaded" is the
+ * kernel that {@link StepKernel#load()} picks, which is the SIMD one when
+ * the JVM has the Vector API.
+ *
+ * <p>The "awake" benchmarks compare the two ways that a world moves a table
+ * on which only some of the balls are awake: the kernel over every ball,
+ * or the scalar code over the awake balls alone. They are what
+ * {@link PhysicsWorld#DENSE_SHARE} was chosen from.</p>
+ *
+ * @author Brian McCutchon
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class KernelBenchmark {
+
+	@Param({ "scalar", "loaded" })
+	public String kernel;
+
+	@Param({ "1024", "100000" })
+	public int balls;
+
+	private StepKernel k;
+
+	private double[] px, py, pz, vx, vy, vz;
+
+	private double[] vx0, vy0, vz0;
+
+	private int[] restSteps;
+
+	private double side;
+
+	/** Ignores bounces. **/
+	private final StepKernel.BounceCallback ignore = (i, axis, v) -> { };
+
+	@Setup
+	public void setUp() {
+		k = kernel.equals("scalar") ? new ScalarKernel() : StepKernel.load();
+		side = 4 * Math.cbrt(balls);
+		SplittableRandom rand = new SplittableRandom(42);
+		px = new double[balls];
+		py = new double[balls];
+		pz = new double[balls];
+		vx0 = new double[balls];
+		vy0 = new double[balls];
+		vz0 = new double[balls];
+		for (int i = 0; i < balls; i++) {
+			px[i] = (rand.nextDouble() - 0.5) * (side - 2);
+			py[i] = (rand.nextDouble() - 0.5) * (side - 2);
+			pz[i] = (rand.nextDouble() - 0.5) * (side - 2);
+			vx0[i] = rand.nextDouble() - 0.5;
+			vy0[i] = rand.nextDouble() - 0.5;
+			vz0[i] = rand.nextDouble() - 0.5;
+		}
+		restSteps = new int[balls];
+	}
+
+	@Setup(Level.Iteration)
+	public void shake() {
+		vx = vx0.clone();
+		vy = vy0.clone();
+		vz = vz0.clone();
+	}
+
+	/**
+	 * Copies the starting velocities back, which air resistance would
+	 * otherwise bring to rest after a few hundred calls.
+	 */
+	private void restore() {
+		System.arraycopy(vx0, 0, vx, 0, balls);
+		System.arraycopy(vy0, 0, vy, 0, balls);
+		System.arraycopy(vz0, 0, vz, 0, balls);
+	}
+
+	/** Only restores the velocities, as a baseline for {@link #integrate()}. **/
+	@Benchmark
+	public double[] restoreOnly() {
+		restore();
+		return vz;
+	}
+
+	@Benchmark
+	public boolean integrate() {
+		restore();
+		return k.integrate(px, py, pz, vx, vy, vz, restSteps, 1, 0, balls);
+	}
+
+	/** A table on which only some of the balls are moving. **/
+	@State(Scope.Thread)
+	public static class Awake {
+
+		/** The percentage of the balls that are awake. **/
+		@Param({ "25", "50", "75" })
+		public int percent;
+
+		/** The awake balls, in no particular order. **/
+		int[] awake;
+
+		/** The starting velocities, which are 0 for the sleeping balls. **/
+		double[] vx0, vy0, vz0;
+
+		@Setup
+		public void setUp(KernelBenchmark b) {
+			int n = b.balls;
+			int[] order = new int[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			SplittableRandom rand = new SplittableRandom(7);
+			for (int i = n - 1; i > 0; i--) {
+				int j = rand.nextInt(i + 1);
+				int tmp = order[i];
+				order[i] = order[j];
+				order[j] = tmp;
+			}
+			awake = Arrays.copyOf(order, (int) ((long) n * percent / 100));
+			vx0 = new double[n];
+			vy0 = new double[n];
+			vz0 = new double[n];
+			for (int i : awake) {
+				vx0[i] = b.vx0[i];
+				vy0[i] = b.vy0[i];
+				vz0[i] = b.vz0[i];
+			}
+		}
+
+		void restore(KernelBenchmark b) {
+			System.arraycopy(vx0, 0, b.vx, 0, b.balls);
+			System.arraycopy(vy0, 0, b.vy, 0, b.balls);
+			System.arraycopy(vz0, 0, b.vz, 0, b.balls);
+		}
+	}
+
+	/** Moves every ball with the kernel, though only some are awake. **/
+	@Benchmark
+	public boolean integrateAwakeDense(Awake a) {
+		a.restore(this);
+		return k.integrate(px, py, pz, vx, vy, vz, restSteps, 1, 0, balls);
+	}
+
+	/** Moves only the awake balls, one at a time. **/
+	@Benchmark
+	public boolean integrateAwakeSparse(Awake a) {
+		a.restore(this);
+		boolean moving = false;
+		for (int i : a.awake) {
+			moving |= ScalarKernel.integrate(px, py, pz, vx, vy, vz,
+					restSteps, 1, i);
+		}
+		return moving;
+	}
+
+	@Benchmark
+	public double[] reflect() {
+		k.reflect(px, vx, side, 0, 0, balls, ignore);
+		k.reflect(py, vy, side, 1, 0, balls, ignore);
+		k.reflect(pz, vz, side, 2, 0, balls, ignore);
+		return vz;
+	}
+
+}
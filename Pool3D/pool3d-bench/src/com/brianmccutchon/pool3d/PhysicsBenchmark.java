@@ -0,0 +1,97 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Microbenchmarks for the collision kernels in {@link Physics} and the
+ * per-ball accessors in {@link PoolBall}.
+ *
+ * @author Brian McCutchon
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PhysicsBenchmark {
+
+	/** Two overlapping balls, off axis so no rotation is trivial. **/
+	private PoolBall ball1, ball2;
+
+	private double[] center1, center2, velocity;
+
+	private double[][] rotMat;
+
+	private final double[] flatMat = new double[9];
+
+	/** Varied by {@link #setTranslation()} so it is not a constant store. **/
+	private double offset;
+
+	@Setup
+	public void setUp() {
+		PhysicsWorld world = new PhysicsWorld(2);
+		PoolBall[] rack = PoolBall.rack();
+		ball1 = new PoolBall(world, 0, rack[1].hue, rack[1].type, 1);
+		ball2 = new PoolBall(world, 1, rack[2].hue, rack[2].type, 2);
+		ball1.setTranslation(0, 0, 0);
+		ball2.setTranslation(1.5, 0.6, -0.4);
+		center1  = ball1.getTranslation();
+		center2  = ball2.getTranslation();
+		velocity = new double[] { 0.7, -0.2, 0.1 };
+		rotMat   = Physics.findCollisionRotationMat(center1, center2);
+	}
+
+	@Benchmark
+	public PoolBall handleCollision() {
+		ball1.setVelocity(0.7, -0.2, 0.1);
+		ball2.setVelocity(-0.3, 0, 0.05);
+		Physics.handleCollision(ball1, ball2);
+		return ball1;
+	}
+
+	/** The original formulation, rotating into the collision frame. **/
+	@Benchmark
+	public PoolBall handleCollisionRotated() {
+		ball1.setVelocity(0.7, -0.2, 0.1);
+		ball2.setVelocity(-0.3, 0, 0.05);
+		Physics.handleCollisionRotated(ball1.world, ball1.slot,
+				ball2.world, ball2.slot, flatMat);
+		return ball1;
+	}
+
+	/** The allocating form, returning a new 3x3 matrix. **/
+	@Benchmark
+	public double[][] findCollisionRotationMat() {
+		return Physics.findCollisionRotationMat(center1, center2);
+	}
+
+	/** The form used by the simulation, writing into scratch space. **/
+	@Benchmark
+	public double[] findCollisionRotationMatInto() {
+		Physics.findCollisionRotationMat(center2[0] - center1[0],
+				center2[1] - center1[1], center2[2] - center1[2], flatMat);
+		return flatMat;
+	}
+
+	@Benchmark
+	public double[] rotateVec() {
+		Physics.rotateVec(velocity, rotMat);
+		return velocity;
+	}
+
+	@Benchmark
+	public boolean intersects() {
+		return ball1.intersects(ball2);
+	}
+
+	@Benchmark
+	public PoolBall setTranslation() {
+		offset = offset > 1 ? 0 : offset + 0.125;
+		ball2.setTranslation(1.5 + offset, 0.6, -0.4);
+		return ball2;
+	}
+
+}
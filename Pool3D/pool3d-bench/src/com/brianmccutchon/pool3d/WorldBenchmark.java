@@ -0,0 +1,107 @@
+package com.brianmccutchon.pool3d;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures a full frame of the standard rack during the break, when many of
+ * the balls are moving and colliding. The state at the start of each frame
+ * is restored from a copy, so every invocation does the same work.
+ *
+ * @author Brian McCutchon
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorldBenchmark {
+
+	/** The number of frames between the shot and the captured state. **/
+	@Param({ "12" })
+	public int framesAfterShot;
+
+	private PhysicsWorld world;
+
+	private double[] px, py, pz, vx, vy, vz;
+
+	/** A racked table on which only the cue ball is moving. **/
+	private PhysicsWorld resting;
+
+	/** Holds a {@link WorldSnapshot} of {@link #world}. **/
+	private ByteBuffer snapshot;
+
+	@Setup
+	public void setUp() {
+		world = new PhysicsWorld(16);
+		PoolBall.rack(world);
+		world.setVelocity(0, -1, 0.02, -0.01);
+		for (int i = 0; i < framesAfterShot; i++) {
+			world.step();
+		}
+		px = world.px.clone();
+		py = world.py.clone();
+		pz = world.pz.clone();
+		vx = world.vx.clone();
+		vy = world.vy.clone();
+		vz = world.vz.clone();
+
+		snapshot = ByteBuffer.allocateDirect(WorldSnapshot.bytes(16));
+
+		resting = new PhysicsWorld(16);
+		PoolBall.rack(resting);
+		for (int i = 0; i < PhysicsWorld.SLEEP_STEPS; i++) {
+			resting.step();
+		}
+	}
+
+	/** Copies the captured state back into the world. **/
+	private void restore() {
+		int n = world.size();
+		System.arraycopy(px, 0, world.px, 0, n);
+		System.arraycopy(py, 0, world.py, 0, n);
+		System.arraycopy(pz, 0, world.pz, 0, n);
+		System.arraycopy(vx, 0, world.vx, 0, n);
+		System.arraycopy(vy, 0, world.vy, 0, n);
+		System.arraycopy(vz, 0, world.vz, 0, n);
+		// The arrays were written directly
+		world.wakeAll();
+	}
+
+	/** Only restores the state, as a baseline for {@link #step()}. **/
+	@Benchmark
+	public PhysicsWorld restoreOnly() {
+		restore();
+		return world;
+	}
+
+	@Benchmark
+	public PhysicsWorld step() {
+		restore();
+		world.step();
+		return world;
+	}
+
+	/** Saves and restores a whole snapshot of the world. **/
+	@Benchmark
+	public PhysicsWorld snapshot() {
+		snapshot.clear();
+		WorldSnapshot.save(world, snapshot);
+		snapshot.flip();
+		WorldSnapshot.restore(snapshot, world);
+		return world;
+	}
+
+	/** A frame late in a game, when the other balls are asleep. **/
+	@Benchmark
+	public PhysicsWorld stepResting() {
+		resting.setPosition(0, 10, 5, 5);
+		resting.setVelocity(0, 0, 0.1, 0.1);
+		resting.step();
+		return resting;
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * Finds the pairs of balls in a {@link PhysicsWorld} that might be
+ * intersecting, so that the exact intersection test only has to be run on
+ * those. A broadphase may keep state about the world that it was last
+ * updated with, so each world needs its own instance.
+ *
+ * @author Brian McCutchon
+ */
+public interface Broadphase {
+
+	/** Receives candidate pairs from a {@link Broadphase}. **/
+	interface PairCallback {
+		/**
+		 * Called once for each candidate pair.
+		 * @param i The lower of the two ball indices, or the ball whose
+		 *   neighbors are being found.
+		 * @param j The higher of the two ball indices, or the neighbor.
+		 */
+		void pair(int i, int j);
+	}
+
+	/**
+	 * Brings this broadphase up to date with the current ball positions.
+	 * Called once per step, before {@link #findPairs}, unless the world
+	 * calls {@link #update(PhysicsWorld, int[], int)} instead.
+	 *
+	 * @param world The world whose balls are being tested.
+	 */
+	void update(PhysicsWorld world);
+
+	/**
+	 * Brings this broadphase up to date when only some balls can have moved
+	 * since the last update with the same world, as when the others are
+	 * asleep. A broadphase that keeps state per ball only needs to look at
+	 * those that moved, so that a step costs little more than its moving
+	 * balls do. By default, it updates every ball.
+	 *
+	 * @param world The world whose balls are being tested.
+	 * @param moved The indices of the balls that may have moved, in any
+	 *   order. The other balls are where they were at the last update.
+	 * @param count The number of balls in {@code moved}.
+	 */
+	default void update(PhysicsWorld world, int[] moved, int count) {
+		update(world);
+	}
+
+	/**
+	 * Reports every candidate pair (i, j) such that {@code i < j} and
+	 * {@code from <= i < to}. Every pair of intersecting balls must be
+	 * reported exactly once; other pairs may or may not be.
+	 *
+	 * @param world The world passed to the last call to {@link #update}.
+	 * @param from The lowest value of i to report, inclusive.
+	 * @param to The highest value of i to report, exclusive.
+	 * @param callback Receives the pairs.
+	 */
+	void findPairs(PhysicsWorld world, int from, int to, PairCallback callback);
+
+	/**
+	 * Reports every candidate pair (i, j) such that {@code j != i}, in any
+	 * order. Every ball intersecting ball i must be reported exactly once;
+	 * other balls may or may not be.
+	 *
+	 * @param world The world passed to the last call to {@link #update}.
+	 * @param i The ball whose neighbors to find.
+	 * @param callback Receives the pairs.
+	 */
+	void findNeighbors(PhysicsWorld world, int i, PairCallback callback);
+
+}
@@ -0,0 +1,39 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * A {@link Broadphase} that reports every pair of balls. This costs O(n^2)
+ * per step, which is fine for a single rack of 16 balls and is the simplest
+ * thing to compare other broadphases against.
+ *
+ * @author Brian McCutchon
+ */
+public class BruteForceBroadphase implements Broadphase {
+
+	@Override
+	public void update(PhysicsWorld world) {
+		// Nothing to do
+	}
+
+	@Override
+	public void findPairs(PhysicsWorld world, int from, int to,
+			PairCallback callback) {
+		int size = world.size();
+		for (int i = from; i < to; i++) {
+			for (int j = i+1; j < size; j++) {
+				callback.pair(i, j);
+			}
+		}
+	}
+
+	@Override
+	public void findNeighbors(PhysicsWorld world, int i,
+			PairCallback callback) {
+		int size = world.size();
+		for (int j = 0; j < size; j++) {
+			if (j != i) {
+				callback.pair(i, j);
+			}
+		}
+	}
+
+}
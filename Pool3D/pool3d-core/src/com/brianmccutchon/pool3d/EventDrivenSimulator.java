@@ -0,0 +1,450 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.Physics.*;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * An alternative to stepping a {@link PhysicsWorld} frame by frame. Instead
+ * of moving every ball by a whole frame's velocity and then looking for
+ * overlaps, this computes the exact time at which each collision will happen
+ * and jumps straight from one collision to the next. Fast balls therefore
+ * never pass through each other or through walls, and simulating a shot
+ * costs time proportional to the number of collisions rather than to the
+ * number of frames until the balls come to rest.
+ *
+ * <p>Time is measured in frames. Between collisions, each component of a
+ * ball's velocity shrinks linearly by {@link Physics#AIR_RESISTANCE} per
+ * frame until it reaches 0, which is the continuous version of what
+ * {@link PhysicsWorld#step()} does. That makes the position of a ball a
+ * piecewise quadratic function of time, so the time of a wall collision is
+ * the root of a quadratic and the time of a ball-ball collision is the first
+ * root of a piecewise quartic. Collisions are resolved with the same math as
+ * {@link PhysicsWorld#step()}, but results will not match it exactly, since
+ * the latter only detects collisions at the end of each frame.</p>
+ *
+ * <p>Pending collisions are kept in a priority queue. Each ball counts the
+ * collisions it has been in, and a pending collision is ignored if either
+ * ball has collided with anything since it was predicted.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class EventDrivenSimulator {
+
+	/** A predicted collision. **/
+	private static final class Event implements Comparable<Event> {
+		/** The time at which the collision will happen. **/
+		final double time;
+
+		/** The ball that will collide. **/
+		final int i;
+
+		/**
+		 * The other ball that will collide, or, for a wall collision,
+		 * {@code -1 - axis}, where axis is 0 for x, 1 for y, and 2 for z.
+		 */
+		final int j;
+
+		/** The collision counts of the two balls when this was predicted. **/
+		final int countI, countJ;
+
+		Event(double time, int i, int j, int countI, int countJ) {
+			this.time   = time;
+			this.i      = i;
+			this.j      = j;
+			this.countI = countI;
+			this.countJ = countJ;
+		}
+
+		@Override
+		public int compareTo(Event e) {
+			return Double.compare(time, e.time);
+		}
+	}
+
+	/**
+	 * How fast two touching balls must be approaching each other for them to
+	 * be considered colliding. This keeps balls that have just collided from
+	 * being found to collide again because of rounding error.
+	 */
+	private static final double MIN_APPROACH = 1e-12;
+
+	/** The world being simulated. Ball i's state is as of ballTime[i]. **/
+	private final PhysicsWorld world;
+
+	/** The time as of which each ball's state in the world is current. **/
+	private final double[] ballTime;
+
+	/** The number of collisions each ball has been in. **/
+	private final int[] collisions;
+
+	/** The pending collisions, soonest first. **/
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+
+	/** The current time. **/
+	private double time = 0;
+
+	/** The number of collisions processed so far. **/
+	private long eventCount = 0;
+
+	/** Scratch space for finding ball-ball collision times. **/
+	private final double[] breaks = new double[8];
+	private final double[] quartic = new double[5];
+	private final double[] roots = new double[5];
+	private final double[] rootWork = new double[Polynomials.workspaceSize(4)];
+
+	/**
+	 * Constructs a simulator for the given world and predicts all of the
+	 * collisions that will happen given the current ball velocities. The
+	 * world must not be modified except through this simulator until the
+	 * simulator is no longer used.
+	 *
+	 * @param world The world to simulate.
+	 */
+	public EventDrivenSimulator(PhysicsWorld world) {
+		this.world = world;
+		ballTime   = new double[world.size()];
+		collisions = new int[world.size()];
+
+		for (int i = 0; i < world.size(); i++) {
+			predictWalls(i);
+			for (int j = i+1; j < world.size(); j++) {
+				predictCollision(i, j);
+			}
+		}
+	}
+
+	/** Returns the current time, in frames since the simulator was created. **/
+	public double getTime() {
+		return time;
+	}
+
+	/** Returns the number of collisions processed so far. **/
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Processes every collision up to the given time, then brings every ball
+	 * in the world up to that time.
+	 *
+	 * @param t The time to advance to.
+	 * @return The number of collisions processed.
+	 */
+	public long advanceTo(double t) {
+		long n = processUntil(t);
+		sync(Math.max(time, t));
+		return n;
+	}
+
+	/**
+	 * Processes every remaining collision and brings every ball in the world
+	 * up to the time at which the last one stops.
+	 *
+	 * @return The number of collisions processed.
+	 */
+	public long runToRest() {
+		long n = processUntil(Double.POSITIVE_INFINITY);
+
+		double rest = time;
+		for (int i = 0; i < world.size(); i++) {
+			advance(i, time);
+			rest = Math.max(rest, time + stopTime(i));
+		}
+		sync(rest);
+
+		// Don't leave behind any crumbs from rounding error
+		for (int i = 0; i < world.size(); i++) {
+			world.setVelocity(i, 0, 0, 0);
+		}
+		return n;
+	}
+
+	/**
+	 * Processes every pending collision up to the given time, leaving each
+	 * ball's state as of its last collision.
+	 *
+	 * @return The number of collisions processed.
+	 */
+	private long processUntil(double t) {
+		long before = eventCount;
+
+		while (!events.isEmpty() && events.peek().time <= t) {
+			Event e = events.poll();
+			if (e.countI != collisions[e.i] ||
+					(e.j >= 0 && e.countJ != collisions[e.j])) {
+				continue; // Invalidated by an earlier collision
+			}
+
+			time = e.time;
+			if (e.j >= 0) {
+				collide(e.i, e.j);
+			} else {
+				bounce(e.i, -1 - e.j);
+			}
+		}
+
+		return eventCount - before;
+	}
+
+	/** Brings every ball in the world up to time t. **/
+	private void sync(double t) {
+		time = t;
+		for (int i = 0; i < world.size(); i++) {
+			advance(i, t);
+		}
+		// The state arrays were written directly
+		world.wakeAll();
+	}
+
+	/** Resolves a collision between two balls at the current time. **/
+	private void collide(int i, int j) {
+		advance(i, time);
+		advance(j, time);
+		handleCollision(world, i, world, j, world.getRestitution());
+
+		eventCount++;
+		collisions[i]++;
+		collisions[j]++;
+		predict(i, -1);
+		predict(j, i);
+	}
+
+	/** Resolves a collision between a ball and a wall at the current time. **/
+	private void bounce(int i, int axis) {
+		advance(i, time);
+		double[] v = velocities(axis);
+		v[i] = -v[i];
+
+		eventCount++;
+		collisions[i]++;
+		predict(i, -1);
+	}
+
+	/**
+	 * Predicts new collisions for a ball whose velocity has changed.
+	 * @param i The ball.
+	 * @param skip A ball whose collisions with ball i have already been
+	 *   predicted, or -1.
+	 */
+	private void predict(int i, int skip) {
+		predictWalls(i);
+		for (int j = 0; j < world.size(); j++) {
+			if (j != i && j != skip) {
+				predictCollision(i, j);
+			}
+		}
+	}
+
+	/** Queues the next collision between ball i and each pair of walls. **/
+	private void predictWalls(int i) {
+		for (int axis = 0; axis < 3; axis++) {
+			double v = velocities(axis)[i];
+			if (v == 0) {
+				continue;
+			}
+
+			double limit = tableDim(axis)/2 - PoolBall.RADIUS;
+			double dist  = limit - Math.signum(v) * positions(axis)[i];
+			double t;
+			if (dist <= 0) {
+				t = 0; // Already touching the wall and moving into it
+			} else {
+				// Solve |v|*t - AIR_RESISTANCE/2*t^2 = dist
+				double disc = v*v - 2*AIR_RESISTANCE*dist;
+				if (disc < 0) {
+					continue; // Stops before reaching the wall
+				}
+				t = 2*dist / (Math.abs(v) + Math.sqrt(disc));
+			}
+			events.add(new Event(ballTime[i] + t, i, -1 - axis,
+					collisions[i], 0));
+		}
+	}
+
+	/** Queues the next collision between balls i and j, if there is one. **/
+	private void predictCollision(int i, int j) {
+		// Express both trajectories relative to the later of the two times
+		double t0 = Math.max(ballTime[i], ballTime[j]);
+		advance(i, t0);
+		advance(j, t0);
+
+		double ri = reach(i), rj = reach(j);
+		if (ri == 0 && rj == 0) {
+			return; // Neither ball is moving
+		}
+		double dx = world.px[j] - world.px[i];
+		double dy = world.py[j] - world.py[i];
+		double dz = world.pz[j] - world.pz[i];
+		double gap = Math.sqrt(dx*dx + dy*dy + dz*dz) - PoolBall.DIAMETER;
+		if (gap > ri + rj) {
+			return; // They can't get close enough before stopping
+		}
+
+		double t = firstContact(i, j);
+		if (t >= 0) {
+			events.add(new Event(t0 + t, Math.min(i, j), Math.max(i, j),
+					collisions[Math.min(i, j)], collisions[Math.max(i, j)]));
+		}
+	}
+
+	/**
+	 * Finds how long after their common current time balls i and j will
+	 * first touch while approaching each other.
+	 *
+	 * @return The time until contact, or -1 if they will never collide.
+	 */
+	private double firstContact(int i, int j) {
+		// The squared distance between the balls minus DIAMETER^2 is a
+		// quartic in t until one of the six velocity components stops, so
+		// split time at each of those stops.
+		int nBreaks = 0;
+		breaks[nBreaks++] = 0;
+		for (int axis = 0; axis < 3; axis++) {
+			double[] v = velocities(axis);
+			breaks[nBreaks++] = Math.abs(v[i]) / AIR_RESISTANCE;
+			breaks[nBreaks++] = Math.abs(v[j]) / AIR_RESISTANCE;
+		}
+		Arrays.sort(breaks, 0, nBreaks);
+
+		// Touching or overlapping, and approaching: they collide right away
+		buildQuartic(i, j, 0);
+		if (quartic[0] <= 0 &&
+				Polynomials.evalDerivative(quartic, 4, 0) < -MIN_APPROACH) {
+			return 0;
+		}
+
+		for (int k = 1; k < nBreaks; k++) {
+			double lo = breaks[k-1], hi = breaks[k];
+			if (hi <= lo) {
+				continue;
+			}
+
+			buildQuartic(i, j, 0.5 * (lo + hi));
+			int n = Polynomials.roots(quartic, 4, lo, hi, roots,
+					rootWork);
+			for (int r = 0; r < n; r++) {
+				if (Polynomials.evalDerivative(quartic, 4, roots[r]) <
+						-MIN_APPROACH) {
+					return roots[r];
+				}
+			}
+		}
+
+		// Once everything has stopped, nothing else will happen
+		return -1;
+	}
+
+	/**
+	 * Stores in {@link #quartic} the coefficients of the squared distance
+	 * between balls i and j minus DIAMETER^2, as a function of time, that
+	 * holds on the segment of time containing t.
+	 */
+	private void buildQuartic(int i, int j, double t) {
+		Arrays.fill(quartic, 0);
+		quartic[0] = -PoolBall.DIAMETER * PoolBall.DIAMETER;
+
+		for (int axis = 0; axis < 3; axis++) {
+			double[] p = positions(axis), v = velocities(axis);
+
+			// The difference of the two positions is c0 + c1*t + c2*t^2
+			double c0 = p[j] - p[i], c1 = 0, c2 = 0;
+			if (Math.abs(v[j]) / AIR_RESISTANCE > t) {
+				c1 += v[j];
+				c2 -= Math.signum(v[j]) * AIR_RESISTANCE / 2;
+			} else {
+				c0 += stopDistance(v[j]);
+			}
+			if (Math.abs(v[i]) / AIR_RESISTANCE > t) {
+				c1 -= v[i];
+				c2 += Math.signum(v[i]) * AIR_RESISTANCE / 2;
+			} else {
+				c0 -= stopDistance(v[i]);
+			}
+
+			// Add its square
+			quartic[0] += c0*c0;
+			quartic[1] += 2*c0*c1;
+			quartic[2] += c1*c1 + 2*c0*c2;
+			quartic[3] += 2*c1*c2;
+			quartic[4] += c2*c2;
+		}
+	}
+
+	/** Moves ball i along its trajectory to time t. **/
+	private void advance(int i, double t) {
+		double dt = t - ballTime[i];
+		if (dt > 0) {
+			world.px[i] = position(world.px[i], world.vx[i], dt);
+			world.py[i] = position(world.py[i], world.vy[i], dt);
+			world.pz[i] = position(world.pz[i], world.vz[i], dt);
+			world.vx[i] = velocity(world.vx[i], dt);
+			world.vy[i] = velocity(world.vy[i], dt);
+			world.vz[i] = velocity(world.vz[i], dt);
+		}
+		ballTime[i] = Math.max(ballTime[i], t);
+	}
+
+	/** Returns a position component after dt frames. **/
+	static double position(double p, double v, double dt) {
+		double stop = Math.abs(v) / AIR_RESISTANCE;
+		if (dt >= stop) {
+			return p + stopDistance(v);
+		}
+		return p + v*dt - Math.signum(v) * AIR_RESISTANCE / 2 * dt*dt;
+	}
+
+	/** Returns a velocity component after dt frames. **/
+	static double velocity(double v, double dt) {
+		if (dt >= Math.abs(v) / AIR_RESISTANCE) {
+			return 0;
+		}
+		return v - Math.signum(v) * AIR_RESISTANCE * dt;
+	}
+
+	/** Returns how far a ball moves along one axis before that axis stops. **/
+	private static double stopDistance(double v) {
+		return Math.signum(v) * v*v / (2 * AIR_RESISTANCE);
+	}
+
+	/** Returns how long it will take ball i to stop moving. **/
+	private double stopTime(int i) {
+		return Math.max(Math.abs(world.vx[i]),
+				Math.max(Math.abs(world.vy[i]), Math.abs(world.vz[i]))) /
+				AIR_RESISTANCE;
+	}
+
+	/** Returns how far ball i can move before it stops. **/
+	private double reach(int i) {
+		double x = stopDistance(world.vx[i]);
+		double y = stopDistance(world.vy[i]);
+		double z = stopDistance(world.vz[i]);
+		return Math.sqrt(x*x + y*y + z*z);
+	}
+
+	private double[] positions(int axis) {
+		switch (axis) {
+		case 0:  return world.px;
+		case 1:  return world.py;
+		default: return world.pz;
+		}
+	}
+
+	private double[] velocities(int axis) {
+		switch (axis) {
+		case 0:  return world.vx;
+		case 1:  return world.vy;
+		default: return world.vz;
+		}
+	}
+
+	private double tableDim(int axis) {
+		switch (axis) {
+		case 0:  return world.tableX;
+		case 1:  return world.tableY;
+		default: return world.tableZ;
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times each phase of a frame of the game, and counts what happens in the
+ * physics. Each phase runs on its own thread: the physics on the
+ * {@link SimulationThread}, drawing on the renderer's thread and input on
+ * the event dispatch thread. Each records into a {@link LatencyHistogram} of
+ * its own, so a slow frame can be traced to the phase that made it slow.
+ *
+ * <p>Recording allocates nothing. Reading may be done from any thread,
+ * including through JMX, as a {@link FrameMetricsMXBean}.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class FrameMetrics implements FrameMetricsMXBean {
+
+	/** The phases of a frame that are timed. **/
+	public enum Phase {
+		/** One step of the physics. **/
+		STEP,
+		/** Moving the balls on screen to their latest positions. **/
+		RENDER,
+		/** Handling the keys held down. **/
+		INPUT
+	}
+
+	/** The percentiles reported for each phase. **/
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final EnumMap<Phase, LatencyHistogram> latencies =
+			new EnumMap<>(Phase.class);
+
+	private final AtomicLong collisions = new AtomicLong();
+
+	private final AtomicLong wallBounces = new AtomicLong();
+
+	private final AtomicLong substeps = new AtomicLong();
+
+	private final AtomicInteger maxSubsteps = new AtomicInteger();
+
+	private volatile int activeBalls;
+
+	/** Constructs metrics with nothing counted yet. **/
+	public FrameMetrics() {
+		for (Phase p : Phase.values()) {
+			latencies.put(p, new LatencyHistogram());
+		}
+	}
+
+	/** Returns the histogram of the durations of a phase. **/
+	public LatencyHistogram get(Phase phase) {
+		return latencies.get(phase);
+	}
+
+	/** Records how long a phase took. **/
+	public void record(Phase phase, long nanos) {
+		latencies.get(phase).record(nanos);
+	}
+
+	/**
+	 * Records a step of a world: how long it took, and what happened in it.
+	 * Must be called on the thread that stepped the world, right after it did.
+	 */
+	public void recordStep(PhysicsWorld world, long nanos) {
+		record(Phase.STEP, nanos);
+		collisions.addAndGet(world.getCollisionCount());
+		wallBounces.addAndGet(world.getWallBounceCount());
+		activeBalls = world.getAwakeCount();
+		int n = world.getSubstepCount();
+		substeps.addAndGet(n);
+		for (int m = maxSubsteps.get(); n > m &&
+				!maxSubsteps.compareAndSet(m, n); m = maxSubsteps.get()) {
+			// Retry
+		}
+	}
+
+	@Override
+	public Map<String, Double> getStepLatency() {
+		return summarize(Phase.STEP);
+	}
+
+	@Override
+	public Map<String, Double> getRenderLatency() {
+		return summarize(Phase.RENDER);
+	}
+
+	@Override
+	public Map<String, Double> getInputLatency() {
+		return summarize(Phase.INPUT);
+	}
+
+	/** Returns the count, mean, percentiles and max of a phase. **/
+	private Map<String, Double> summarize(Phase phase) {
+		LatencyHistogram h = latencies.get(phase);
+		Map<String, Double> m = new LinkedHashMap<>();
+		m.put("count", (double) h.getCount());
+		m.put("mean", h.getMean() / 1e3);
+		for (double p : PERCENTILES) {
+			m.put("p" + (p == (int) p ? Integer.toString((int) p) :
+					Double.toString(p)), h.getPercentile(p) / 1e3);
+		}
+		m.put("max", h.getMax() / 1e3);
+		return m;
+	}
+
+	@Override
+	public long getSteps() {
+		return latencies.get(Phase.STEP).getCount();
+	}
+
+	@Override
+	public long getCollisions() {
+		return collisions.get();
+	}
+
+	@Override
+	public long getWallBounces() {
+		return wallBounces.get();
+	}
+
+	@Override
+	public int getActiveBalls() {
+		return activeBalls;
+	}
+
+	@Override
+	public long getSubsteps() {
+		return substeps.get();
+	}
+
+	@Override
+	public int getMaxSubsteps() {
+		return maxSubsteps.get();
+	}
+
+	@Override
+	public void reset() {
+		for (LatencyHistogram h : latencies.values()) {
+			h.reset();
+		}
+		collisions.set(0);
+		wallBounces.set(0);
+		substeps.set(0);
+		maxSubsteps.set(0);
+	}
+
+	/** Returns one line per phase, then one with the physics counts. **/
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Phase p : Phase.values()) {
+			sb.append(String.format("%-6s p50 %7.1f  p99 %7.1f  p99.9 %7.1f  " +
+					"max %7.1f us%n", p, get(p).getPercentile(50) / 1e3,
+					get(p).getPercentile(99) / 1e3,
+					get(p).getPercentile(99.9) / 1e3, get(p).getMax() / 1e3));
+		}
+		sb.append(String.format("active %d  collisions %d  wall bounces %d%n",
+				getActiveBalls(), getCollisions(), getWallBounces()));
+		sb.append(String.format("substeps %d in %d steps, at most %d",
+				getSubsteps(), getSteps(), getMaxSubsteps()));
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link FrameMetrics}, for watching a game
+ * through JMX with tools such as JConsole or VisualVM. Each latency is a map
+ * from "count", "mean", "p50", "p90", "p99", "p99.9" and "max" to a value in
+ * microseconds, except for the count.
+ *
+ * @author Brian McCutchon
+ */
+public interface FrameMetricsMXBean {
+
+	/** Returns the time taken by each step of the physics. **/
+	Map<String, Double> getStepLatency();
+
+	/** Returns the time taken to move the balls on screen, per frame. **/
+	Map<String, Double> getRenderLatency();
+
+	/** Returns the time taken to handle the keys held down, per tick. **/
+	Map<String, Double> getInputLatency();
+
+	/** Returns the number of steps taken. **/
+	long getSteps();
+
+	/** Returns the number of collisions between balls. **/
+	long getCollisions();
+
+	/** Returns the number of times a ball has bounced off a wall. **/
+	long getWallBounces();
+
+	/** Returns the number of balls that were awake after the latest step. **/
+	int getActiveBalls();
+
+	/**
+	 * Returns the number of sub-steps taken. Each step takes at least one,
+	 * and more only while a ball is moving fast.
+	 */
+	long getSubsteps();
+
+	/** Returns the most sub-steps taken by one step. **/
+	int getMaxSubsteps();
+
+	/** Forgets everything counted so far. **/
+	void reset();
+
+}
@@ -0,0 +1,194 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Broadphase} that hashes balls into a uniform grid of cubic cells,
+ * one ball diameter on a side. Two balls can only intersect if their cells
+ * are adjacent, so each ball only has to be tested against the balls in the
+ * 27 cells around it.
+ *
+ * <p>Cells are hashed into a fixed number of buckets, each holding a doubly
+ * linked list of the balls in it. Since balls rarely change cells from one
+ * frame to the next, {@link #update} only relinks the balls that did, and
+ * only looks at the balls that the world says can have moved. Nothing is
+ * allocated after the first update.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class GridBroadphase implements Broadphase {
+
+	/** The length of a side of a cell. **/
+	private static final double CELL_SIZE = PoolBall.DIAMETER;
+
+	/** Marks the end of a bucket's list. **/
+	private static final int NONE = -1;
+
+	/** The world this was built for, or null before the first update. **/
+	private PhysicsWorld world;
+
+	/** The cell coordinates of each ball. **/
+	private int[] cellX, cellY, cellZ;
+
+	/** The bucket holding each ball. **/
+	private int[] bucketOf;
+
+	/** The next and previous balls in each ball's bucket. **/
+	private int[] next, prev;
+
+	/** The first ball in each bucket. **/
+	private int[] head;
+
+	/** The number of buckets, which is a power of 2, minus one. **/
+	private int mask;
+
+	@Override
+	public void update(PhysicsWorld world) {
+		if (this.world != world) {
+			build(world);
+			return;
+		}
+
+		for (int i = 0; i < world.size(); i++) {
+			relink(world, i);
+		}
+	}
+
+	@Override
+	public void update(PhysicsWorld world, int[] moved, int count) {
+		if (this.world != world) {
+			build(world);
+			return;
+		}
+
+		for (int k = 0; k < count; k++) {
+			relink(world, moved[k]);
+		}
+	}
+
+	/** Moves ball i to the bucket for its cell, if it has changed cells. **/
+	private void relink(PhysicsWorld world, int i) {
+		int x = cell(world.px[i]);
+		int y = cell(world.py[i]);
+		int z = cell(world.pz[i]);
+		if (x != cellX[i] || y != cellY[i] || z != cellZ[i]) {
+			unlink(i);
+			link(i, x, y, z);
+		}
+	}
+
+	@Override
+	public void findPairs(PhysicsWorld world, int from, int to,
+			PairCallback callback) {
+		for (int i = from; i < to; i++) {
+			int x = cellX[i], y = cellY[i], z = cellZ[i];
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dz = -1; dz <= 1; dz++) {
+						int nx = x+dx, ny = y+dy, nz = z+dz;
+						for (int j = head[hash(nx, ny, nz)]; j != NONE;
+								j = next[j]) {
+							// Other cells may share this bucket
+							if (j > i && cellX[j] == nx &&
+									cellY[j] == ny && cellZ[j] == nz) {
+								callback.pair(i, j);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void findNeighbors(PhysicsWorld world, int i,
+			PairCallback callback) {
+		int x = cellX[i], y = cellY[i], z = cellZ[i];
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					int nx = x+dx, ny = y+dy, nz = z+dz;
+					for (int j = head[hash(nx, ny, nz)]; j != NONE;
+							j = next[j]) {
+						if (j != i && cellX[j] == nx &&
+								cellY[j] == ny && cellZ[j] == nz) {
+							callback.pair(i, j);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Allocates the grid for a world and inserts every ball into it. **/
+	private void build(PhysicsWorld world) {
+		int size = world.size();
+		this.world = world;
+		cellX    = new int[size];
+		cellY    = new int[size];
+		cellZ    = new int[size];
+		bucketOf = new int[size];
+		next     = new int[size];
+		prev     = new int[size];
+
+		// About two buckets per ball, but no more than there are cells
+		// in the table
+		long tableCells = (long) (Math.ceil(world.tableX / CELL_SIZE) + 2) *
+				(long) (Math.ceil(world.tableY / CELL_SIZE) + 2) *
+				(long) (Math.ceil(world.tableZ / CELL_SIZE) + 2);
+		long buckets = Math.max(1, Math.min(2L * size, tableCells));
+		int n = Integer.highestOneBit((int) Math.min(buckets, 1 << 30));
+		if (n < buckets) {
+			n <<= 1;
+		}
+		head = new int[n];
+		mask = n - 1;
+		Arrays.fill(head, NONE);
+
+		for (int i = 0; i < size; i++) {
+			link(i, cell(world.px[i]), cell(world.py[i]), cell(world.pz[i]));
+		}
+	}
+
+	/** Inserts ball i at the front of the bucket for the given cell. **/
+	private void link(int i, int x, int y, int z) {
+		int b = hash(x, y, z);
+		cellX[i] = x;
+		cellY[i] = y;
+		cellZ[i] = z;
+		bucketOf[i] = b;
+		prev[i] = NONE;
+		next[i] = head[b];
+		if (head[b] != NONE) {
+			prev[head[b]] = i;
+		}
+		head[b] = i;
+	}
+
+	/** Removes ball i from its bucket. **/
+	private void unlink(int i) {
+		if (prev[i] != NONE) {
+			next[prev[i]] = next[i];
+		} else {
+			head[bucketOf[i]] = next[i];
+		}
+		if (next[i] != NONE) {
+			prev[next[i]] = prev[i];
+		}
+	}
+
+	/** Returns the index of the cell containing the given coordinate. **/
+	private static int cell(double coord) {
+		return (int) Math.floor(coord / CELL_SIZE);
+	}
+
+	/**
+	 * Hashes cell coordinates into a bucket index. The multipliers are the
+	 * primes suggested by Teschner et al., "Optimized Spatial Hashing for
+	 * Collision Detection of Deformable Objects."
+	 */
+	private int hash(int x, int y, int z) {
+		return ((x * 73856093) ^ (y * 19349663) ^ (z * 83492791)) & mask;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs a generated scene without any graphics and reports how long it took
+ * to generate and to step, for load testing on machines with no display.
+ * Usage:
+ * <pre>
+ *   java -cp pool3d-core.jar com.brianmccutchon.pool3d.HeadlessMain \
+ *       scene balls [steps [seed [threads]]]
+ * </pre>
+ * where scene is one of {@code fcc}, {@code hcp}, {@code gas} or
+ * {@code clusters}. The close-packed scenes are broken by a shot of the cue
+ * ball; gas starts at a density of 0.1; clusters breaks eight clusters at
+ * once. Steps default to 1000 and the seed to 1. With more than one thread,
+ * collisions are found on a fork-join pool of that many threads.
+ *
+ * @author Brian McCutchon
+ */
+public class HeadlessMain {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: HeadlessMain fcc|hcp|gas|clusters " +
+					"balls [steps [seed [threads]]]");
+			System.exit(2);
+		}
+		int n     = Integer.parseInt(args[1]);
+		int steps = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+		long start = System.nanoTime();
+		PhysicsWorld world = generate(args[0], n, seed);
+		long generated = System.nanoTime() - start;
+		System.out.printf("Generated %s with %d balls in %.1f ms, " +
+				"table %.0f x %.0f x %.0f%n", args[0], n, generated / 1e6,
+				world.tableX, world.tableY, world.tableZ);
+
+		world.setBroadphase(new GridBroadphase());
+		if (threads > 1) {
+			world.setNarrowphasePool(new ForkJoinPool(threads));
+		}
+		FrameMetrics metrics = new FrameMetrics();
+		for (int s = 0; s < steps; s++) {
+			long t = System.nanoTime();
+			world.step();
+			metrics.recordStep(world, System.nanoTime() - t);
+		}
+		System.out.println(metrics.get(FrameMetrics.Phase.STEP));
+		System.out.printf("active %d, collisions %d, wall bounces %d, " +
+				"substeps %d (at most %d per step)%n",
+				metrics.getActiveBalls(), metrics.getCollisions(),
+				metrics.getWallBounces(), metrics.getSubsteps(),
+				metrics.getMaxSubsteps());
+	}
+
+	/** Generates a scene by its name on the command line. **/
+	static PhysicsWorld generate(String scene, int n, long seed) {
+		switch (scene) {
+		case "fcc":
+		case "hcp": {
+			PhysicsWorld world = Racks.closePacked(n, scene.equals("fcc") ?
+					Racks.Lattice.FCC : Racks.Lattice.HCP, seed);
+			world.setVelocity(0, -1, 0.02, 0.01);
+			return world;
+		}
+		case "gas":
+			return Racks.gas(n, 0.1, 0.2, seed);
+		case "clusters":
+			return Racks.clusters(n, Math.min(8, n), Racks.Lattice.FCC, seed);
+		default:
+			throw new IllegalArgumentException("Unknown scene: " + scene);
+		}
+	}
+
+}
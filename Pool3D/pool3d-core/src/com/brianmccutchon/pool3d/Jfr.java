@@ -0,0 +1,30 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * Tells whether this JVM has Java Flight Recorder, without loading any of
+ * it. {@link JfrEvents} refers to {@code jdk.jfr} as soon as it is loaded,
+ * which fails on a JRE without that module, so callers check
+ * {@link #AVAILABLE} here first and only then touch {@link JfrEvents}. Since
+ * it is a constant, the check costs nothing once compiled.
+ *
+ * @author Brian McCutchon
+ */
+final class Jfr {
+
+	/** {@code true} iff this JVM has Flight Recorder. **/
+	static final boolean AVAILABLE = isAvailable();
+
+	private Jfr() {
+		// Not instantiable
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, Jfr.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.brianmccutchon.pool3d;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the physics: one per step, one per
+ * collision between balls and one per bounce off a wall. They show up in
+ * JDK Mission Control under "Pool3D", next to the GC pauses and CPU samples
+ * of the same moments.
+ *
+ * <p>This is the only class that refers to {@code jdk.jfr}, which a minimal
+ * JRE may leave out, and loading it loads that module. Nothing may touch it
+ * unless {@link Jfr#AVAILABLE} is {@code true}. When no recording is
+ * enabling an event, emitting it costs one check and allocates nothing.</p>
+ *
+ * @author Brian McCutchon
+ */
+final class JfrEvents {
+
+	private JfrEvents() {
+		// Not instantiable
+	}
+
+	@Name("com.brianmccutchon.pool3d.Step")
+	@Label("Physics Step")
+	@Category("Pool3D")
+	@Description("One step of a PhysicsWorld")
+	static class StepEvent extends Event {
+		@Label("Balls")
+		int balls;
+
+		@Label("Awake Balls")
+		int awakeBalls;
+
+		@Label("Collisions")
+		int collisions;
+
+		@Label("Wall Bounces")
+		int wallBounces;
+
+		@Label("Substeps")
+		int substeps;
+	}
+
+	@Name("com.brianmccutchon.pool3d.Collision")
+	@Label("Ball Collision")
+	@Category("Pool3D")
+	@Description("A collision between two balls that changed their velocities")
+	static class CollisionEvent extends Event {
+		@Label("Ball 1")
+		int ball1;
+
+		@Label("Ball 2")
+		int ball2;
+
+		@Label("Relative Speed")
+		@Description("The speed at which the balls approached each other, " +
+				"along the line between their centers, per step")
+		double relativeSpeed;
+	}
+
+	@Name("com.brianmccutchon.pool3d.WallBounce")
+	@Label("Wall Bounce")
+	@Category("Pool3D")
+	@Description("A ball bouncing off a wall of the table")
+	static class WallBounceEvent extends Event {
+		@Label("Ball")
+		int ball;
+
+		@Label("Axis")
+		@Description("The axis of the wall's normal: 0 for x, 1 for y, 2 for z")
+		int axis;
+
+		@Label("Speed")
+		@Description("The speed of the ball into the wall, per step")
+		double speed;
+	}
+
+	private static final EventType STEP =
+			EventType.getEventType(StepEvent.class);
+
+	private static final EventType COLLISION =
+			EventType.getEventType(CollisionEvent.class);
+
+	private static final EventType WALL_BOUNCE =
+			EventType.getEventType(WallBounceEvent.class);
+
+	/**
+	 * Starts timing a step, if a recording wants steps.
+	 * @return The event to pass to {@link #endStep}, or null if steps are
+	 *   not being recorded. Typed as Object so that callers need not load
+	 *   {@code jdk.jfr}.
+	 */
+	static Object beginStep() {
+		if (!STEP.isEnabled()) {
+			return null;
+		}
+		StepEvent e = new StepEvent();
+		e.begin();
+		return e;
+	}
+
+	/** Ends and commits an event returned by {@link #beginStep()}. **/
+	static void endStep(Object event, PhysicsWorld world) {
+		StepEvent e = (StepEvent) event;
+		e.end();
+		if (e.shouldCommit()) {
+			e.balls       = world.size();
+			e.awakeBalls  = world.getAwakeCount();
+			e.collisions  = world.getCollisionCount();
+			e.wallBounces = world.getWallBounceCount();
+			e.substeps    = world.getSubstepCount();
+			e.commit();
+		}
+	}
+
+	/** Records a collision between balls i and j, if one is wanted. **/
+	static void collision(int i, int j, double relativeSpeed) {
+		if (COLLISION.isEnabled()) {
+			CollisionEvent e = new CollisionEvent();
+			e.ball1 = i;
+			e.ball2 = j;
+			e.relativeSpeed = relativeSpeed;
+			e.commit();
+		}
+	}
+
+	/** Records a ball bouncing off a wall, if one is wanted. **/
+	static void wallBounce(int ball, int axis, double speed) {
+		if (WALL_BOUNCE.isEnabled()) {
+			WallBounceEvent e = new WallBounceEvent();
+			e.ball  = ball;
+			e.axis  = axis;
+			e.speed = speed;
+			e.commit();
+		}
+	}
+
+}
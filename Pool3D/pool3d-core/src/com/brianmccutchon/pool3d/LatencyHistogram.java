@@ -0,0 +1,142 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations, in nanoseconds, in buckets whose width grows with the
+ * value, so that any percentile can be read back to within a fixed relative
+ * error. This is the layout of an HDR histogram: values below
+ * {@code 2*SUB_BUCKETS} each have a bucket of their own, and every power of
+ * two above that is split into {@link #SUB_BUCKETS} equal buckets, for an
+ * error of at most 1 part in {@value #SUB_BUCKETS}.
+ *
+ * <p>Recording a value allocates nothing and never blocks, so it can be done
+ * on a render or simulation thread. Any thread may record or read at any
+ * time, although a reading taken while values are being recorded may be off
+ * by the values being recorded.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class LatencyHistogram {
+
+	/** The number of buckets per power of two. **/
+	static final int SUB_BUCKETS = 32;
+
+	private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+	/**
+	 * The largest power of two counted. Larger values, of more than about 36
+	 * minutes, are counted in the last bucket.
+	 */
+	private static final int MAX_EXPONENT = 41;
+
+	private static final int BUCKETS =
+			2*SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS)*SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/** Counts one duration. Negative durations are counted as 0. **/
+	public void record(long nanos) {
+		long v = Math.max(nanos, 0);
+		counts.incrementAndGet(bucket(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		for (long m = max.get(); v > m && !max.compareAndSet(m, v);
+				m = max.get()) {
+			// Retry
+		}
+	}
+
+	/** Returns the number of durations counted. **/
+	public long getCount() {
+		return count.get();
+	}
+
+	/** Returns the longest duration counted, or 0 if there are none. **/
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Returns the mean duration, or 0 if there are none. **/
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns the duration that the given percentage of the durations counted
+	 * are at or below, rounded up to the top of its bucket. Returns 0 if no
+	 * durations have been counted.
+	 *
+	 * @param percentile From 0 to 100.
+	 */
+	public long getPercentile(double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException(
+					"Invalid percentile: " + percentile);
+		}
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += counts.get(b);
+			if (seen >= target) {
+				return Math.min(highestInBucket(b), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/** Forgets every duration counted. **/
+	public void reset() {
+		for (int b = 0; b < BUCKETS; b++) {
+			counts.set(b, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/** Returns the index of the bucket counting a value, which is at least 0. **/
+	static int bucket(long v) {
+		if (v < 2*SUB_BUCKETS) {
+			return (int) v;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(v);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BITS;
+		return 2*SUB_BUCKETS + (shift - 1)*SUB_BUCKETS +
+				(int) (v >>> shift) - SUB_BUCKETS;
+	}
+
+	/** Returns the largest value counted by a bucket. **/
+	static long highestInBucket(int b) {
+		if (b < 2*SUB_BUCKETS) {
+			return b;
+		}
+		int shift = (b - 2*SUB_BUCKETS) / SUB_BUCKETS + 1;
+		long sub = (b - 2*SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n %d, mean %.1f us, p50 %.1f us, p99 %.1f us, " +
+				"p99.9 %.1f us, max %.1f us", getCount(), getMean() / 1e3,
+				getPercentile(50) / 1e3, getPercentile(99) / 1e3,
+				getPercentile(99.9) / 1e3, getMax() / 1e3);
+	}
+
+}
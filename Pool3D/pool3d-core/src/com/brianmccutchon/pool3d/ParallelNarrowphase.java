@@ -0,0 +1,216 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the pairs of balls in a world that intersect on several threads at
+ * once. The world's balls are split into ranges, and the {@link Broadphase}
+ * is asked for each range's pairs on a fork-join pool. Each range tests its
+ * pairs and keeps those that intersect in a buffer of its own. The buffers
+ * are then merged and sorted, so that the contacts come out in the same
+ * order, by lower and then higher index, however many threads found them.
+ *
+ * <p>While some balls are asleep, it is the list of awake balls that is
+ * split into ranges instead, and the broadphase is asked for the neighbors
+ * of each awake ball. Two sleeping balls cannot collide, so this finds
+ * every contact, sleeping balls included.</p>
+ *
+ * <p>Resolving a collision changes only velocities, never positions, so the
+ * set of intersecting pairs is the same whenever it is found within a step.
+ * Resolving the sorted contacts one at a time therefore gives the same
+ * results on any number of threads.</p>
+ *
+ * <p>Without a pool, there is a single range, which the calling thread
+ * runs, so that the contacts are resolved in the same order as with one.</p>
+ *
+ * <p>Once the buffers have grown to fit, finding the contacts allocates
+ * nothing: the tasks are reinitialized and reused every step.</p>
+ *
+ * @author Brian McCutchon
+ */
+final class ParallelNarrowphase {
+
+	/** The fewest balls in a range, below which splitting costs more. **/
+	static final int MIN_RANGE = 256;
+
+	/** The number of ranges per thread, so that idle threads can steal. **/
+	private static final int RANGES_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+
+	private final Range[] ranges;
+
+	/** The number of ranges in use for the current call to {@link #find}. **/
+	private int used;
+
+	/** Runs every range in use, as a task that can be submitted to the pool. **/
+	private final RecursiveAction all = new RecursiveAction() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			for (int r = 1; r < used; r++) {
+				ranges[r].fork();
+			}
+			ranges[0].invoke();
+			for (int r = used - 1; r > 0; r--) {
+				ranges[r].join();
+			}
+		}
+	};
+
+	/** The contacts found by every range, sorted. **/
+	private long[] contacts = new long[64];
+
+	/**
+	 * Constructs a narrowphase for worlds of a given size.
+	 *
+	 * @param size The number of balls in the world.
+	 * @param pool The pool on which to find contacts, or null to find them
+	 *   on the calling thread.
+	 */
+	ParallelNarrowphase(int size, ForkJoinPool pool) {
+		this.pool = pool;
+		int n = pool == null ? 1 : Math.max(1, Math.min(size / MIN_RANGE,
+				pool.getParallelism() * RANGES_PER_THREAD));
+		ranges = new Range[n];
+		for (int r = 0; r < n; r++) {
+			ranges[r] = new Range();
+		}
+	}
+
+	/** Returns the pool on which contacts are found, or null. **/
+	ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Finds every pair of balls that intersect, using a broadphase that has
+	 * been updated with the world. If every ball is awake, the pairs come
+	 * from {@link Broadphase#findPairs}; otherwise, from
+	 * {@link Broadphase#findNeighbors} for each awake ball.
+	 *
+	 * @return The number of contacts, which {@link #contacts()} holds.
+	 */
+	int find(PhysicsWorld world, Broadphase broadphase) {
+		boolean neighbors = world.awakeCount < world.size();
+		int n = neighbors ? world.awakeCount : world.size();
+		used = Math.max(1, Math.min(n / MIN_RANGE, ranges.length));
+		for (int r = 0; r < used; r++) {
+			Range range = ranges[r];
+			range.reinitialize();
+			range.world = world;
+			range.broadphase = broadphase;
+			range.neighbors = neighbors;
+			range.from = (int) ((long) n * r / used);
+			range.to   = (int) ((long) n * (r + 1) / used);
+		}
+		if (used == 1) {
+			ranges[0].invoke();
+		} else {
+			all.reinitialize();
+			pool.invoke(all);
+		}
+
+		int total = 0;
+		for (int r = 0; r < used; r++) {
+			total += ranges[r].count;
+		}
+		if (contacts.length < total) {
+			contacts = new long[Math.max(total, 2*contacts.length)];
+		}
+		int k = 0;
+		for (int r = 0; r < used; r++) {
+			Range range = ranges[r];
+			System.arraycopy(range.contacts, 0, contacts, k, range.count);
+			k += range.count;
+			range.world = null;
+			range.broadphase = null;
+		}
+		Arrays.sort(contacts, 0, total);
+		return total;
+	}
+
+	/**
+	 * Returns the contacts found by the last call to {@link #find}, each
+	 * packed as {@link #pack}.
+	 */
+	long[] contacts() {
+		return contacts;
+	}
+
+	/**
+	 * Packs a pair of balls, i &lt; j, into a long. Packed pairs sort by i and
+	 * then by j.
+	 */
+	static long pack(int i, int j) {
+		return (long) i << 32 | j;
+	}
+
+	/** Returns the lower index of a packed pair. **/
+	static int first(long pair) {
+		return (int) (pair >>> 32);
+	}
+
+	/** Returns the higher index of a packed pair. **/
+	static int second(long pair) {
+		return (int) pair;
+	}
+
+	/**
+	 * Finds the contacts of the balls in one range: of the balls themselves
+	 * or, if {@link #neighbors} is set, of the awake balls at those
+	 * positions in {@link PhysicsWorld#awake}.
+	 */
+	private static final class Range extends RecursiveAction
+			implements Broadphase.PairCallback {
+
+		private static final long serialVersionUID = 1L;
+
+		private int from, to;
+
+		private boolean neighbors;
+
+		private PhysicsWorld world;
+
+		private Broadphase broadphase;
+
+		private long[] contacts = new long[16];
+
+		private int count;
+
+		@Override
+		protected void compute() {
+			count = 0;
+			if (!neighbors) {
+				broadphase.findPairs(world, from, to, this);
+			} else {
+				for (int k = from; k < to; k++) {
+					broadphase.findNeighbors(world, world.awake[k], this);
+				}
+			}
+		}
+
+		@Override
+		public void pair(int i, int j) {
+			int lo = i, hi = j;
+			if (neighbors && j < i) {
+				if (!world.asleep[j]) {
+					// Found from both sides, so keep the one from i < j
+					return;
+				}
+				lo = j;
+				hi = i;
+			}
+			if (world.intersects(i, j)) {
+				if (count == contacts.length) {
+					contacts = Arrays.copyOf(contacts, 2*count);
+				}
+				contacts[count++] = pack(lo, hi);
+			}
+		}
+	}
+
+}
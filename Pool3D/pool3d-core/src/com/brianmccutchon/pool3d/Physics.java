@@ -0,0 +1,266 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * This is a purely static class containing information related to the physics
+ * of 3D pool, such as the default table dimensions and the collision math.
+ * The state of a table lives in a {@link PhysicsWorld}.
+ * 
+ * @author Brian McCutchon
+ */
+public class Physics {
+
+	/**
+	 * The default leeway allowed in comparison using
+	 * {@link #almostEq(double, double)} and related methods.
+	 */
+	public static final double EPSILON = Math.pow(10.0, -15);
+
+	/** The default dimensions of the pool "table." **/
+	public static final int TABLE_X = 40, TABLE_Y = 20, TABLE_Z = 20;
+
+	/** The amount by which a ball slows down each frame. **/
+	static final double AIR_RESISTANCE = 0.003;
+
+	/**
+	 * How close each component of a ball's velocity must be to 0 for it to be
+	 * considered stationary.
+	 */
+	static final double MOVEMENT_EPSILON = 0.001;
+
+	/**
+	 * Computes the new velocity vectors of two pool balls that have been
+	 * determined to be intersecting, using the restitution of the first
+	 * ball's world.
+	 */
+	public static void handleCollision(PoolBall ball1, PoolBall ball2) {
+		handleCollision(ball1.world, ball1.slot, ball2.world, ball2.slot,
+				ball1.world.getRestitution());
+	}
+
+	/**
+	 * Computes the new velocities of ball i of world1 and ball j of world2,
+	 * which have been determined to be intersecting. Only the components of
+	 * the velocities along the line between the centers change, so they are
+	 * found by projecting onto that line directly. Nothing is allocated.
+	 *
+	 * @param restitution The ratio of the speed at which the balls separate
+	 *   to the speed at which they approach, from 0 (perfectly inelastic) to
+	 *   1 (perfectly elastic). The balls have equal masses, so a value of 1
+	 *   swaps the components of their velocities along the normal.
+	 * @return {@code true} iff the balls were approaching each other, so
+	 *   that their velocities changed.
+	 */
+	static boolean handleCollision(PhysicsWorld world1, int i,
+			PhysicsWorld world2, int j, double restitution) {
+		double nx = world2.px[j] - world1.px[i];
+		double ny = world2.py[j] - world1.py[i];
+		double nz = world2.pz[j] - world1.pz[i];
+		double dist2 = nx*nx + ny*ny + nz*nz;
+		if (dist2 == 0) {
+			return false; // Concentric balls have no contact normal
+		}
+
+		// The speed at which ball1 approaches ball2, times the distance
+		double approach = (world1.vx[i] - world2.vx[j])*nx +
+				(world1.vy[i] - world2.vy[j])*ny +
+				(world1.vz[i] - world2.vz[j])*nz;
+
+		// Check that the balls really are colliding; that is, if left to
+		// themselves and no other balls/walls/pockets interfere, they will be
+		// closer together in x seconds, as x approaches 0 from the positive
+		// side of 0.
+		if (approach <= 0) {
+			return false;
+		}
+		if (Jfr.AVAILABLE) {
+			JfrEvents.collision(i, j, approach / Math.sqrt(dist2));
+		}
+
+		// The impulse per unit mass, scaled by 1/dist twice so that it can be
+		// applied along the unnormalized normal
+		double impulse = (1 + restitution) * 0.5 * approach / dist2;
+		world1.vx[i] -= impulse*nx;
+		world1.vy[i] -= impulse*ny;
+		world1.vz[i] -= impulse*nz;
+		world2.vx[j] += impulse*nx;
+		world2.vy[j] += impulse*ny;
+		world2.vz[j] += impulse*nz;
+		return true;
+	}
+
+	/**
+	 * Computes the same result as
+	 * {@link #handleCollision(PhysicsWorld, int, PhysicsWorld, int, double)}
+	 * with a restitution of 1 by rotating both velocities into a frame whose
+	 * x axis is the line between the centers and swapping their x components.
+	 * This is the original formulation, kept as a reference for testing.
+	 *
+	 * @param m Scratch space for the collision rotation matrix. Must have a
+	 *   length of at least 9.
+	 */
+	static void handleCollisionRotated(PhysicsWorld world1, int i,
+			PhysicsWorld world2, int j, double[] m) {
+		findCollisionRotationMat(world2.px[j] - world1.px[i],
+				world2.py[j] - world1.py[i], world2.pz[j] - world1.pz[i], m);
+
+		// Rotate so only x values matter
+		double v1x = m[0]*world1.vx[i] + m[1]*world1.vy[i] + m[2]*world1.vz[i];
+		double v1y = m[3]*world1.vx[i] + m[4]*world1.vy[i] + m[5]*world1.vz[i];
+		double v1z = m[6]*world1.vx[i] + m[7]*world1.vy[i] + m[8]*world1.vz[i];
+		double v2x = m[0]*world2.vx[j] + m[1]*world2.vy[j] + m[2]*world2.vz[j];
+		double v2y = m[3]*world2.vx[j] + m[4]*world2.vy[j] + m[5]*world2.vz[j];
+		double v2z = m[6]*world2.vx[j] + m[7]*world2.vy[j] + m[8]*world2.vz[j];
+
+		// Check that the balls really are colliding; that is, if left to
+		// themselves and no other balls/walls/pockets interfere, they will be
+		// closer together in x seconds, as x approaches 0 from the positive
+		// side of 0. Mathematically, lim_(x->0+) f(x) = true, where f(x) is
+		// true iff the balls will be closer in x seconds.
+		if (v1x > v2x) {
+			// switch x values
+			double tmp = v1x;
+			v1x = v2x;
+			v2x = tmp;
+		}
+
+		// Rotate back using the transpose of the rotation matrix
+		world1.vx[i] = m[0]*v1x + m[3]*v1y + m[6]*v1z;
+		world1.vy[i] = m[1]*v1x + m[4]*v1y + m[7]*v1z;
+		world1.vz[i] = m[2]*v1x + m[5]*v1y + m[8]*v1z;
+		world2.vx[j] = m[0]*v2x + m[3]*v2y + m[6]*v2z;
+		world2.vy[j] = m[1]*v2x + m[4]*v2y + m[7]*v2z;
+		world2.vz[j] = m[2]*v2x + m[5]*v2y + m[8]*v2z;
+	}
+
+	/**
+	 * Computes the rotation matrix that, if the balls are translated so that
+	 * ball1 is at (0, 0, 0) and the matrix is applied to the locations of the
+	 * two balls, ball2's x and y coordinates will equal 0. Also, ball2's x
+	 * coordinate should then be greater than ball1's x coordinate.
+	 * 
+	 * @param center The center of a pool ball, as {x, y, z}.
+	 * @param center2 The center of another pool ball.
+	 * @return The collision rotation matrix.
+	 */
+	static double[][] findCollisionRotationMat(
+			double[] center, double[] center2) {
+		double[] m = new double[9];
+		findCollisionRotationMat(center2[0] - center[0],
+				center2[1] - center[1], center2[2] - center[2], m);
+		return new double[][] {
+			{ m[0], m[1], m[2] },
+			{ m[3], m[4], m[5] },
+			{ m[6], m[7], m[8] },
+		};
+	}
+
+	/**
+	 * Computes the collision rotation matrix for two balls whose centers are
+	 * separated by (dx, dy, dz), as described in
+	 * {@link #findCollisionRotationMat(double[], double[])}.
+	 *
+	 * @param m The array into which to store the matrix, in row-major order.
+	 */
+	static void findCollisionRotationMat(
+			double dx, double dy, double dz, double[] m) {
+		double norm = 1.0 / Math.sqrt(dx*dx + dy*dy + dz*dz);
+		double ux = dx * norm;
+		double uy = dy * norm;
+		double uz = dz * norm;
+
+		// The axis of rotation is the cross product of the normalized
+		// separation vector and the x axis. Since both are unit vectors, the
+		// following hold:
+
+		// Their dot product is the cos of the angle between them
+		double cos = ux;
+
+		// The magnitude of their cross product is the sin of the rotation angle
+		double sin = Math.sqrt(uz*uz + uy*uy);
+
+		// The matrix below only works if the axis is a unit vector
+		double ax, ay, az;
+		if (almostEq(sin, 0)) {
+			ax = 0;
+			ay = 1;
+			az = 0;
+		} else {
+			double axisNorm = 1.0 / sin;
+			ax = 0;
+			ay =  uz * axisNorm;
+			az = -uy * axisNorm;
+		}
+
+		// Rotation matrix given an axis and an angle. Source:
+		//http://en.wikipedia.org/wiki/Rotation_matrix#Rotation_matrix_from_axis_and_angle
+		m[0] = cos+ax*ax*(1-cos);
+		m[1] = ax*ay*(1-cos)-az*sin;
+		m[2] = ax*az*(1-cos)+ay*sin;
+		m[3] = ay*ax*(1-cos)+az*sin;
+		m[4] = cos+ay*ay*(1-cos);
+		m[5] = ay*az*(1-cos)-ax*sin;
+		m[6] = az*ax*(1-cos)-ay*sin;
+		m[7] = az*ay*(1-cos)+ax*sin;
+		m[8] = cos+az*az*(1-cos);
+	}
+
+	/**
+	 * Rotates a vector using a provided rotation matrix.
+	 * @param velocity The vector to rotate, as {x, y, z}.
+	 * @param m The 3x3 rotation matrix.
+	 */
+	static void rotateVec(double[] velocity, double[][] m) {
+		double x = velocity[0], y = velocity[1], z = velocity[2];
+		velocity[0] = x * m[0][0] + y * m[0][1] + z * m[0][2];
+		velocity[1] = x * m[1][0] + y * m[1][1] + z * m[1][2];
+		velocity[2] = x * m[2][0] + y * m[2][1] + z * m[2][2];
+	}
+
+	/**
+	 * Determines if a ball is hitting a wall using the specified component.
+	 * @param comp     The component of the ball's translation
+	 * @param velComp  The same component of the ball's velocity
+	 * @param tableDim The dimension of the table along this component
+	 * @return {@code true} iff the ball hits one of the two walls along this
+	 *   component.
+	 */
+	static boolean hitsWall(double comp, double velComp, double tableDim) {
+		return (Math.abs(comp) + PoolBall.RADIUS > tableDim/2 &&
+				Math.signum(comp) == Math.signum(velComp));
+	}
+
+	/**
+	 * Returns true if the values provided are approximately equal.
+	 * That is, they are within {@link #EPSILON} of each other.
+	 * 
+	 * @param d1 A value to compare.
+	 * @param d2 The other value to compare.
+	 * @return {@code true} if and only if d1 and d2 are within
+	 * {@link Physics#EPSILON} of each other.
+	 */
+	static boolean almostEq(double d1, double d2) {
+		return Math.abs(d1 - d2) < EPSILON;
+	}
+
+	/**
+	 * Checks whether two numbers are almost equal to each other. That is,
+	 * within {@link Physics#EPSILON}.
+	 * @param x A number to compare.
+	 * @param n A number to compare.
+	 * @return {@code true} iff they are almost equal.
+	 */
+	private static boolean almostEq(double x, double n, double epsilon) {
+		return Math.abs(x - n) < epsilon;
+	}
+
+	/**
+	 * Computes linear "air resistance" on one component of a ball's velocity.
+	 * @param v The component of the ball's velocity.
+	 * @param dt The fraction of a frame that has passed.
+	 * @return The component after that much air resistance.
+	 */
+	static double doAirResistance(double v, double dt) {
+		return Math.signum(v) * Math.max(0, Math.abs(v) - AIR_RESISTANCE*dt);
+	}
+
+}
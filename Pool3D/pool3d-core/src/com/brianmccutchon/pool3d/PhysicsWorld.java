@@ -0,0 +1,618 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.Physics.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A table full of pool balls. The state of every ball is held in flat
+ * primitive arrays indexed by ball number, so stepping the simulation does
+ * not allocate anything once the world has been constructed.
+ * {@link PoolBall} objects are only views over one slot of a world.
+ *
+ * <p>A ball that has been at rest for {@link #SLEEP_STEPS} steps in a row
+ * falls asleep, and steps skip it until something wakes it: a collision
+ * with an awake ball, or a call to one of the setters. A table on which
+ * most balls are at rest therefore costs little more to step than its
+ * moving balls do. While most balls are awake, the kernel still goes
+ * through the sleeping ones, which is faster than picking out the
+ * others.</p>
+ *
+ * <p>A ball moves by its whole velocity in a step, so a ball moving faster
+ * than a diameter per step could pass through another without touching
+ * it. A step in which any ball is moving fast is therefore split into
+ * sub-steps, just enough that no ball moves further than a set
+ * {@linkplain #setSubstepFraction fraction} of its radius in one. A
+ * collision can send a ball off faster than any ball was moving before it,
+ * so if one does, the rest of the step is split again. Slow steps, which
+ * are most of a game, are not split, and cost nothing extra.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class PhysicsWorld {
+
+	/**
+	 * The number of steps in a row for which a ball must have been at rest
+	 * before it falls asleep. A ball is at rest when every component of its
+	 * velocity is within {@link Physics#MOVEMENT_EPSILON} of 0.
+	 */
+	static final int SLEEP_STEPS = 10;
+
+	/**
+	 * The share of the balls that must be awake for the kernel to move the
+	 * whole of each array, sleeping balls included, rather than only the
+	 * awake balls one at a time. Going through the arrays in order pays for
+	 * the sleeping balls while at least a third or so are awake. In
+	 * {@code KernelBenchmark}, on 100,000 balls with half awake, the whole
+	 * arrays take 1.4 ms with the vector kernel and 2.4 ms with the scalar
+	 * one, against 2.8 ms for the awake balls alone. With a quarter awake,
+	 * the scalar kernel takes 1.6 ms against 1.5 ms.
+	 */
+	static final double DENSE_SHARE = 0.5;
+
+	/**
+	 * The default fraction of its radius that a ball may move in one
+	 * sub-step. Two balls moving head on at this speed close by a diameter
+	 * at most, so neither can pass the other, and a shot at the usual speed
+	 * of 1 is never split.
+	 */
+	public static final double DEFAULT_SUBSTEP_FRACTION = 1;
+
+	/**
+	 * The most sub-steps that a step is split into, so that an absurdly
+	 * fast ball cannot stall the simulation.
+	 */
+	public static final int MAX_SUBSTEPS = 64;
+
+	/** The number of balls in this world. **/
+	private final int size;
+
+	/** The dimensions of this world's table. **/
+	public final double tableX, tableY, tableZ;
+
+	/**
+	 * The coordinates of the center of each ball. Move a sleeping ball with
+	 * {@link #setPosition}, which wakes it, so that the broadphase sees it
+	 * move.
+	 */
+	public final double[] px, py, pz;
+
+	/** The velocity of each ball, in units per frame. **/
+	public final double[] vx, vy, vz;
+
+	/**
+	 * The orientation of each ball as a unit quaternion. Ball i's quaternion
+	 * is stored as (w, x, y, z) starting at index {@code 4*i}.
+	 */
+	public final double[] ori;
+
+	/** {@code true} iff at least one ball moved during the last step. **/
+	boolean moving = false;
+
+	/** The number of steps in a row for which each ball has been at rest. **/
+	final int[] restSteps;
+
+	/** {@code true} for each ball that is asleep. **/
+	final boolean[] asleep;
+
+	/** The indices of the balls that are awake, in no particular order. **/
+	final int[] awake;
+
+	/** The number of balls in {@link #awake}. **/
+	int awakeCount;
+
+	/** The coefficient of restitution of collisions between balls. **/
+	private double restitution = 1;
+
+	/** The fraction of its radius that a ball may move in one sub-step. **/
+	private double substepFraction = DEFAULT_SUBSTEP_FRACTION;
+
+	/** The number of sub-steps that the last step was split into. **/
+	private int substeps = 1;
+
+	/** The number of collisions between balls in the last step. **/
+	private int collisions;
+
+	/** The number of times a ball bounced off a wall in the last step. **/
+	private int wallBounces;
+
+	/** The kernel used by worlds that have not been given one. **/
+	private static final StepKernel DEFAULT_KERNEL = StepKernel.load();
+
+	/** Moves the balls and bounces them off the walls. **/
+	private StepKernel kernel = DEFAULT_KERNEL;
+
+	/** Counts the bounces found by {@link #kernel}. **/
+	private final StepKernel.BounceCallback bounce = this::bounced;
+
+	/** Finds the pairs of balls that might be colliding. **/
+	private Broadphase broadphase = new BruteForceBroadphase();
+
+	/**
+	 * {@code true} if sleeping balls may have moved since the broadphase was
+	 * last updated, so that it must look at every ball. Otherwise, it is only
+	 * told of the balls that are awake.
+	 */
+	boolean updateAll = true;
+
+	/**
+	 * Finds the collisions between the pairs found by {@link #broadphase},
+	 * on several threads if it has a pool.
+	 */
+	private ParallelNarrowphase narrowphase;
+
+	/**
+	 * Constructs a world with room for the given number of balls on a table
+	 * of the default size. All balls start at the origin, at rest, with the
+	 * identity orientation.
+	 *
+	 * @param size The number of balls.
+	 */
+	public PhysicsWorld(int size) {
+		this(size, TABLE_X, TABLE_Y, TABLE_Z);
+	}
+
+	/**
+	 * Constructs a world with room for the given number of balls on a table
+	 * with the given dimensions. The table is centered on the origin.
+	 *
+	 * @param size The number of balls.
+	 * @param tableX The length of the table along the x axis.
+	 * @param tableY The length of the table along the y axis.
+	 * @param tableZ The length of the table along the z axis.
+	 */
+	public PhysicsWorld(int size, double tableX, double tableY, double tableZ) {
+		this.size   = size;
+		this.tableX = tableX;
+		this.tableY = tableY;
+		this.tableZ = tableZ;
+		px  = new double[size];
+		py  = new double[size];
+		pz  = new double[size];
+		vx  = new double[size];
+		vy  = new double[size];
+		vz  = new double[size];
+		ori = new double[4*size];
+		restSteps = new int[size];
+		asleep    = new boolean[size];
+		awake     = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			ori[4*i] = 1;
+			awake[i] = i;
+		}
+		awakeCount = size;
+		narrowphase = new ParallelNarrowphase(size, null);
+	}
+
+	/**
+	 * Makes the state of this world a copy of the state of another world: the
+	 * positions, velocities and orientations of the balls, which of them are
+	 * asleep, the restitution and the sub-step fraction. The broadphase is
+	 * not copied.
+	 *
+	 * @param world A world with the same number of balls and table size.
+	 */
+	public void copyFrom(PhysicsWorld world) {
+		if (world.size != size || world.tableX != tableX ||
+				world.tableY != tableY || world.tableZ != tableZ) {
+			throw new IllegalArgumentException("Worlds differ in size");
+		}
+		System.arraycopy(world.px,  0, px,  0, size);
+		System.arraycopy(world.py,  0, py,  0, size);
+		System.arraycopy(world.pz,  0, pz,  0, size);
+		System.arraycopy(world.vx,  0, vx,  0, size);
+		System.arraycopy(world.vy,  0, vy,  0, size);
+		System.arraycopy(world.vz,  0, vz,  0, size);
+		System.arraycopy(world.ori, 0, ori, 0, 4*size);
+		System.arraycopy(world.restSteps, 0, restSteps, 0, size);
+		updateAll = true;
+		System.arraycopy(world.asleep,    0, asleep,    0, size);
+		System.arraycopy(world.awake,     0, awake,     0, size);
+		awakeCount  = world.awakeCount;
+		moving      = world.moving;
+		restitution = world.restitution;
+		substepFraction = world.substepFraction;
+	}
+
+	/** Returns the number of balls in this world. **/
+	public int size() {
+		return size;
+	}
+
+	/** Returns {@code true} iff at least one ball moved during the last step. **/
+	public boolean ballsAreMoving() {
+		return moving;
+	}
+
+	/** Returns {@code true} iff ball i is asleep. **/
+	public boolean isAsleep(int i) {
+		return asleep[i];
+	}
+
+	/** Returns the number of collisions between balls in the last step. **/
+	public int getCollisionCount() {
+		return collisions;
+	}
+
+	/** Returns the number of times a ball bounced off a wall in the last step. **/
+	public int getWallBounceCount() {
+		return wallBounces;
+	}
+
+	/**
+	 * Returns the number of sub-steps that the last step was split into: 1
+	 * unless a ball was moving fast.
+	 */
+	public int getSubstepCount() {
+		return substeps;
+	}
+
+	/** Returns the number of balls that are awake. **/
+	public int getAwakeCount() {
+		return awakeCount;
+	}
+
+	/**
+	 * Wakes ball i, so that the next step moves it and tests it for
+	 * collisions. The setters call this, but code that writes to the state
+	 * arrays directly must call it, or {@link #wakeAll()}, itself.
+	 */
+	public void wake(int i) {
+		restSteps[i] = 0;
+		if (asleep[i]) {
+			asleep[i] = false;
+			awake[awakeCount++] = i;
+		}
+	}
+
+	/** Wakes every ball. **/
+	public void wakeAll() {
+		for (int i = 0; i < size; i++) {
+			wake(i);
+		}
+	}
+
+	/** Returns the broadphase used to find potential collisions. **/
+	public Broadphase getBroadphase() {
+		return broadphase;
+	}
+
+	/**
+	 * Sets the broadphase used to find potential collisions. The default is a
+	 * {@link BruteForceBroadphase}. Since a broadphase may keep state about
+	 * the world, it must not be shared with other worlds.
+	 */
+	public void setBroadphase(Broadphase broadphase) {
+		this.broadphase = broadphase;
+		updateAll = true;
+	}
+
+	/** Returns the kernel that moves the balls. **/
+	public StepKernel getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Sets the kernel that moves the balls. The default is the one returned
+	 * by {@link StepKernel#load()}, which is the same for every world.
+	 */
+	public void setKernel(StepKernel kernel) {
+		this.kernel = kernel;
+	}
+
+	/**
+	 * Returns the pool on which collisions are found, or null if they are
+	 * found on the thread that steps.
+	 */
+	public ForkJoinPool getNarrowphasePool() {
+		return narrowphase.getPool();
+	}
+
+	/**
+	 * Sets the pool on which collisions are found, or null, the default, to
+	 * find them on the thread that steps. With a pool, the broadphase is
+	 * asked for the pairs of several ranges of balls at once, so it must
+	 * allow {@link Broadphase#findPairs} to be called from several threads
+	 * after an update, as those in this package do.
+	 *
+	 * <p>The collisions found are then resolved in order of the lower and
+	 * then the higher index of each pair, as they are without a pool, so the
+	 * results are the same whatever the size of the pool, or without one.
+	 * While some balls are asleep, the pool finds
+	 * the collisions of several ranges of the awake balls at once, with
+	 * {@link Broadphase#findNeighbors}, which must likewise allow calls from
+	 * several threads.</p>
+	 */
+	public void setNarrowphasePool(ForkJoinPool pool) {
+		narrowphase = new ParallelNarrowphase(size, pool);
+	}
+
+	/** Returns the coefficient of restitution of collisions between balls. **/
+	public double getRestitution() {
+		return restitution;
+	}
+
+	/**
+	 * Sets the coefficient of restitution of collisions between balls: the
+	 * ratio of the speed at which two balls separate after a collision to the
+	 * speed at which they approached. The default is 1, a perfectly elastic
+	 * collision. Collisions with walls are not affected.
+	 *
+	 * @param restitution A value from 0 to 1, inclusive.
+	 */
+	public void setRestitution(double restitution) {
+		if (!(restitution >= 0 && restitution <= 1)) {
+			throw new IllegalArgumentException(
+					"Invalid restitution: " + restitution);
+		}
+		this.restitution = restitution;
+	}
+
+	/** Returns the fraction of its radius that a ball may move in a sub-step. **/
+	public double getSubstepFraction() {
+		return substepFraction;
+	}
+
+	/**
+	 * Sets the fraction of its radius that a ball may move in one sub-step.
+	 * Each step is split into as few sub-steps as keep the fastest ball
+	 * within it, up to {@link #MAX_SUBSTEPS}. Smaller fractions catch
+	 * glancing collisions between fast balls sooner, at the cost of more
+	 * sub-steps. The default is {@link #DEFAULT_SUBSTEP_FRACTION}.
+	 *
+	 * @param fraction More than 0. {@link Double#POSITIVE_INFINITY} never
+	 *   splits a step.
+	 */
+	public void setSubstepFraction(double fraction) {
+		if (!(fraction > 0)) {
+			throw new IllegalArgumentException(
+					"Invalid sub-step fraction: " + fraction);
+		}
+		substepFraction = fraction;
+	}
+
+	/** Moves the center of ball i to (x, y, z). **/
+	public void setPosition(int i, double x, double y, double z) {
+		px[i] = x;
+		py[i] = y;
+		pz[i] = z;
+		wake(i);
+	}
+
+	/** Sets the velocity of ball i to (x, y, z). **/
+	public void setVelocity(int i, double x, double y, double z) {
+		vx[i] = x;
+		vy[i] = y;
+		vz[i] = z;
+		wake(i);
+	}
+
+	/** Sets the orientation of ball i to the unit quaternion (w, x, y, z). **/
+	public void setOrientation(int i, double w, double x, double y, double z) {
+		ori[4*i]   = w;
+		ori[4*i+1] = x;
+		ori[4*i+2] = y;
+		ori[4*i+3] = z;
+	}
+
+	/**
+	 * Gives ball i a uniformly distributed random orientation, using
+	 * Shoemake's method for sampling unit quaternions.
+	 */
+	public void randomizeOrientation(int i) {
+		double u1 = Math.random();
+		double a  = Math.random()*Math.PI*2;
+		double b  = Math.random()*Math.PI*2;
+		double r1 = Math.sqrt(1 - u1);
+		double r2 = Math.sqrt(u1);
+		setOrientation(i, r2*Math.cos(b), r1*Math.sin(a),
+				r1*Math.cos(a), r2*Math.sin(b));
+	}
+
+	/** Determines if ball i intersects with ball j. **/
+	public boolean intersects(int i, int j) {
+		double xDiff = px[i] - px[j];
+		double yDiff = py[i] - py[j];
+		double zDiff = pz[i] - pz[j];
+		return xDiff*xDiff + yDiff*yDiff + zDiff*zDiff <
+				PoolBall.DIAMETER*PoolBall.DIAMETER;
+	}
+
+	/**
+	 * Computes the state of the balls after the next frame.
+	 */
+	public void step() {
+		Object event = Jfr.AVAILABLE ? JfrEvents.beginStep() : null;
+		moving = false;
+		collisions  = 0;
+		wallBounces = 0;
+
+		int left = substepsFor(countRestAndMaxSpeed());
+		double dt = 1.0 / left;
+		double most = substepFraction * PoolBall.RADIUS;
+		substeps = 0;
+		while (left > 0) {
+			double hit = Math.sqrt(substep(dt));
+			substeps++;
+			left--;
+			if (left > 0 && hit * dt > most) {
+				// A ball that was hit would move too far in the sub-steps
+				// left, so split what is left of the frame again
+				int n = (int) Math.min(MAX_SUBSTEPS - substeps,
+						Math.ceil(left * dt * hit / most));
+				if (n > left) {
+					dt = left * dt / n;
+					left = n;
+				}
+			}
+		}
+
+		// Put the balls that have been at rest long enough to sleep
+		int kept = 0;
+		for (int k = 0; k < awakeCount; k++) {
+			int i = awake[k];
+			// A ball hit since it last moved is not at rest
+			if (restSteps[i] >= SLEEP_STEPS &&
+					vx[i] == 0 && vy[i] == 0 && vz[i] == 0) {
+				asleep[i] = true;
+			} else {
+				awake[kept++] = i;
+			}
+		}
+		awakeCount = kept;
+
+		if (event != null) {
+			JfrEvents.endStep(event, this);
+		}
+	}
+
+	/**
+	 * Counts this step as one more at rest for each ball that is awake,
+	 * which the kernel undoes for the balls that move in any sub-step, and
+	 * returns the speed of the fastest of them.
+	 */
+	private double countRestAndMaxSpeed() {
+		double max2 = 0;
+		for (int k = 0; k < awakeCount; k++) {
+			int i = awake[k];
+			restSteps[i]++;
+			max2 = Math.max(max2, speed2(i));
+		}
+		return Math.sqrt(max2);
+	}
+
+	/**
+	 * Returns the number of sub-steps needed for a ball moving at a speed to
+	 * move no more than {@link #substepFraction} of its radius in each.
+	 */
+	int substepsFor(double speed) {
+		double most = substepFraction * PoolBall.RADIUS;
+		if (!(speed > most)) {
+			return 1;
+		}
+		return (int) Math.min(MAX_SUBSTEPS, Math.ceil(speed / most));
+	}
+
+	/**
+	 * Moves the balls through a fraction of a frame, and resolves the
+	 * collisions between them and with the walls. A ball that moves in any
+	 * sub-step loses the step at rest that {@link #step} counted for it.
+	 *
+	 * @param dt The fraction of a frame, which is exactly 1 when the frame
+	 *   is not split, so that the results are the same as without sub-steps.
+	 * @return The square of the speed of the fastest ball in a collision.
+	 */
+	private double substep(double dt) {
+		// Sleeping balls are at rest, so the kernel leaves them where they
+		// are, and they cannot bounce
+		boolean dense = awakeCount >= DENSE_SHARE * size;
+		if (dense) {
+			// The whole of each array, which the kernel can go through in
+			// order
+			moving |= kernel.integrate(px, py, pz, vx, vy, vz, restSteps,
+					dt, 0, size);
+		} else {
+			for (int k = 0; k < awakeCount; k++) {
+				moving |= ScalarKernel.integrate(px, py, pz, vx, vy, vz,
+						restSteps, dt, awake[k]);
+			}
+		}
+
+		if (updateAll || awakeCount == size) {
+			broadphase.update(this);
+			updateAll = false;
+		} else {
+			// Sleeping balls have not moved since the last update
+			broadphase.update(this, awake, awakeCount);
+		}
+		double hit = resolveContacts();
+
+		// Check whether it is hitting a wall
+		if (dense) {
+			kernel.reflect(px, vx, tableX, 0, 0, size, bounce);
+			kernel.reflect(py, vy, tableY, 1, 0, size, bounce);
+			kernel.reflect(pz, vz, tableZ, 2, 0, size, bounce);
+		} else {
+			for (int k = 0; k < awakeCount; k++) {
+				int i = awake[k];
+				if (hitsWall(px[i], vx[i], tableX)) {
+					bounced(i, 0, vx[i]);
+					vx[i] = -vx[i];
+				}
+				if (hitsWall(py[i], vy[i], tableY)) {
+					bounced(i, 1, vy[i]);
+					vy[i] = -vy[i];
+				}
+				if (hitsWall(pz[i], vz[i], tableZ)) {
+					bounced(i, 2, vz[i]);
+					vz[i] = -vz[i];
+				}
+			}
+		}
+		return hit;
+	}
+
+	/**
+	 * Finds the collisions with {@link #narrowphase}, then resolves them in
+	 * order, waking the sleeping balls that are hit.
+	 *
+	 * @return The square of the speed of the fastest ball in a collision,
+	 *   once they have all been resolved.
+	 */
+	private double resolveContacts() {
+		int n = narrowphase.find(this, broadphase);
+		long[] contacts = narrowphase.contacts();
+		int wasAwake = awakeCount;
+		for (int k = 0; k < n; k++) {
+			int i = ParallelNarrowphase.first(contacts[k]);
+			int j = ParallelNarrowphase.second(contacts[k]);
+			if (handleCollision(this, i, this, j, restitution)) {
+				collisions++;
+			}
+			if (awakeCount < size) {
+				wakeIfHit(i);
+				wakeIfHit(j);
+			}
+		}
+		for (int k = wasAwake; k < awakeCount; k++) {
+			asleep[awake[k]] = false;
+		}
+
+		// A ball in several collisions only has its final speed once the
+		// last is resolved
+		double max2 = 0;
+		for (int k = 0; k < n; k++) {
+			int i = ParallelNarrowphase.first(contacts[k]);
+			int j = ParallelNarrowphase.second(contacts[k]);
+			max2 = Math.max(max2, Math.max(speed2(i), speed2(j)));
+		}
+		return max2;
+	}
+
+	/** Returns the square of the speed of ball i. **/
+	private double speed2(int i) {
+		return vx[i]*vx[i] + vy[i]*vy[i] + vz[i]*vz[i];
+	}
+
+	/**
+	 * Adds ball i to the awake balls if it is asleep and has been hit. It
+	 * stays marked asleep until the caller is done with the contacts.
+	 */
+	private void wakeIfHit(int i) {
+		if (asleep[i] && restSteps[i] != 0 &&
+				(vx[i] != 0 || vy[i] != 0 || vz[i] != 0)) {
+			restSteps[i] = 0;
+			awake[awakeCount++] = i;
+		}
+	}
+
+	/** Counts a bounce of ball i off a wall normal to an axis. **/
+	private void bounced(int i, int axis, double v) {
+		wallBounces++;
+		if (Jfr.AVAILABLE) {
+			JfrEvents.wallBounce(i, axis, Math.abs(v));
+		}
+	}
+
+}
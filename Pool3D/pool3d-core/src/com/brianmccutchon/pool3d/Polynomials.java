@@ -0,0 +1,193 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * Utilities for working with polynomials of low degree. A polynomial of
+ * degree n is represented by an array c of at least n+1 coefficients, such
+ * that its value at x is {@code c[0] + c[1]*x + ... + c[n]*x^n}.
+ *
+ * @author Brian McCutchon
+ */
+final class Polynomials {
+
+	/** The greatest number of bisection steps used to refine a root. **/
+	private static final int MAX_BISECTIONS = 200;
+
+	private Polynomials() {
+		// Not instantiable
+	}
+
+	/** Evaluates a polynomial of the given degree at x. **/
+	static double eval(double[] c, int deg, double x) {
+		return eval(c, 0, deg, x);
+	}
+
+	/** Evaluates a polynomial whose coefficients start at c[off]. **/
+	private static double eval(double[] c, int off, int deg, double x) {
+		double result = c[off+deg];
+		for (int k = deg-1; k >= 0; k--) {
+			result = result*x + c[off+k];
+		}
+		return result;
+	}
+
+	/** Evaluates the derivative of a polynomial of the given degree at x. **/
+	static double evalDerivative(double[] c, int deg, double x) {
+		double result = 0;
+		for (int k = deg; k >= 1; k--) {
+			result = result*x + k*c[k];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the length of the workspace that {@link #roots} needs for a
+	 * polynomial of the given degree.
+	 */
+	static int workspaceSize(int deg) {
+		// The derivative and its roots, at each degree down to 3
+		int size = 0;
+		for (int d = deg; d >= 3; d--) {
+			size += 2*d;
+		}
+		return size;
+	}
+
+	/**
+	 * Finds the real roots of a polynomial that lie in [lo, hi].
+	 *
+	 * <p>Roots of quadratics are found in closed form. For higher degrees, the
+	 * roots of the derivative split [lo, hi] into intervals on which the
+	 * polynomial is monotonic, so each of them holds at most one root, which
+	 * is then found by bisection.</p>
+	 *
+	 * @param c The coefficients of the polynomial.
+	 * @param deg The degree of the polynomial.
+	 * @param lo The lower bound of the interval to search.
+	 * @param hi The upper bound of the interval to search.
+	 * @param out Receives the roots in increasing order. Must have room for
+	 *   at least deg of them.
+	 * @param work Scratch space, so that nothing is allocated. Must have room
+	 *   for at least {@link #workspaceSize workspaceSize(deg)} values.
+	 * @return The number of roots found.
+	 */
+	static int roots(double[] c, int deg, double lo, double hi, double[] out,
+			double[] work) {
+		return roots(c, 0, deg, lo, hi, out, 0, work, 0);
+	}
+
+	/**
+	 * Finds the roots of the polynomial whose coefficients start at c[off],
+	 * storing them from out[outOff]. The workspace from work[free] is unused.
+	 */
+	private static int roots(double[] c, int off, int deg, double lo,
+			double hi, double[] out, int outOff, double[] work, int free) {
+		while (deg > 0 && c[off+deg] == 0) {
+			deg--;
+		}
+
+		switch (deg) {
+		case 0:
+			return 0;
+		case 1:
+			return addIfIn(-c[off] / c[off+1], lo, hi, out, outOff) - outOff;
+		case 2:
+			return quadraticRoots(c[off+2], c[off+1], c[off], lo, hi,
+					out, outOff) - outOff;
+		default:
+			break;
+		}
+
+		int deriv = free;
+		for (int k = 1; k <= deg; k++) {
+			work[deriv+k-1] = k*c[off+k];
+		}
+		int crit = free + deg;
+		int nCrit = roots(work, deriv, deg-1, lo, hi, work, crit,
+				work, free + 2*deg);
+		work[crit + nCrit++] = hi;
+
+		int n = outOff;
+		double a = lo;
+		double fa = eval(c, off, deg, a);
+		if (fa == 0) {
+			out[n++] = a;
+		}
+		for (int k = 0; k < nCrit; k++) {
+			double b = work[crit+k];
+			if (b <= a) {
+				continue;
+			}
+			double fb = eval(c, off, deg, b);
+			if (fb == 0) {
+				out[n++] = b;
+			} else if ((fa < 0 && fb > 0) || (fa > 0 && fb < 0)) {
+				out[n++] = bisect(c, off, deg, a, b, fa);
+			}
+			a  = b;
+			fa = fb;
+		}
+		return n - outOff;
+	}
+
+	/**
+	 * Finds the roots of a*x^2 + b*x + c that lie in [lo, hi], storing them
+	 * from out[n], and returns the index after the last.
+	 */
+	private static int quadraticRoots(double a, double b, double c,
+			double lo, double hi, double[] out, int n) {
+		double disc = b*b - 4*a*c;
+		if (disc < 0) {
+			return 0;
+		}
+
+		// Avoid cancellation; see Numerical Recipes, section 5.6
+		double q = -0.5 * (b + Math.copySign(Math.sqrt(disc), b));
+		double r1 = q / a;
+		double r2 = (q == 0) ? r1 : c / q;
+		if (r1 > r2) {
+			double tmp = r1;
+			r1 = r2;
+			r2 = tmp;
+		}
+
+		n = addIfIn(r1, lo, hi, out, n);
+		if (r2 != r1) {
+			n = addIfIn(r2, lo, hi, out, n);
+		}
+		return n;
+	}
+
+	/** Stores x in out[n] if it is in [lo, hi] and returns the next index. **/
+	private static int addIfIn(double x, double lo, double hi,
+			double[] out, int n) {
+		if (x >= lo && x <= hi) {
+			out[n++] = x;
+		}
+		return n;
+	}
+
+	/**
+	 * Finds the root of a polynomial in [a, b] by bisection, given that its
+	 * value changes sign exactly once in that interval.
+	 */
+	private static double bisect(double[] c, int off, int deg,
+			double a, double b, double fa) {
+		for (int k = 0; k < MAX_BISECTIONS; k++) {
+			double mid = 0.5 * (a + b);
+			if (mid <= a || mid >= b) {
+				break; // Out of precision
+			}
+			double fm = eval(c, off, deg, mid);
+			if (fm == 0) {
+				return mid;
+			} else if ((fm < 0) == (fa < 0)) {
+				a  = mid;
+				fa = fm;
+			} else {
+				b = mid;
+			}
+		}
+		return 0.5 * (a + b);
+	}
+
+}
@@ -0,0 +1,267 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.*;
+
+import static com.brianmccutchon.pool3d.BallType.*;
+
+/**
+ * A view over one slot of a {@link PhysicsWorld}. The ball's position,
+ * velocity, and orientation live in the world's arrays; a PoolBall only adds
+ * the data that never changes, such as its number and color.
+ */
+public class PoolBall {
+
+	public static final int RADIUS = 1;
+
+	public static final int DIAMETER = RADIUS*2;
+
+	private static final double DIAMETER_SQUARED = DIAMETER*DIAMETER;
+
+	/** The display color of this pool ball, as 0xRRGGBB. **/
+	public final int hue;
+
+	/** The type of this ball. **/
+	public final BallType type;
+
+	/** The number of this ball. 0 if it is the cue ball. **/
+	public final int ballNum;
+
+	/** The world holding the state of this ball. **/
+	public final PhysicsWorld world;
+
+	/** The index of this ball in {@link #world}'s arrays. **/
+	public final int slot;
+
+	/** The colors of the balls, as 0xRRGGBB. **/
+	private static final int
+			WHITE  = 0xFFFFFF,
+			YELLOW = 0xFFFF00,
+			BLUE   = 0x0000FF,
+			RED    = 0xFF0000,
+			PURPLE = 0x800080,
+			ORANGE = 0xFFC800,
+			GREEN  = 0x00FF00,
+			BROWN  = 0x8C4512,
+			BLACK  = 0x000000;
+
+	/**
+	 * Possible locations of all balls except the cue and eight balls,
+	 * which have different placement rules.
+	 */
+	private static List<double[]> rackLocations = Arrays.asList(
+			new double[] {   1.633,    -1.0, -0.5774 },
+			new double[] {   1.633,     1.0, -0.5774 },
+			new double[] {   1.633,     0.0,  1.1547 },
+			new double[] {     0.0,    -2.0,     0.0 },
+			new double[] {     0.0,     2.0,     0.0 },
+			new double[] {     0.0,     1.0,  1.7321 },
+			new double[] {     0.0,    -1.0,  1.7321 },
+			new double[] {     0.0,     1.0, -1.7321 },
+			new double[] {     0.0,    -1.0, -1.7321 },
+			new double[] {  -1.633,    -1.0,  0.5774 },
+			new double[] {  -1.633,     1.0,  0.5774 },
+			new double[] {  -1.633,     0.0, -1.1547 },
+			new double[] {  -3.267,     0.0,     0.0 },
+			new double[] {   3.267,     0.0,     0.0 });
+
+	/** This array holds information from which balls can be constructed. **/
+	private static final PoolBall[] balls = {
+		new PoolBall(0, 0, 0,               WHITE,    CUE,  0),
+		new PoolBall(0, 0, 0,              YELLOW,  SOLID,  1),
+		new PoolBall(0, 0, 0,                BLUE,  SOLID,  2),
+		new PoolBall(0, 0, 0,                 RED,  SOLID,  3),
+		new PoolBall(0, 0, 0,              PURPLE,  SOLID,  4),
+		new PoolBall(0, 0, 0,              ORANGE,  SOLID,  5),
+		new PoolBall(0, 0, 0,               GREEN,  SOLID,  6),
+		new PoolBall(0, 0, 0,               BROWN,  SOLID,  7),
+		new PoolBall(0, 0, 0,               BLACK,  EIGHT,  8),
+		new PoolBall(0, 0, 0,              YELLOW, STRIPE,  9),
+		new PoolBall(0, 0, 0,                BLUE, STRIPE, 10),
+		new PoolBall(0, 0, 0,                 RED, STRIPE, 11),
+		new PoolBall(0, 0, 0,              PURPLE, STRIPE, 12),
+		new PoolBall(0, 0, 0,              ORANGE, STRIPE, 13),
+		new PoolBall(0, 0, 0,               GREEN, STRIPE, 14),
+		new PoolBall(0, 0, 0,               BROWN, STRIPE, 15),
+	};
+
+	/**
+	 * The smoothness of the wireframe. The resulting sphere
+	 * will be composed of {@code 5*4^n} polygons, where n is the desired
+	 * smoothness provided. This should be a small number, such as 6 or 7.
+	 */
+	static final int SMOOTHNESS = 4;
+
+	/**
+	 * Constructs a new PoolBall, requiring the caller to supply data about it.
+	 * The ball gets a world of its own and a random orientation.
+	 * To have the data automatically determined by the ball number, use
+	 * {@link PoolBall#create(int)}.
+	 *
+	 * @param x The x-coordinate of the center of this pool ball.
+	 * @param y The y-coordinate of the center of this pool ball.
+	 * @param z The z-coordinate of the center of this pool ball.
+	 * @param hue The display color of this pool ball.
+	 * @param type The type of this pool ball.
+	 * @param ballNum The number of this ball. 0 if it is the cue ball.
+	 */
+	public PoolBall(double x, double y, double z,
+			int hue, BallType type, int ballNum) {
+		this(new PhysicsWorld(1), 0, hue, type, ballNum);
+		world.setPosition(slot, x, y, z);
+		world.randomizeOrientation(slot);
+	}
+
+	/**
+	 * Constructs a view over a ball whose state is already held in a world.
+	 *
+	 * @param world The world holding the state of this ball.
+	 * @param slot The index of this ball in the world's arrays.
+	 * @param hue The display color of this pool ball.
+	 * @param type The type of this pool ball.
+	 * @param ballNum The number of this ball. 0 if it is the cue ball.
+	 */
+	public PoolBall(PhysicsWorld world, int slot,
+			int hue, BallType type, int ballNum) {
+		this.world   = world;
+		this.slot    = slot;
+		this.hue     = hue;
+		this.type    = type;
+		this.ballNum = ballNum;
+	}
+
+	/** Returns a new array holding the translation of this ball: {x, y, z}. **/
+	public double[] getTranslation() {
+		return new double[] { world.px[slot], world.py[slot], world.pz[slot] };
+	}
+
+	public void setTranslation(double x, double y, double z) {
+		world.setPosition(slot, x, y, z);
+	}
+
+	/** Returns a new array holding the velocity of this ball: {x, y, z}. **/
+	public double[] getVelocity() {
+		return new double[] { world.vx[slot], world.vy[slot], world.vz[slot] };
+	}
+
+	public void setVelocity(double x, double y, double z) {
+		world.setVelocity(slot, x, y, z);
+	}
+
+	/**
+	 * Constructs a new PoolBall using the default values for a ball with this
+	 * number.
+	 *
+	 * @param ballNum The number of this ball. 0 if it is the cue ball.
+	 */
+	public PoolBall(int ballNum) {
+		// TODO Write a PoolBall constructor that will, given the number of a
+		// ball, read all the other data from a file.
+		throw new RuntimeException("Not yet implemented.");
+	}
+
+	/**
+	 * Returns a new PoolBall with the given ball number and the default values
+	 * for a ball with this number.
+	 *
+	 * @param ballNum The number of this ball. 0 if it is the cue ball.
+	 */
+	public static PoolBall create(int ballNum) {
+		PoolBall ball = balls[ballNum];
+		return new PoolBall(0, 0, 0, ball.hue, ball.type, ballNum);
+	}
+
+	/**
+	 * Returns an ordered array of PoolBalls. Their order is determined by
+	 * their ball numbers, but their locations will vary according to the
+	 * following rules:
+	 * <ul>
+	 *   <li>They form a sort of 3D diamond shape.</li>
+	 *   <li>The 1 ball is in front.</li>
+	 *   <li>The 8 ball is in the middle.</li>
+	 * </ul>
+	 * There will always be 15 balls.
+	 */
+	public static PoolBall[] rack() {
+		return rack(new PhysicsWorld(balls.length));
+	}
+
+	/**
+	 * Racks the balls as described in {@link #rack()}, storing their state in
+	 * the first 16 slots of the given world.
+	 *
+	 * @param world The world in which to rack the balls.
+	 * @return Views over the racked balls, in order of their ball numbers.
+	 */
+	public static PoolBall[] rack(PhysicsWorld world) {
+		Collections.shuffle(rackLocations);
+
+		PoolBall[] retVal = new PoolBall[balls.length];
+
+		int counter = 0; // current index into rackLocations
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = new PoolBall(world, i, balls[i].hue, balls[i].type, i);
+			world.setVelocity(i, 0, 0, 0);
+			world.randomizeOrientation(i);
+			if (i != 8 && i != 0) { // The two balls w/ set posns
+				double[] loc = rackLocations.get(counter++);
+				retVal[i].setTranslation(loc[0], loc[1], loc[2]);
+			}
+		}
+
+		retVal[0].setTranslation(10, 0, 0);
+		retVal[8].setTranslation( 0, 0, 0);
+
+		return retVal;
+	}
+
+	/** Determines if this pool ball intersects with another pool ball. **/
+	public boolean intersects(PoolBall pb) {
+		double xDiff = world.px[slot] - pb.world.px[pb.slot];
+		double yDiff = world.py[slot] - pb.world.py[pb.slot];
+		double zDiff = world.pz[slot] - pb.world.pz[pb.slot];
+		return xDiff*xDiff + yDiff*yDiff + zDiff*zDiff < DIAMETER_SQUARED;
+	}
+
+	/**
+	 * PoolBalls are hashed according to their numbers.
+	 * @see #ballNum
+	 */
+	@Override
+	public int hashCode() {
+		return ballNum;
+	}
+
+	/**
+	 * Two PoolBalls are equal if and only if their ball numbers are equal.
+	 * @see #ballNum
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof PoolBall) &&
+				((PoolBall) obj).ballNum == this.ballNum;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolBall: " + (ballNum == 0 ? "Cue" : ballNum) +
+				"; " + Arrays.toString(getTranslation());
+	}
+
+	/**
+	 * Returns a copy of this ball in a world of its own, with the same
+	 * position, velocity and orientation.
+	 */
+	@Override
+	public Object clone() {
+		PoolBall copy = new PoolBall(new PhysicsWorld(1), 0, hue, type, ballNum);
+		int k = 4*slot;
+		copy.world.setPosition(0, world.px[slot], world.py[slot],
+				world.pz[slot]);
+		copy.world.setVelocity(0, world.vx[slot], world.vy[slot],
+				world.vz[slot]);
+		copy.world.setOrientation(0, world.ori[k], world.ori[k+1],
+				world.ori[k+2], world.ori[k+3]);
+		return copy;
+	}
+
+}
@@ -0,0 +1,304 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates tables of any number of balls, for load testing: close-packed
+ * clusters, a gas of balls flying in every direction, and several clusters
+ * broken at once. Each generator returns a new world whose table is sized
+ * to fit what it holds, and takes time roughly proportional to the number
+ * of balls, so that even scenes of 100,000 balls are quick to set up.
+ *
+ * <p>Given the same arguments, a generator always returns the same table.
+ * No two balls intersect, and every ball is inside the table.</p>
+ *
+ * @author Brian McCutchon
+ */
+public final class Racks {
+
+	/** The ways in which equal spheres can be packed most densely. **/
+	public enum Lattice {
+		/** Face-centered cubic: layers stacked ABCABC. **/
+		FCC,
+		/** Hexagonal close-packed: layers stacked ABAB. **/
+		HCP
+	}
+
+	/**
+	 * The distance between the centers of neighbors in a lattice. Slightly
+	 * more than a diameter, so that rounding never makes neighbors overlap.
+	 */
+	static final double SPACING = PoolBall.DIAMETER * (1 + 1e-6);
+
+	/** The space left between what a table holds and its walls. **/
+	private static final double MARGIN = 4 * PoolBall.DIAMETER;
+
+	/** The distance from a cluster to the cue ball aimed at it. **/
+	private static final double CUE_DISTANCE = 6 * PoolBall.DIAMETER;
+
+	/** The speed at which cue balls are shot, per step. **/
+	private static final double CUE_SPEED = 1;
+
+	/** The number of rejected positions in a row after which gas gives up. **/
+	private static final int MAX_ATTEMPTS = 10_000;
+
+	private Racks() {
+		// Not instantiable
+	}
+
+	/**
+	 * Returns a table holding one close-packed cluster of n - 1 balls,
+	 * roughly a cube, and a cue ball in slot 0 on the +x side of it. The cue
+	 * ball is at rest; give it a velocity along -x to break the cluster.
+	 *
+	 * @param n The number of balls, including the cue ball. At least 1.
+	 * @param lattice How the cluster is packed.
+	 * @param seed Seeds the orientations of the balls.
+	 */
+	public static PhysicsWorld closePacked(int n, Lattice lattice, long seed) {
+		checkSize(n, 1);
+		int m = n - 1;
+		int[] dims = clusterDims(m);
+		double[] extent = clusterExtent(dims);
+		double tableX = Math.max(Physics.TABLE_X,
+				extent[0] + 2*CUE_DISTANCE + 2*MARGIN);
+		double tableY = Math.max(Physics.TABLE_Y, extent[1] + 2*MARGIN);
+		double tableZ = Math.max(Physics.TABLE_Z, extent[2] + 2*MARGIN);
+
+		PhysicsWorld world = new PhysicsWorld(n, tableX, tableY, tableZ);
+		fillCluster(world, 1, m, lattice, dims, 0, 0, 0);
+		world.setPosition(0, extent[0]/2 + CUE_DISTANCE, 0, 0);
+		randomizeOrientations(world, new SplittableRandom(seed));
+		return world;
+	}
+
+	/**
+	 * Returns a table of n balls scattered uniformly at random, without
+	 * overlapping, each moving in a random direction. The table is a cube
+	 * whose size gives the requested density. Positions are chosen one at a
+	 * time, and rejected if they overlap a ball already placed, which is
+	 * found with a grid.
+	 *
+	 * @param n The number of balls.
+	 * @param density The fraction of the table's volume taken up by balls.
+	 *   Random placement jams above about 0.38, so this must be at most 0.3.
+	 * @param speed The speed of every ball, per step.
+	 * @param seed Seeds the positions, velocities and orientations.
+	 */
+	public static PhysicsWorld gas(int n, double density, double speed,
+			long seed) {
+		checkSize(n, 0);
+		if (!(density > 0 && density <= 0.3)) {
+			throw new IllegalArgumentException("Invalid density: " + density);
+		}
+		double r = PoolBall.RADIUS;
+		double volume = n * 4.0/3 * Math.PI * r*r*r / density;
+		double side = Math.max(Math.cbrt(volume), 2*SPACING);
+		PhysicsWorld world = new PhysicsWorld(n, side, side, side);
+		SplittableRandom rand = new SplittableRandom(seed);
+
+		// A grid of cells at least a diameter wide, with about one ball per
+		// cell, so that only the 27 cells around a position can hold balls
+		// that overlap it
+		double inner = side - 2*r;
+		int cells = (int) Math.max(1, Math.min(inner / SPACING,
+				Math.ceil(Math.cbrt(n))));
+		double cell = inner / cells;
+		int[] head = new int[cells*cells*cells];
+		int[] next = new int[n];
+		Arrays.fill(head, -1);
+
+		for (int i = 0; i < n; i++) {
+			double x, y, z;
+			int cx, cy, cz;
+			int attempts = 0;
+			do {
+				if (++attempts > MAX_ATTEMPTS) {
+					throw new IllegalStateException(
+							"Could not place ball " + i + " of " + n);
+				}
+				x = rand.nextDouble() * inner;
+				y = rand.nextDouble() * inner;
+				z = rand.nextDouble() * inner;
+				cx = Math.min((int) (x / cell), cells - 1);
+				cy = Math.min((int) (y / cell), cells - 1);
+				cz = Math.min((int) (z / cell), cells - 1);
+			} while (overlaps(world, head, next, cells, cx, cy, cz,
+					x - inner/2, y - inner/2, z - inner/2));
+
+			world.setPosition(i, x - inner/2, y - inner/2, z - inner/2);
+			int c = (cz*cells + cy)*cells + cx;
+			next[i] = head[c];
+			head[c] = i;
+
+			double[] dir = randomDirection(rand);
+			world.setVelocity(i, dir[0]*speed, dir[1]*speed, dir[2]*speed);
+		}
+		randomizeOrientations(world, rand);
+		return world;
+	}
+
+	/**
+	 * Returns a table holding several close-packed clusters, side by side in
+	 * a grid across the y-z plane, each with a cue ball already shot at it
+	 * along -x. Every break happens at once.
+	 *
+	 * @param n The total number of balls. The first {@code clusters} slots
+	 *   hold the cue balls; the rest are shared out among the clusters.
+	 * @param clusters The number of clusters, at least 1.
+	 * @param lattice How each cluster is packed.
+	 * @param seed Seeds the aim of the cue balls and the orientations.
+	 */
+	public static PhysicsWorld clusters(int n, int clusters, Lattice lattice,
+			long seed) {
+		if (clusters < 1) {
+			throw new IllegalArgumentException(
+					"Invalid number of clusters: " + clusters);
+		}
+		checkSize(n, clusters);
+		int m = n - clusters;
+		int[] dims = clusterDims((m + clusters - 1) / clusters);
+		double[] extent = clusterExtent(dims);
+		int across = (int) Math.ceil(Math.sqrt(clusters));
+		int down   = (clusters + across - 1) / across;
+		double pitchY = extent[1] + MARGIN, pitchZ = extent[2] + MARGIN;
+
+		double tableX = Math.max(Physics.TABLE_X,
+				extent[0] + 2*CUE_DISTANCE + 2*MARGIN);
+		double tableY = Math.max(Physics.TABLE_Y, across*pitchY + MARGIN);
+		double tableZ = Math.max(Physics.TABLE_Z, down*pitchZ + MARGIN);
+		PhysicsWorld world = new PhysicsWorld(n, tableX, tableY, tableZ);
+		SplittableRandom rand = new SplittableRandom(seed);
+
+		int slot = clusters;
+		for (int c = 0; c < clusters; c++) {
+			double cy = (c % across - (across - 1) / 2.0) * pitchY;
+			double cz = (c / across - (down - 1) / 2.0) * pitchZ;
+			int count = m / clusters + (c < m % clusters ? 1 : 0);
+			fillCluster(world, slot, count, lattice, dims, 0, cy, cz);
+			slot += count;
+
+			// Aim at the cluster, a little off center so that the breaks
+			// differ
+			world.setPosition(c, extent[0]/2 + CUE_DISTANCE, cy, cz);
+			double dy = (rand.nextDouble() - 0.5) * 0.1;
+			double dz = (rand.nextDouble() - 0.5) * 0.1;
+			double norm = Math.sqrt(1 + dy*dy + dz*dz);
+			world.setVelocity(c, -CUE_SPEED/norm, CUE_SPEED*dy/norm,
+					CUE_SPEED*dz/norm);
+		}
+		randomizeOrientations(world, rand);
+		return world;
+	}
+
+	/** Throws if n is not a valid number of balls, of at least min. **/
+	private static void checkSize(int n, int min) {
+		if (n < min) {
+			throw new IllegalArgumentException("Invalid number of balls: " + n);
+		}
+	}
+
+	/**
+	 * Returns the number of balls along each axis of a cluster of m balls
+	 * that is about as long as it is wide and high: per row, rows per layer,
+	 * and layers.
+	 */
+	private static int[] clusterDims(int m) {
+		// Balls take up SPACING along x, SPACING*sqrt(3)/2 along y and
+		// SPACING*sqrt(2/3) along z
+		double perUnit = 1 / (Math.sqrt(3)/2 * Math.sqrt(2.0/3));
+		int nx = Math.max(1, (int) Math.ceil(Math.cbrt(m / perUnit)));
+		int ny = Math.max(1, (int) Math.ceil(nx / (Math.sqrt(3)/2)));
+		int nz = Math.max(1, (m + nx*ny - 1) / (nx*ny));
+		return new int[] { nx, ny, nz };
+	}
+
+	/** Returns the size of a cluster, from the centers of its outer balls out. **/
+	private static double[] clusterExtent(int[] dims) {
+		return new double[] {
+			(dims[0] - 1 + 0.5) * SPACING + PoolBall.DIAMETER,
+			(dims[1] - 1 + 2.0/3) * SPACING * Math.sqrt(3)/2 + PoolBall.DIAMETER,
+			(dims[2] - 1) * SPACING * Math.sqrt(2.0/3) + PoolBall.DIAMETER,
+		};
+	}
+
+	/**
+	 * Puts count balls, starting at a slot, on a lattice centered on
+	 * (x, y, z): row by row, and layer by layer, from the bottom up.
+	 */
+	private static void fillCluster(PhysicsWorld world, int slot, int count,
+			Lattice lattice, int[] dims, double x, double y, double z) {
+		double rowY   = SPACING * Math.sqrt(3)/2;
+		double layerZ = SPACING * Math.sqrt(2.0/3);
+		double[] extent = clusterExtent(dims);
+		double x0 = x - extent[0]/2 + PoolBall.RADIUS;
+		double y0 = y - extent[1]/2 + PoolBall.RADIUS;
+		double z0 = z - extent[2]/2 + PoolBall.RADIUS;
+
+		int k = 0;
+		for (int l = 0; k < count; l++) {
+			// The offset of this layer's triangular lattice: A, B or C
+			int shift = lattice == Lattice.FCC ? l % 3 : l % 2;
+			double sx = shift * SPACING / 2;
+			double sy = shift * rowY / 3;
+			for (int row = 0; row < dims[1] && k < count; row++) {
+				// Alternate rows are offset by half a spacing. The offset is
+				// taken modulo a spacing so that every ball stays in the
+				// cluster's extent.
+				double ox = (sx + (row % 2) * SPACING / 2) % SPACING;
+				for (int col = 0; col < dims[0] && k < count; col++, k++) {
+					world.setPosition(slot + k, x0 + col*SPACING + ox,
+							y0 + row*rowY + sy, z0 + l*layerZ);
+				}
+			}
+		}
+	}
+
+	/** Returns a unit vector pointing in a uniformly random direction. **/
+	private static double[] randomDirection(SplittableRandom rand) {
+		double z = rand.nextDouble() * 2 - 1;
+		double a = rand.nextDouble() * 2 * Math.PI;
+		double s = Math.sqrt(1 - z*z);
+		return new double[] { s*Math.cos(a), s*Math.sin(a), z };
+	}
+
+	/** Gives every ball a uniformly random orientation. **/
+	private static void randomizeOrientations(PhysicsWorld world,
+			SplittableRandom rand) {
+		for (int i = 0; i < world.size(); i++) {
+			double u1 = rand.nextDouble();
+			double a  = rand.nextDouble()*Math.PI*2;
+			double b  = rand.nextDouble()*Math.PI*2;
+			double r1 = Math.sqrt(1 - u1);
+			double r2 = Math.sqrt(u1);
+			world.setOrientation(i, r2*Math.cos(b), r1*Math.sin(a),
+					r1*Math.cos(a), r2*Math.sin(b));
+		}
+	}
+
+	/**
+	 * Returns {@code true} iff a ball at (x, y, z), in cell (cx, cy, cz),
+	 * would overlap a ball already placed.
+	 */
+	private static boolean overlaps(PhysicsWorld world, int[] head, int[] next,
+			int cells, int cx, int cy, int cz, double x, double y, double z) {
+		double d2 = SPACING * SPACING;
+		for (int iz = Math.max(cz - 1, 0); iz <= Math.min(cz + 1, cells - 1); iz++) {
+			for (int iy = Math.max(cy - 1, 0); iy <= Math.min(cy + 1, cells - 1); iy++) {
+				for (int ix = Math.max(cx - 1, 0); ix <= Math.min(cx + 1, cells - 1); ix++) {
+					for (int j = head[(iz*cells + iy)*cells + ix]; j >= 0; j = next[j]) {
+						double dx = world.px[j] - x;
+						double dy = world.py[j] - y;
+						double dz = world.pz[j] - z;
+						if (dx*dx + dy*dy + dz*dz < d2) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+}
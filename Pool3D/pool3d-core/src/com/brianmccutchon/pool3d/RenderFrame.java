@@ -0,0 +1,151 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * The two most recent states of the balls of a world, as published by a
+ * {@link SimulationThread} for rendering and other read-only uses. The renderer draws each ball
+ * between the previous and the current state, so that motion looks smooth
+ * no matter how the display's refresh rate relates to the physics rate.
+ *
+ * @author Brian McCutchon
+ */
+public class RenderFrame {
+
+	/** The number of balls. **/
+	private final int size;
+
+	/** The centers of the balls before and after the latest step. **/
+	final double[] px0, py0, pz0, px1, py1, pz1;
+
+	/**
+	 * The orientations of the balls before and after the latest step, laid
+	 * out as in {@link PhysicsWorld#ori}.
+	 */
+	final double[] ori0, ori1;
+
+	/** The {@link System#nanoTime()} at which the current state is due. **/
+	long time;
+
+	/** The time between two states, in nanoseconds. **/
+	long stepNanos = 1;
+
+	/** {@code true} iff at least one ball moved during the latest step. **/
+	boolean moving;
+
+	/** The number of steps taken before the current state was captured. **/
+	long steps;
+
+	/** Constructs a frame for a world with the given number of balls. **/
+	public RenderFrame(int size) {
+		this.size = size;
+		px0  = new double[size];
+		py0  = new double[size];
+		pz0  = new double[size];
+		px1  = new double[size];
+		py1  = new double[size];
+		pz1  = new double[size];
+		ori0 = new double[4*size];
+		ori1 = new double[4*size];
+	}
+
+	/** Returns the number of balls. **/
+	public int size() {
+		return size;
+	}
+
+	/** Stores the state of the world as the previous state. **/
+	void capturePrevious(PhysicsWorld world) {
+		System.arraycopy(world.px,  0, px0,  0, size);
+		System.arraycopy(world.py,  0, py0,  0, size);
+		System.arraycopy(world.pz,  0, pz0,  0, size);
+		System.arraycopy(world.ori, 0, ori0, 0, 4*size);
+	}
+
+	/** Stores the state of the world as the current state. **/
+	void captureCurrent(PhysicsWorld world) {
+		System.arraycopy(world.px,  0, px1,  0, size);
+		System.arraycopy(world.py,  0, py1,  0, size);
+		System.arraycopy(world.pz,  0, pz1,  0, size);
+		System.arraycopy(world.ori, 0, ori1, 0, 4*size);
+		moving = world.ballsAreMoving();
+	}
+
+	/** Makes this frame a copy of another frame of the same size. **/
+	void copyFrom(RenderFrame f) {
+		System.arraycopy(f.px0,  0, px0,  0, size);
+		System.arraycopy(f.py0,  0, py0,  0, size);
+		System.arraycopy(f.pz0,  0, pz0,  0, size);
+		System.arraycopy(f.ori0, 0, ori0, 0, 4*size);
+		System.arraycopy(f.px1,  0, px1,  0, size);
+		System.arraycopy(f.py1,  0, py1,  0, size);
+		System.arraycopy(f.pz1,  0, pz1,  0, size);
+		System.arraycopy(f.ori1, 0, ori1, 0, 4*size);
+		time      = f.time;
+		stepNanos = f.stepNanos;
+		moving    = f.moving;
+		steps     = f.steps;
+	}
+
+	/** Returns {@code true} iff at least one ball was moving. **/
+	public boolean ballsAreMoving() {
+		return moving;
+	}
+
+	/** Returns the number of steps taken before the current state. **/
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns how far the given time is between the previous state, at 0,
+	 * and the current state, at 1. Rendering runs one step behind the
+	 * simulation: the previous state is shown at the time the current state
+	 * was due, and the current state one step later, when the next state
+	 * should be known. Times outside that step are clamped to it.
+	 *
+	 * @param now A time as given by {@link System#nanoTime()}.
+	 */
+	public double alpha(long now) {
+		double alpha = (double) (now - time) / stepNanos;
+		return alpha < 0 ? 0 : alpha > 1 ? 1 : alpha;
+	}
+
+	/**
+	 * Linearly interpolates the center of ball i.
+	 * @param alpha How far to go from the previous state to the current one.
+	 * @param out The array into which to store {x, y, z}.
+	 */
+	public void position(int i, double alpha, double[] out) {
+		out[0] = px0[i] + (px1[i] - px0[i])*alpha;
+		out[1] = py0[i] + (py1[i] - py0[i])*alpha;
+		out[2] = pz0[i] + (pz1[i] - pz0[i])*alpha;
+	}
+
+	/**
+	 * Interpolates the orientation of ball i along the shorter arc between
+	 * its two states. The quaternions are interpolated linearly and then
+	 * normalized, which is close enough to a slerp for the small angle a
+	 * ball turns through in one step.
+	 *
+	 * @param alpha How far to go from the previous state to the current one.
+	 * @param out The array into which to store the unit quaternion
+	 *   {w, x, y, z}.
+	 */
+	public void orientation(int i, double alpha, double[] out) {
+		int k = 4*i;
+		double dot = ori0[k]*ori1[k] + ori0[k+1]*ori1[k+1] +
+				ori0[k+2]*ori1[k+2] + ori0[k+3]*ori1[k+3];
+		// q and -q are the same rotation; take the one that is closer
+		double a = 1 - alpha;
+		double b = dot < 0 ? -alpha : alpha;
+		double w = a*ori0[k]   + b*ori1[k];
+		double x = a*ori0[k+1] + b*ori1[k+1];
+		double y = a*ori0[k+2] + b*ori1[k+2];
+		double z = a*ori0[k+3] + b*ori1[k+3];
+		double norm = 1 / Math.sqrt(w*w + x*x + y*y + z*z);
+		out[0] = w*norm;
+		out[1] = x*norm;
+		out[2] = y*norm;
+		out[3] = z*norm;
+	}
+
+}
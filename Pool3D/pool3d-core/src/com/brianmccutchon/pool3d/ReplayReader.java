@@ -0,0 +1,130 @@
+package com.brianmccutchon.pool3d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.brianmccutchon.pool3d.ReplayRecorder.*;
+
+/**
+ * Plays back a file written by a {@link ReplayRecorder}. Any frame can be
+ * read: the keyframe at or before it is found in the file's index, and at
+ * most a keyframe interval's worth of frames are decoded from there. Reading
+ * the frames in order decodes each one only once.
+ *
+ * @author Brian McCutchon
+ */
+public class ReplayReader implements Closeable {
+
+	private final FileChannel channel;
+
+	/** The whole file. **/
+	private final MappedByteBuffer data;
+
+	private final StateCodec codec;
+
+	private final int keyframeInterval;
+
+	private final double tableX, tableY, tableZ;
+
+	/** The file offset of each keyframe. **/
+	private final long[] keyframes;
+
+	private final long frames;
+
+	/** The last frame decoded, or -1 if none has been. **/
+	private long current = -1;
+
+	/** Opens a replay file. **/
+	public ReplayReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Replay file too large: " + length);
+			}
+			if (length < HEADER_BYTES + TRAILER_BYTES) {
+				throw new IOException("Not a replay file: " + file);
+			}
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+			if (data.getInt(0) != MAGIC) {
+				throw new IOException("Not a replay file: " + file);
+			}
+			if (data.getInt(4) != VERSION) {
+				throw new IOException("Unsupported replay version: " +
+						data.getInt(4));
+			}
+			codec = new StateCodec(data.getInt(8));
+			keyframeInterval = data.getInt(12);
+			tableX = data.getDouble(16);
+			tableY = data.getDouble(24);
+			tableZ = data.getDouble(32);
+
+			int footer = (int) length - TRAILER_BYTES;
+			if (data.getInt(footer + 20) != MAGIC) {
+				throw new IOException("Replay was not closed: " + file);
+			}
+			int index = (int) data.getLong(footer);
+			frames = data.getLong(footer + 8);
+			keyframes = new long[data.getInt(footer + 16)];
+			for (int k = 0; k < keyframes.length; k++) {
+				keyframes[k] = data.getLong(index + 8*k);
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Returns the number of frames in the recording. **/
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/** Returns the number of balls in the recording. **/
+	public int size() {
+		return codec.size();
+	}
+
+	/** Returns a new world with the recording's number of balls and table. **/
+	public PhysicsWorld newWorld() {
+		return new PhysicsWorld(codec.size(), tableX, tableY, tableZ);
+	}
+
+	/**
+	 * Sets the positions and orientations of the balls of a world to those
+	 * of a frame. Velocities are left alone.
+	 *
+	 * @param frame The index of the frame, from 0.
+	 * @param world A world with the recording's number of balls.
+	 */
+	public void read(long frame, PhysicsWorld world) {
+		if (frame < 0 || frame >= frames) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " of " +
+					frames);
+		}
+
+		long key = frame / keyframeInterval * keyframeInterval;
+		if (frame < current || current < key) {
+			// Start over from the keyframe
+			data.position((int) keyframes[(int) (frame / keyframeInterval)]);
+			codec.decodeKey(data);
+			current = key;
+		}
+		while (current < frame) {
+			codec.decodeDelta(data);
+			current++;
+		}
+		codec.apply(world);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
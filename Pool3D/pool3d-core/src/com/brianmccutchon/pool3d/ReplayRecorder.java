@@ -0,0 +1,211 @@
+package com.brianmccutchon.pool3d;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records the positions and orientations of the balls of a world, one frame
+ * per step, to a file that a {@link ReplayReader} can play back. Frames are
+ * encoded by a {@link StateCodec}, with a keyframe every
+ * {@link #DEFAULT_KEYFRAME_INTERVAL} frames, and written straight into a
+ * memory-mapped region of the file, which is extended a chunk at a time.
+ * Recording a frame does not allocate anything except, now and then, to map
+ * the next chunk.
+ *
+ * <p>The file starts with a {@value #HEADER_BYTES} byte header:</p>
+ * <pre>
+ *   int    magic ({@link #MAGIC})
+ *   int    version ({@link #VERSION})
+ *   int    the number of balls
+ *   int    the keyframe interval
+ *   double tableX, tableY, tableZ
+ * </pre>
+ * <p>The frames follow. {@link #close()} writes a trailer after them: the
+ * file offset of each keyframe as a long, then the
+ * {@value #TRAILER_BYTES} byte footer:</p>
+ * <pre>
+ *   long   the offset of the first keyframe offset
+ *   long   the number of frames
+ *   int    the number of keyframes
+ *   int    magic ({@link #MAGIC})
+ * </pre>
+ * <p>All values are big-endian. A recording that was not closed has no
+ * trailer and cannot be played back.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class ReplayRecorder implements Closeable {
+
+	/** Identifies a replay file: "P3DR". **/
+	static final int MAGIC = 0x50334452;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_BYTES = 40;
+
+	static final int TRAILER_BYTES = 24;
+
+	/** The default number of frames from one keyframe to the next. **/
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 120;
+
+	/** The size of each mapped region of the file. **/
+	private static final int CHUNK_BYTES = 8 << 20;
+
+	private final FileChannel channel;
+
+	private final StateCodec codec;
+
+	private final int keyframeInterval;
+
+	/** Each frame is encoded here first, then copied into {@link #chunk}. **/
+	private final ByteBuffer frame;
+
+	/** The mapped region being written. **/
+	private MappedByteBuffer chunk;
+
+	/** The file offset at which {@link #chunk} starts. **/
+	private long chunkStart;
+
+	/** The file offset of each keyframe. **/
+	private long[] keyframes = new long[64];
+
+	private long frames;
+
+	private boolean closed;
+
+	/**
+	 * Creates or overwrites a replay file for a world, with the default
+	 * keyframe interval.
+	 */
+	public ReplayRecorder(Path file, PhysicsWorld world) throws IOException {
+		this(file, world, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates or overwrites a replay file for a world.
+	 *
+	 * @param file The file to write.
+	 * @param world The world that will be recorded. Only its size and table
+	 *   are used here; frames are recorded by {@link #record}.
+	 * @param keyframeInterval The number of frames from one keyframe to the
+	 *   next. Seeking replays at most this many frames.
+	 */
+	public ReplayRecorder(Path file, PhysicsWorld world, int keyframeInterval)
+			throws IOException {
+		if (keyframeInterval <= 0) {
+			throw new IllegalArgumentException(
+					"Invalid keyframe interval: " + keyframeInterval);
+		}
+		this.keyframeInterval = keyframeInterval;
+		codec = new StateCodec(world.size());
+		frame = ByteBuffer.allocate(codec.maxFrameBytes());
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_BYTES);
+		chunk.putInt(MAGIC);
+		chunk.putInt(VERSION);
+		chunk.putInt(world.size());
+		chunk.putInt(keyframeInterval);
+		chunk.putDouble(world.tableX);
+		chunk.putDouble(world.tableY);
+		chunk.putDouble(world.tableZ);
+	}
+
+	/** Returns the number of frames recorded so far. **/
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/** Returns the number of bytes written so far, not counting the trailer. **/
+	public long getBytesWritten() {
+		return chunkStart + chunk.position();
+	}
+
+	/**
+	 * Appends the current state of the world as the next frame.
+	 * @throws UncheckedIOException If the file could not be extended.
+	 */
+	public void record(PhysicsWorld world) {
+		if (closed) {
+			throw new IllegalStateException("Recorder is closed");
+		}
+
+		frame.clear();
+		boolean key = frames % keyframeInterval == 0;
+		if (key) {
+			codec.encodeKey(world, frame);
+		} else {
+			codec.encodeDelta(world, frame);
+		}
+		frame.flip();
+
+		if (chunk.remaining() < frame.remaining()) {
+			try {
+				remap();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (key) {
+			int k = (int) (frames / keyframeInterval);
+			if (k == keyframes.length) {
+				keyframes = Arrays.copyOf(keyframes, 2*k);
+			}
+			keyframes[k] = getBytesWritten();
+		}
+		chunk.put(frame);
+		frames++;
+	}
+
+	/** Maps the next chunk of the file, starting where writing left off. **/
+	private void remap() throws IOException {
+		chunkStart = getBytesWritten();
+		chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart,
+				CHUNK_BYTES);
+	}
+
+	/**
+	 * Writes the trailer, trims the file to the data written and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			long end = getBytesWritten();
+			int keys = (int) ((frames + keyframeInterval - 1) / keyframeInterval);
+			ByteBuffer trailer = ByteBuffer.allocate(8*keys + TRAILER_BYTES);
+			for (int k = 0; k < keys; k++) {
+				trailer.putLong(keyframes[k]);
+			}
+			trailer.putLong(end);
+			trailer.putLong(frames);
+			trailer.putInt(keys);
+			trailer.putInt(MAGIC);
+			trailer.flip();
+
+			chunk.force();
+			chunk = null;
+			channel.truncate(end);
+			while (trailer.hasRemaining()) {
+				channel.write(trailer, end + trailer.position());
+			}
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+}
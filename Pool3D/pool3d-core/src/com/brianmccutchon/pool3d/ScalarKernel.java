@@ -0,0 +1,58 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.Physics.*;
+
+/**
+ * A {@link StepKernel} that works on one ball at a time. It runs on any JVM,
+ * and is what every other kernel must agree with.
+ *
+ * @author Brian McCutchon
+ */
+public class ScalarKernel implements StepKernel {
+
+	@Override
+	public boolean integrate(double[] px, double[] py, double[] pz,
+			double[] vx, double[] vy, double[] vz, int[] restSteps,
+			double dt, int from, int to) {
+		boolean moving = false;
+		for (int i = from; i < to; i++) {
+			moving |= integrate(px, py, pz, vx, vy, vz, restSteps, dt, i);
+		}
+		return moving;
+	}
+
+	/** Moves ball i, and returns {@code true} iff it moved. **/
+	static boolean integrate(double[] px, double[] py, double[] pz,
+			double[] vx, double[] vy, double[] vz, int[] restSteps,
+			double dt, int i) {
+		if (Math.abs(vx[i]) <= MOVEMENT_EPSILON &&
+				Math.abs(vy[i]) <= MOVEMENT_EPSILON &&
+				Math.abs(vz[i]) <= MOVEMENT_EPSILON) {
+			// "Close enough" to (0, 0, 0).
+			vx[i] = 0;
+			vy[i] = 0;
+			vz[i] = 0;
+			return false;
+		}
+		restSteps[i] = 0;
+		px[i] += vx[i]*dt;
+		py[i] += vy[i]*dt;
+		pz[i] += vz[i]*dt;
+		vx[i] = doAirResistance(vx[i], dt);
+		vy[i] = doAirResistance(vy[i], dt);
+		vz[i] = doAirResistance(vz[i], dt);
+		return true;
+	}
+
+	@Override
+	public void reflect(double[] p, double[] v, double tableDim, int axis,
+			int from, int to, BounceCallback callback) {
+		for (int i = from; i < to; i++) {
+			if (hitsWall(p[i], v[i], tableDim)) {
+				callback.bounced(i, axis, v[i]);
+				v[i] = -v[i];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,349 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Searches for a good shot by simulating many random shots to rest and
+ * scoring the results. The shots are simulated in parallel on a fork-join
+ * pool, each on a copy of the table, so the search never touches the table
+ * it was given after it has been constructed.
+ *
+ * <p>The search runs in rounds. The first round samples directions uniformly
+ * over the sphere and powers uniformly over the power range. Each later
+ * round samples around the best shot found so far, more narrowly each time.
+ * The best shot is reported to a listener every time it improves, so callers
+ * can show progressively better suggestions, and the search can be cancelled
+ * at any time.</p>
+ *
+ * <p>Shots are given as the two angles used by the camera in shooting mode:
+ * a rotation of deg1 around the y axis and of deg2 towards it. The cue ball
+ * is shot in the direction (-sin deg1 cos deg2, sin deg2, -cos deg1 cos deg2)
+ * with a speed equal to the power.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class ShotSearch {
+
+	/** Scores the outcome of a shot. Higher scores are better. **/
+	public interface Scorer {
+		/**
+		 * Scores a shot. Must be safe to call from many threads at once.
+		 * @param before The table before the shot. Must not be modified.
+		 * @param after The table once the balls have come to rest.
+		 * @param cue The index of the cue ball.
+		 */
+		double score(PhysicsWorld before, PhysicsWorld after, int cue);
+	}
+
+	/**
+	 * Scores a shot by how far it moved the balls other than the cue ball:
+	 * the sum of the squares of their displacements.
+	 */
+	public static final Scorer SPREAD = (before, after, cue) -> {
+		double sum = 0;
+		for (int i = 0; i < before.size(); i++) {
+			if (i != cue) {
+				double dx = after.px[i] - before.px[i];
+				double dy = after.py[i] - before.py[i];
+				double dz = after.pz[i] - before.pz[i];
+				sum += dx*dx + dy*dy + dz*dz;
+			}
+		}
+		return sum;
+	};
+
+	/** A shot and its score. **/
+	public static class Shot {
+		/** The rotation around the y axis. **/
+		public final double deg1;
+
+		/** The rotation towards the y axis. **/
+		public final double deg2;
+
+		/** The speed of the cue ball. **/
+		public final double power;
+
+		/** The score of the outcome. **/
+		public final double score;
+
+		/** Identifies the sample, to break ties between equal scores. **/
+		final long id;
+
+		Shot(double deg1, double deg2, double power, double score, long id) {
+			this.deg1  = deg1;
+			this.deg2  = deg2;
+			this.power = power;
+			this.score = score;
+			this.id    = id;
+		}
+
+		/** Stores the velocity given to the cue ball into out, as {x, y, z}. **/
+		public void velocity(double[] out) {
+			double cos2 = Math.cos(deg2);
+			out[0] = -Math.sin(deg1) * cos2 * power;
+			out[1] =  Math.sin(deg2) * power;
+			out[2] = -Math.cos(deg1) * cos2 * power;
+		}
+
+		/** Returns {@code true} iff this shot beats the other one. **/
+		boolean beats(Shot s) {
+			return s == null || score > s.score ||
+					(score == s.score && id < s.id);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Shot: deg1 %.3f, deg2 %.3f, power %.3f, " +
+					"score %.3f", deg1, deg2, power, score);
+		}
+	}
+
+	/** The most steps simulated for one shot before giving up on rest. **/
+	static final int MAX_STEPS = 10_000;
+
+	/** The number of shots simulated by one fork-join task. **/
+	private static final int BATCH = 16;
+
+	/** The spread of the angles sampled in the second round, in radians. **/
+	private static final double REFINE_SPREAD = 0.25;
+
+	/** A copy of the table as it was when the search was constructed. **/
+	private final PhysicsWorld table;
+
+	private final int cue;
+
+	private final Scorer scorer;
+
+	private final ForkJoinPool pool;
+
+	private double minPower = 0.25, maxPower = 1.5;
+
+	/** The table on which each thread simulates its shots. **/
+	private final ThreadLocal<PhysicsWorld> scratch;
+
+	private final AtomicReference<Shot> best = new AtomicReference<>();
+
+	private final AtomicLong evaluated = new AtomicLong();
+
+	private volatile boolean cancelled;
+
+	private volatile Consumer<Shot> listener;
+
+	private CompletableFuture<Shot> result;
+
+	/**
+	 * Constructs a search that runs on the common fork-join pool.
+	 * @see #ShotSearch(PhysicsWorld, int, Scorer, ForkJoinPool)
+	 */
+	public ShotSearch(PhysicsWorld table, int cue, Scorer scorer) {
+		this(table, cue, scorer, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a search for shots on a table, which is copied right away.
+	 * The search does not start until {@link #start} is called.
+	 *
+	 * @param table The table on which to shoot.
+	 * @param cue The index of the cue ball.
+	 * @param scorer Scores the shots.
+	 * @param pool The pool on which to simulate the shots.
+	 */
+	public ShotSearch(PhysicsWorld table, int cue, Scorer scorer,
+			ForkJoinPool pool) {
+		this.table  = copy(table);
+		this.cue    = cue;
+		this.scorer = scorer;
+		this.pool   = pool;
+		scratch = ThreadLocal.withInitial(() -> copy(this.table));
+	}
+
+	/**
+	 * Sets the range of powers to try. The default is 0.25 to 1.5.
+	 * Must be called before {@link #start}.
+	 */
+	public void setPowerRange(double min, double max) {
+		if (!(min > 0 && min <= max)) {
+			throw new IllegalArgumentException(
+					"Invalid power range: " + min + " to " + max);
+		}
+		minPower = min;
+		maxPower = max;
+	}
+
+	/**
+	 * Starts the search and returns right away. It may only be started once.
+	 *
+	 * @param samples The number of shots to simulate in each round.
+	 * @param rounds The number of rounds. The first round samples the whole
+	 *   range of shots; the rest refine the best shot found so far.
+	 * @param seed Seeds the random shots. Given the same seed, the search
+	 *   finds the same best shot no matter how many threads it runs on.
+	 * @param onImprovement Called with the new best shot each time it
+	 *   improves, on one of the pool's threads. May be null.
+	 * @return A future that completes with the best shot once every round has
+	 *   run or the search has been cancelled. The best shot is null if
+	 *   nothing was simulated.
+	 */
+	public synchronized CompletableFuture<Shot> start(int samples, int rounds,
+			long seed, Consumer<Shot> onImprovement) {
+		if (result != null) {
+			throw new IllegalStateException("Search already started");
+		}
+		listener = onImprovement;
+		result = CompletableFuture.supplyAsync(() -> {
+			for (int r = 0; r < rounds && !cancelled; r++) {
+				new Batch(r, 0, samples, seed).invoke();
+			}
+			return best.get();
+		}, pool);
+		return result;
+	}
+
+	/**
+	 * Stops the search. Shots being simulated are finished, but no more are
+	 * started, and the future returned by {@link #start} completes with the
+	 * best shot found so far.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** Returns the best shot found so far, or null if there is none yet. **/
+	public Shot getBest() {
+		return best.get();
+	}
+
+	/** Returns the number of shots simulated so far. **/
+	public long getEvaluated() {
+		return evaluated.get();
+	}
+
+	/**
+	 * Simulates one shot to rest on a copy of the table and scores it. This
+	 * does not take part in the search; it can be called at any time, from
+	 * any thread.
+	 */
+	public Shot evaluate(double deg1, double deg2, double power) {
+		return evaluate(deg1, deg2, power, -1);
+	}
+
+	private Shot evaluate(double deg1, double deg2, double power, long id) {
+		Shot shot = new Shot(deg1, deg2, power, 0, id);
+		PhysicsWorld world = scratch.get();
+		world.copyFrom(table);
+
+		double[] v = new double[3];
+		shot.velocity(v);
+		world.setVelocity(cue, v[0], v[1], v[2]);
+		for (int n = 0; n < MAX_STEPS; n++) {
+			world.step();
+			if (!world.ballsAreMoving()) {
+				break;
+			}
+		}
+
+		evaluated.incrementAndGet();
+		return new Shot(deg1, deg2, power,
+				scorer.score(table, world, cue), id);
+	}
+
+	/** Makes a shot the best one if it beats the current best. **/
+	private void offer(Shot shot) {
+		Shot current;
+		do {
+			current = best.get();
+			if (!shot.beats(current)) {
+				return;
+			}
+		} while (!best.compareAndSet(current, shot));
+
+		Consumer<Shot> l = listener;
+		if (l != null) {
+			l.accept(shot);
+		}
+	}
+
+	/** Returns a new world with the same table and state as another one. **/
+	private static PhysicsWorld copy(PhysicsWorld w) {
+		PhysicsWorld c = new PhysicsWorld(w.size(), w.tableX, w.tableY,
+				w.tableZ);
+		c.copyFrom(w);
+		return c;
+	}
+
+	/** Simulates the samples in a range of one round. **/
+	private class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int round, from, to;
+
+		private final long seed;
+
+		/** The best shot of the previous rounds, which this round refines. **/
+		private final Shot center;
+
+		Batch(int round, int from, int to, long seed) {
+			this(round, from, to, seed, best.get());
+		}
+
+		private Batch(int round, int from, int to, long seed, Shot center) {
+			this.round  = round;
+			this.from   = from;
+			this.to     = to;
+			this.seed   = seed;
+			this.center = center;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > BATCH) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Batch(round, from, mid, seed, center),
+						new Batch(round, mid, to, seed, center));
+				return;
+			}
+
+			for (int k = from; k < to && !cancelled; k++) {
+				long id = ((long) round << 32) | k;
+				SplittableRandom rand = new SplittableRandom(seed ^
+						(id * 0x9E3779B97F4A7C15L));
+				offer(center == null ? sampleUniform(rand, id) :
+						sampleAround(rand, id));
+			}
+		}
+
+		/** Picks a direction uniformly over the sphere, and any power. **/
+		private Shot sampleUniform(SplittableRandom rand, long id) {
+			double deg1  = rand.nextDouble() * 2 * Math.PI;
+			double deg2  = Math.asin(rand.nextDouble() * 2 - 1);
+			double power = minPower + rand.nextDouble() * (maxPower - minPower);
+			return evaluate(deg1, deg2, power, id);
+		}
+
+		/** Picks a shot near the best one, closer in each round. **/
+		private Shot sampleAround(SplittableRandom rand, long id) {
+			double spread = REFINE_SPREAD / (1 << Math.min(round - 1, 20));
+			double deg1 = center.deg1 + gaussian(rand) * spread;
+			double deg2 = center.deg2 + gaussian(rand) * spread;
+			deg2 = Math.max(-Math.PI/2, Math.min(Math.PI/2, deg2));
+			double power = center.power +
+					gaussian(rand) * spread * (maxPower - minPower);
+			power = Math.max(minPower, Math.min(maxPower, power));
+			return evaluate(deg1, deg2, power, id);
+		}
+	}
+
+	/** Returns a standard normal sample, using the Box-Muller transform. **/
+	private static double gaussian(SplittableRandom rand) {
+		double u = 1 - rand.nextDouble(); // in (0, 1], so the log is finite
+		return Math.sqrt(-2 * Math.log(u)) *
+				Math.cos(2 * Math.PI * rand.nextDouble());
+	}
+
+}
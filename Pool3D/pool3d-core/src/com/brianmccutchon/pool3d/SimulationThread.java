@@ -0,0 +1,218 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link PhysicsWorld} on a thread of its own at a fixed rate. Time
+ * that passes on the wall clock is added to an accumulator, and the world is
+ * stepped once for each whole step of time in the accumulator. The rate of
+ * the simulation is therefore independent of how fast, or how smoothly, the
+ * balls are drawn.
+ *
+ * <p>Once the thread is started, it owns the world. Other threads change the
+ * world by {@linkplain #submit submitting} commands, which run on the
+ * simulation thread before the next step. They read it through
+ * {@link RenderFrame}s, which hold the two latest states. Each reader
+ * {@linkplain #subscribe subscribes} for a {@link TripleBuffer} of its own,
+ * which the simulation thread publishes to after every step without
+ * locking.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class SimulationThread implements AutoCloseable {
+
+	/** The default time between steps: one frame at 60 Hz. **/
+	public static final long DEFAULT_STEP_NANOS = 1_000_000_000L / 60;
+
+	/**
+	 * The most steps taken to catch up at once. If stepping falls further
+	 * behind than this, the extra time is dropped and the simulation slows
+	 * down, rather than spending ever longer catching up.
+	 */
+	static final int MAX_CATCH_UP_STEPS = 5;
+
+	/** The world being simulated. **/
+	private final PhysicsWorld world;
+
+	/** The time between steps, in nanoseconds. **/
+	private final long stepNanos;
+
+	/** Commands waiting to run before the next step. **/
+	private final ConcurrentLinkedQueue<Consumer<PhysicsWorld>> commands =
+			new ConcurrentLinkedQueue<>();
+
+	/** The latest frame. Only the simulation thread touches it. **/
+	private final RenderFrame latest;
+
+	/** Called after every step. Only changed before the thread starts. **/
+	private final ArrayList<Consumer<PhysicsWorld>> stepListeners =
+			new ArrayList<>();
+
+	/** The buffers published to. Only changed before the thread starts. **/
+	private final ArrayList<TripleBuffer<RenderFrame>> subscribers =
+			new ArrayList<>();
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	/** {@code true} iff at least one ball moved in the latest step. **/
+	private volatile boolean moving;
+
+	/** The number of steps taken so far. **/
+	private long steps;
+
+	/** Times the steps, and counts what happens in them. **/
+	private final FrameMetrics metrics = new FrameMetrics();
+
+	/**
+	 * Constructs a simulation of a world, stepping it once every
+	 * {@link #DEFAULT_STEP_NANOS}. Call {@link #start()} to begin.
+	 */
+	public SimulationThread(PhysicsWorld world) {
+		this(world, DEFAULT_STEP_NANOS);
+	}
+
+	/**
+	 * Constructs a simulation of a world. Call {@link #start()} to begin.
+	 *
+	 * @param world The world to simulate.
+	 * @param stepNanos The time between steps, in nanoseconds.
+	 */
+	public SimulationThread(PhysicsWorld world, long stepNanos) {
+		if (stepNanos <= 0) {
+			throw new IllegalArgumentException("Invalid step: " + stepNanos);
+		}
+		this.world     = world;
+		this.stepNanos = stepNanos;
+		latest = new RenderFrame(world.size());
+		thread = new Thread(this::run, "SimulationThread");
+		thread.setDaemon(true);
+
+		latest.capturePrevious(world);
+		latest.captureCurrent(world);
+		latest.stepNanos = stepNanos;
+		latest.time = System.nanoTime();
+		moving = latest.moving;
+	}
+
+	/**
+	 * Returns a new buffer to which every frame will be published. Only one
+	 * thread may {@linkplain TripleBuffer#acquire() acquire} frames from it.
+	 * Until the first step, it holds the state of the world as it was when
+	 * this simulation was constructed.
+	 *
+	 * @throws IllegalStateException If the thread has already started.
+	 */
+	public TripleBuffer<RenderFrame> subscribe() {
+		if (thread.getState() != Thread.State.NEW) {
+			throw new IllegalStateException("Simulation already started");
+		}
+		TripleBuffer<RenderFrame> buffer =
+				new TripleBuffer<>(() -> new RenderFrame(world.size()));
+		buffer.back().copyFrom(latest);
+		buffer.publish();
+		subscribers.add(buffer);
+		return buffer;
+	}
+
+	/** Starts stepping the world. **/
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Adds a listener that is called on the simulation thread after every
+	 * step, such as a {@link ReplayRecorder}. It must be quick, since the
+	 * next step waits for it.
+	 *
+	 * @throws IllegalStateException If the thread has already started.
+	 */
+	public void addStepListener(Consumer<PhysicsWorld> listener) {
+		if (thread.getState() != Thread.State.NEW) {
+			throw new IllegalStateException("Simulation already started");
+		}
+		stepListeners.add(listener);
+	}
+
+	/**
+	 * Runs a command on the simulation thread before the next step. Commands
+	 * run in the order in which they were submitted.
+	 */
+	public void submit(Consumer<PhysicsWorld> command) {
+		commands.add(command);
+	}
+
+	/**
+	 * Returns the metrics into which every step is recorded. Other phases of
+	 * a frame, such as drawing, may be recorded into them too.
+	 */
+	public FrameMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Returns {@code true} iff at least one ball moved in the latest step. **/
+	public boolean ballsAreMoving() {
+		return moving;
+	}
+
+	/** Stops the thread and waits for it to finish. **/
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		long previous = System.nanoTime();
+		long accumulator = 0;
+
+		while (running) {
+			long now = System.nanoTime();
+			accumulator += now - previous;
+			previous = now;
+			if (accumulator > MAX_CATCH_UP_STEPS * stepNanos) {
+				accumulator = MAX_CATCH_UP_STEPS * stepNanos;
+			}
+
+			if (accumulator >= stepNanos) {
+				while (accumulator >= stepNanos) {
+					for (Consumer<PhysicsWorld> c; (c = commands.poll()) != null; ) {
+						c.accept(world);
+					}
+					latest.capturePrevious(world);
+					long start = System.nanoTime();
+					world.step();
+					metrics.recordStep(world, System.nanoTime() - start);
+					steps++;
+					for (int l = 0; l < stepListeners.size(); l++) {
+						stepListeners.get(l).accept(world);
+					}
+					accumulator -= stepNanos;
+				}
+
+				latest.captureCurrent(world);
+				latest.steps = steps;
+				// The state just computed is the one that is due at the point
+				// in time reached by the whole steps taken so far
+				latest.time = now - accumulator;
+				moving = latest.moving;
+				for (TripleBuffer<RenderFrame> buffer : subscribers) {
+					buffer.back().copyFrom(latest);
+					buffer.publish();
+				}
+			}
+
+			LockSupport.parkNanos(stepNanos - accumulator);
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.brianmccutchon.pool3d;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the positions and orientations of the balls of a world compactly,
+ * as a stream of frames. Each ball's state is quantized to seven integers:
+ * three for its center and four for its orientation quaternion.
+ *
+ * <p>A keyframe holds the quantized state of every ball, and can be decoded
+ * on its own. Any other frame only holds the differences from the frame
+ * before it: a bitmask of the balls whose state changed, followed by the
+ * changes for those balls. Balls at rest therefore cost one bit per frame.
+ * Every integer is written as a zigzag varint, so small changes take one or
+ * two bytes. The differences are taken between quantized values, so errors
+ * do not build up from one frame to the next.</p>
+ *
+ * <p>An encoder and a decoder each keep the state of the last frame. They
+ * stay in step as long as the decoder sees the same frames, in the same
+ * order, as the encoder produced.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class StateCodec {
+
+	/** The number of quanta per unit of distance. **/
+	public static final double POSITION_SCALE = 1 << 12;
+
+	/** The number of quanta per unit of a quaternion component. **/
+	public static final double ORIENTATION_SCALE = Short.MAX_VALUE;
+
+	/** The number of integers per ball. **/
+	private static final int FIELDS = 7;
+
+	/** The most bytes taken by one varint-encoded int. **/
+	private static final int MAX_VARINT_BYTES = 5;
+
+	/** The number of balls. **/
+	private final int size;
+
+	/** The quantized state of the last frame encoded or decoded. **/
+	private int[] state;
+
+	/** Scratch space for the quantized state of the frame being encoded. **/
+	private int[] next;
+
+	/** Constructs a codec for a world with the given number of balls. **/
+	public StateCodec(int size) {
+		this.size = size;
+		state = new int[FIELDS*size];
+		next  = new int[FIELDS*size];
+	}
+
+	/** Returns the number of balls. **/
+	public int size() {
+		return size;
+	}
+
+	/** Returns the most bytes that one frame of any kind can take. **/
+	public int maxFrameBytes() {
+		return maskBytes() + FIELDS*size*MAX_VARINT_BYTES;
+	}
+
+	/** Writes a keyframe holding the state of every ball of the world. **/
+	public void encodeKey(PhysicsWorld world, ByteBuffer out) {
+		quantize(world, state);
+		for (int k = 0; k < state.length; k++) {
+			putVarint(out, state[k]);
+		}
+	}
+
+	/**
+	 * Writes a keyframe holding the last frame encoded or decoded, without
+	 * looking at any world. A decoder that reads it is in step with this
+	 * codec, so that it can decode the frames this codec encodes next.
+	 */
+	public void encodeState(ByteBuffer out) {
+		for (int k = 0; k < state.length; k++) {
+			putVarint(out, state[k]);
+		}
+	}
+
+	/**
+	 * Writes a frame holding the changes to the state of the world since the
+	 * last frame encoded.
+	 *
+	 * @return The number of balls whose state changed. If it is 0, the
+	 *   frame can be left out of the stream, since decoding it changes
+	 *   nothing.
+	 */
+	public int encodeDelta(PhysicsWorld world, ByteBuffer out) {
+		quantize(world, next);
+
+		// The bitmask of the balls that changed, eight to a byte
+		int start = out.position();
+		for (int b = 0; b < maskBytes(); b++) {
+			out.put((byte) 0);
+		}
+		int changes = 0;
+		for (int i = 0; i < size; i++) {
+			int k = FIELDS*i;
+			boolean changed = false;
+			for (int f = 0; f < FIELDS; f++) {
+				changed |= next[k+f] != state[k+f];
+			}
+			if (changed) {
+				changes++;
+				int at = start + (i >>> 3);
+				out.put(at, (byte) (out.get(at) | (1 << (i & 7))));
+				for (int f = 0; f < FIELDS; f++) {
+					putVarint(out, next[k+f] - state[k+f]);
+				}
+			}
+		}
+
+		int[] tmp = state;
+		state = next;
+		next  = tmp;
+		return changes;
+	}
+
+	/** Reads a keyframe. **/
+	public void decodeKey(ByteBuffer in) {
+		for (int k = 0; k < state.length; k++) {
+			state[k] = getVarint(in);
+		}
+	}
+
+	/** Reads a frame holding changes since the last frame decoded. **/
+	public void decodeDelta(ByteBuffer in) {
+		int start = in.position();
+		in.position(start + maskBytes());
+		for (int i = 0; i < size; i++) {
+			if ((in.get(start + (i >>> 3)) & (1 << (i & 7))) != 0) {
+				int k = FIELDS*i;
+				for (int f = 0; f < FIELDS; f++) {
+					state[k+f] += getVarint(in);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the positions and orientations of the balls of a world to the
+	 * last frame decoded. Velocities are left alone.
+	 */
+	public void apply(PhysicsWorld world) {
+		for (int i = 0; i < size; i++) {
+			int k = FIELDS*i;
+			world.setPosition(i, state[k]   / POSITION_SCALE,
+					state[k+1] / POSITION_SCALE, state[k+2] / POSITION_SCALE);
+			double w = state[k+3], x = state[k+4];
+			double y = state[k+5], z = state[k+6];
+			double norm = Math.sqrt(w*w + x*x + y*y + z*z);
+			if (norm == 0) {
+				world.setOrientation(i, 1, 0, 0, 0);
+			} else {
+				world.setOrientation(i, w/norm, x/norm, y/norm, z/norm);
+			}
+		}
+	}
+
+	/** Stores the quantized state of the world into q. **/
+	private void quantize(PhysicsWorld world, int[] q) {
+		for (int i = 0; i < size; i++) {
+			int k = FIELDS*i;
+			q[k]   = (int) Math.round(world.px[i] * POSITION_SCALE);
+			q[k+1] = (int) Math.round(world.py[i] * POSITION_SCALE);
+			q[k+2] = (int) Math.round(world.pz[i] * POSITION_SCALE);
+			for (int c = 0; c < 4; c++) {
+				q[k+3+c] = (int) Math.round(
+						world.ori[4*i+c] * ORIENTATION_SCALE);
+			}
+		}
+	}
+
+	/** Returns the number of bytes in the bitmask of a delta frame. **/
+	private int maskBytes() {
+		return (size + 7) >>> 3;
+	}
+
+	/** Writes an int as a zigzag varint: small magnitudes take few bytes. **/
+	static void putVarint(ByteBuffer out, int value) {
+		int v = (value << 1) ^ (value >> 31);
+		while ((v & ~0x7F) != 0) {
+			out.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.put((byte) v);
+	}
+
+	/** Reads an int written by {@link #putVarint}. **/
+	static int getVarint(ByteBuffer in) {
+		int v = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			v |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+}
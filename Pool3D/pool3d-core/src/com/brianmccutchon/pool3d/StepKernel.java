@@ -0,0 +1,96 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Does the per-ball work of a step that involves no other balls: moving each
+ * ball, slowing it by air resistance, noticing when it is at rest, and
+ * bouncing it off the walls. A {@link PhysicsWorld} hands a kernel whole
+ * ranges of its state arrays, so that an implementation can work on several
+ * balls at once.
+ *
+ * <p>Every implementation must give exactly the same results as
+ * {@link ScalarKernel}, down to the sign of zero, so that a world steps the
+ * same way whichever kernel it uses.</p>
+ *
+ * @author Brian McCutchon
+ */
+public interface StepKernel {
+
+	/**
+	 * Set this system property to {@code false} to use the
+	 * {@link ScalarKernel} even when another kernel is available.
+	 */
+	String PROPERTY = "pool3d.simd";
+
+	/** Receives the bounces found by {@link #reflect}. **/
+	interface BounceCallback {
+		/**
+		 * Called once for each bounce, before the velocity is reversed.
+		 * @param i The ball that bounced.
+		 * @param axis 0, 1 or 2 for the walls normal to x, y or z.
+		 * @param v The component of the velocity along that axis.
+		 */
+		void bounced(int i, int axis, double v);
+	}
+
+	/**
+	 * Moves balls {@code from} to {@code to - 1} through a fraction of a
+	 * frame. A ball whose velocity is within {@link Physics#MOVEMENT_EPSILON}
+	 * of 0 on every axis is stopped, and its count of steps at rest is left
+	 * as it is; the world counts each whole step, however many sub-steps it
+	 * is split into. Any other ball has its velocity times dt added to its
+	 * position, then reduced by dt times a frame's air resistance, and its
+	 * count of steps at rest is set to 0.
+	 *
+	 * @param dt The fraction of a frame, from 0 to 1. When it is 1, the
+	 *   velocity must be added and the air resistance subtracted without
+	 *   being multiplied, or rather multiplied by exactly 1.
+	 * @return {@code true} iff any ball moved.
+	 */
+	boolean integrate(double[] px, double[] py, double[] pz,
+			double[] vx, double[] vy, double[] vz, int[] restSteps,
+			double dt, int from, int to);
+
+	/**
+	 * Reverses the velocity, along one axis, of balls {@code from} to
+	 * {@code to - 1} that are touching one of the two walls normal to that
+	 * axis and moving into it.
+	 *
+	 * @param p The position of each ball along the axis.
+	 * @param v The velocity of each ball along the axis.
+	 * @param tableDim The length of the table along the axis.
+	 * @param axis Passed to the callback.
+	 * @param callback Told of each bounce.
+	 */
+	void reflect(double[] p, double[] v, double tableDim, int axis,
+			int from, int to, BounceCallback callback);
+
+	/**
+	 * Returns the first kernel registered with {@link ServiceLoader} that
+	 * can run on this JVM, or a {@link ScalarKernel} if there is none or
+	 * {@link #PROPERTY} is {@code false}. A kernel that needs a module this
+	 * JVM lacks fails to load, and is skipped.
+	 */
+	static StepKernel load() {
+		if (!Boolean.parseBoolean(System.getProperty(PROPERTY, "true"))) {
+			return new ScalarKernel();
+		}
+		Iterator<StepKernel> it = ServiceLoader.load(StepKernel.class,
+				StepKernel.class.getClassLoader()).iterator();
+		while (true) {
+			try {
+				if (!it.hasNext()) {
+					break;
+				}
+				return it.next();
+			} catch (ServiceConfigurationError | LinkageError e) {
+				// Try the next one
+			}
+		}
+		return new ScalarKernel();
+	}
+
+}
@@ -0,0 +1,378 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * A {@link Broadphase} that keeps the balls sorted along one axis. Two balls
+ * can only intersect if their centers are less than a diameter apart along
+ * that axis, so each ball only has to be tested against its neighbors in the
+ * sorted order. Candidates are also pruned on the other two axes before they
+ * are reported.
+ *
+ * <p>Between frames, balls move very little relative to each other, so the
+ * order from the last update is nearly sorted and an insertion sort fixes it
+ * in close to linear time. When the world says that only some balls can
+ * have moved, each of those is instead shifted into place on its own, and
+ * the others are not looked at. Nothing is allocated after the first
+ * update.</p>
+ *
+ * <p>By default, the sweep axis is chosen automatically as the one along
+ * which the ball positions have the greatest variance, since that is the axis
+ * along which the fewest balls overlap. The sums behind the variances are
+ * kept up to date with the balls that move, and recomputed whenever every
+ * ball is updated.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class SweepAndPruneBroadphase implements Broadphase {
+
+	/** Indicates that the sweep axis should be chosen automatically. **/
+	public static final int AUTO_AXIS = -1;
+
+	/**
+	 * How much greater the variance along another axis must be before the
+	 * sweep axis is switched to it. Switching means re-sorting from scratch,
+	 * so we don't want to do it every time two variances cross.
+	 */
+	private static final double SWITCH_RATIO = 1.2;
+
+	/** The axis requested by the user: 0, 1, or 2, or {@link #AUTO_AXIS}. **/
+	private final int requestedAxis;
+
+	/** The axis currently being swept: 0 for x, 1 for y, 2 for z. **/
+	private int axis;
+
+	/** The world this was built for, or null before the first update. **/
+	private PhysicsWorld world;
+
+	/** The ball indices, sorted by their coordinates along {@link #axis}. **/
+	private int[] order;
+
+	/** keys[k] is the coordinate of ball order[k] along {@link #axis}. **/
+	private double[] keys;
+
+	/** rank[i] is the index of ball i in {@link #order}. **/
+	private int[] rank;
+
+	/** The coordinates of each ball at the last update, by axis. **/
+	private double[][] last;
+
+	/** The sums of the coordinates and their squares along each axis. **/
+	private final double[] sum = new double[3], sumSquares = new double[3];
+
+	/** Scratch space for merge sorting. **/
+	private int[] orderScratch;
+	private double[] keysScratch;
+
+	/** Constructs a broadphase that chooses its sweep axis automatically. **/
+	public SweepAndPruneBroadphase() {
+		this(AUTO_AXIS);
+	}
+
+	/**
+	 * Constructs a broadphase that sweeps along the given axis.
+	 * @param axis 0 for x, 1 for y, 2 for z, or {@link #AUTO_AXIS}.
+	 */
+	public SweepAndPruneBroadphase(int axis) {
+		if (axis < AUTO_AXIS || axis > 2) {
+			throw new IllegalArgumentException("Invalid axis: " + axis);
+		}
+		this.requestedAxis = axis;
+		this.axis = (axis == AUTO_AXIS) ? 0 : axis;
+	}
+
+	/** Returns the axis currently being swept: 0 for x, 1 for y, 2 for z. **/
+	public int getAxis() {
+		return axis;
+	}
+
+	@Override
+	public void update(PhysicsWorld world) {
+		boolean resort = false;
+
+		if (this.world != world) {
+			build(world);
+			resort = true;
+		}
+
+		int size = world.size();
+		for (int ax = 0; ax < 3; ax++) {
+			double[] c = coords(world, ax);
+			System.arraycopy(c, 0, last[ax], 0, size);
+			double s = 0, s2 = 0;
+			for (int i = 0; i < size; i++) {
+				s  += c[i];
+				s2 += c[i] * c[i];
+			}
+			sum[ax] = s;
+			sumSquares[ax] = s2;
+		}
+
+		if (requestedAxis == AUTO_AXIS) {
+			int best = chooseAxis(size);
+			if (best != axis) {
+				axis = best;
+				resort = true;
+			}
+		}
+
+		sort(world, resort);
+	}
+
+	@Override
+	public void update(PhysicsWorld world, int[] moved, int count) {
+		if (this.world != world) {
+			update(world);
+			return;
+		}
+
+		int size = world.size();
+		for (int k = 0; k < count; k++) {
+			int i = moved[k];
+			for (int ax = 0; ax < 3; ax++) {
+				double was = last[ax][i], now = coords(world, ax)[i];
+				if (now != was) {
+					sum[ax] += now - was;
+					sumSquares[ax] += now*now - was*was;
+					last[ax][i] = now;
+				}
+			}
+		}
+
+		if (requestedAxis == AUTO_AXIS) {
+			int best = chooseAxis(size);
+			if (best != axis) {
+				axis = best;
+				sort(world, true);
+				return;
+			}
+		}
+
+		double[] coords = coords(world, axis);
+		for (int k = 0; k < count; k++) {
+			int i = moved[k];
+			if (coords[i] != keys[rank[i]]) {
+				shift(rank[i], coords[i], size);
+			}
+		}
+	}
+
+	/**
+	 * Sorts every ball by its coordinate along {@link #axis}, from scratch
+	 * or from the order of the last update.
+	 */
+	private void sort(PhysicsWorld world, boolean resort) {
+		double[] coords = coords(world, axis);
+		int size = world.size();
+		for (int k = 0; k < size; k++) {
+			keys[k] = coords[order[k]];
+		}
+
+		if (resort) {
+			mergeSort(0, size);
+		} else {
+			insertionSort(0, size);
+		}
+
+		for (int k = 0; k < size; k++) {
+			rank[order[k]] = k;
+		}
+	}
+
+	/**
+	 * Gives the ball at order[r] a new key and shifts it into place, keeping
+	 * the ranks of the balls it passes up to date. The other keys must be
+	 * sorted.
+	 */
+	private void shift(int r, double key, int size) {
+		int ball = order[r];
+		while (r > 0 && keys[r-1] > key) {
+			keys[r]  = keys[r-1];
+			order[r] = order[r-1];
+			rank[order[r]] = r;
+			r--;
+		}
+		while (r < size-1 && keys[r+1] < key) {
+			keys[r]  = keys[r+1];
+			order[r] = order[r+1];
+			rank[order[r]] = r;
+			r++;
+		}
+		keys[r]  = key;
+		order[r] = ball;
+		rank[ball] = r;
+	}
+
+	@Override
+	public void findPairs(PhysicsWorld world, int from, int to,
+			PairCallback callback) {
+		int size = world.size();
+		double[] a = coords(world, (axis + 1) % 3);
+		double[] b = coords(world, (axis + 2) % 3);
+
+		if (from == 0 && to == size) {
+			// Every pair is wanted, so each ball only needs to look ahead
+			for (int r = 0; r < size; r++) {
+				int i = order[r];
+				for (int k = r+1; k < size &&
+						keys[k] - keys[r] < PoolBall.DIAMETER; k++) {
+					int j = order[k];
+					if (overlaps(a, b, i, j)) {
+						callback.pair(Math.min(i, j), Math.max(i, j));
+					}
+				}
+			}
+			return;
+		}
+
+		// Otherwise, look both ways and only report pairs in which ball i
+		// has the lower index
+		for (int i = from; i < to; i++) {
+			int r = rank[i];
+			for (int k = r-1; k >= 0 &&
+					keys[r] - keys[k] < PoolBall.DIAMETER; k--) {
+				int j = order[k];
+				if (j > i && overlaps(a, b, i, j)) {
+					callback.pair(i, j);
+				}
+			}
+			for (int k = r+1; k < size &&
+					keys[k] - keys[r] < PoolBall.DIAMETER; k++) {
+				int j = order[k];
+				if (j > i && overlaps(a, b, i, j)) {
+					callback.pair(i, j);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void findNeighbors(PhysicsWorld world, int i,
+			PairCallback callback) {
+		int size = world.size();
+		double[] a = coords(world, (axis + 1) % 3);
+		double[] b = coords(world, (axis + 2) % 3);
+		int r = rank[i];
+		for (int k = r-1; k >= 0 &&
+				keys[r] - keys[k] < PoolBall.DIAMETER; k--) {
+			int j = order[k];
+			if (overlaps(a, b, i, j)) {
+				callback.pair(i, j);
+			}
+		}
+		for (int k = r+1; k < size &&
+				keys[k] - keys[r] < PoolBall.DIAMETER; k++) {
+			int j = order[k];
+			if (overlaps(a, b, i, j)) {
+				callback.pair(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Returns the axis along which ball positions have the greatest variance,
+	 * preferring the current axis unless another one is clearly better.
+	 */
+	private int chooseAxis(int n) {
+		int best = axis;
+		double bestVariance = variance(axis, n);
+		for (int ax = 0; ax < 3; ax++) {
+			double v = variance(ax, n);
+			if (v > bestVariance * SWITCH_RATIO) {
+				best = ax;
+				bestVariance = v;
+			}
+		}
+		return best;
+	}
+
+	/** Computes the variance of n ball positions along an axis. **/
+	private double variance(int axis, int n) {
+		if (n == 0) {
+			return 0;
+		}
+		double mean = sum[axis] / n;
+		return sumSquares[axis] / n - mean * mean;
+	}
+
+	/** Returns the array of ball coordinates along the given axis. **/
+	private static double[] coords(PhysicsWorld world, int axis) {
+		switch (axis) {
+		case 0:  return world.px;
+		case 1:  return world.py;
+		default: return world.pz;
+		}
+	}
+
+	/**
+	 * Determines whether balls i and j are less than a diameter apart along
+	 * both of the axes that are not being swept.
+	 */
+	private static boolean overlaps(double[] a, double[] b, int i, int j) {
+		return Math.abs(a[i] - a[j]) < PoolBall.DIAMETER &&
+				Math.abs(b[i] - b[j]) < PoolBall.DIAMETER;
+	}
+
+	/** Allocates the arrays for a world. **/
+	private void build(PhysicsWorld world) {
+		int size = world.size();
+		this.world   = world;
+		order        = new int[size];
+		keys         = new double[size];
+		rank         = new int[size];
+		orderScratch = new int[size];
+		keysScratch  = new double[size];
+		last         = new double[3][size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+	}
+
+	/** Sorts keys[from] to keys[to-1], which should be nearly sorted. **/
+	private void insertionSort(int from, int to) {
+		for (int k = from+1; k < to; k++) {
+			double key = keys[k];
+			int ball = order[k];
+			int m = k - 1;
+			while (m >= from && keys[m] > key) {
+				keys[m+1]  = keys[m];
+				order[m+1] = order[m];
+				m--;
+			}
+			keys[m+1]  = key;
+			order[m+1] = ball;
+		}
+	}
+
+	/** Sorts keys[from] to keys[to-1], which may be in any order. **/
+	private void mergeSort(int from, int to) {
+		if (to - from < 16) {
+			insertionSort(from, to);
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(from, mid);
+		mergeSort(mid, to);
+
+		int left = from, right = mid, out = from;
+		while (left < mid && right < to) {
+			if (keys[right] < keys[left]) {
+				keysScratch[out]    = keys[right];
+				orderScratch[out++] = order[right++];
+			} else {
+				keysScratch[out]    = keys[left];
+				orderScratch[out++] = order[left++];
+			}
+		}
+		while (left < mid) {
+			keysScratch[out]    = keys[left];
+			orderScratch[out++] = order[left++];
+		}
+		while (right < to) {
+			keysScratch[out]    = keys[right];
+			orderScratch[out++] = order[right++];
+		}
+		System.arraycopy(keysScratch,  from, keys,  from, to - from);
+		System.arraycopy(orderScratch, from, order, from, to - from);
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Steps many independent {@link PhysicsWorld}s on a fixed pool of worker
+ * threads. Each world is assigned to exactly one worker when it is added and
+ * stays there, so a world's arrays are only ever touched by one thread while
+ * the scheduler runs it. Each worker steps its whole batch of worlds in turn.
+ *
+ * <p>The scheduler is driven by calling {@link #step(int)}, which returns once
+ * every world has been stepped the requested number of times. Between calls,
+ * the caller may safely read or modify the worlds.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class TableScheduler implements AutoCloseable {
+
+	/** A world together with its statistics. **/
+	private static class Entry {
+		final PhysicsWorld world;
+		final WorldStats stats;
+
+		Entry(PhysicsWorld world, WorldStats stats) {
+			this.world = world;
+			this.stats = stats;
+		}
+	}
+
+	/** A worker thread and the batch of worlds that it owns. **/
+	private class Worker extends Thread {
+		/** The worlds stepped by this worker. Only this thread touches it. **/
+		private final ArrayList<Entry> batch = new ArrayList<>();
+
+		/** Worlds waiting to be added to {@link #batch}. **/
+		final ConcurrentLinkedQueue<Entry> added = new ConcurrentLinkedQueue<>();
+
+		/** Worlds waiting to be removed from {@link #batch}. **/
+		final ConcurrentLinkedQueue<PhysicsWorld> removed =
+				new ConcurrentLinkedQueue<>();
+
+		/** The number of worlds owned by this worker, including pending ones. **/
+		int load;
+
+		Worker(int index) {
+			super("TableScheduler-worker-" + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				phaser.arriveAndAwaitAdvance(); // Wait for the next tick
+				if (closed) {
+					phaser.arriveAndDeregister();
+					return;
+				}
+
+				try {
+					updateBatch();
+					stepBatch(framesPerTick);
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+
+				phaser.arriveAndAwaitAdvance(); // Signal that we're done
+			}
+		}
+
+		private void updateBatch() {
+			for (Entry e; (e = added.poll()) != null; ) {
+				batch.add(e);
+			}
+			for (PhysicsWorld w; (w = removed.poll()) != null; ) {
+				for (int i = 0; i < batch.size(); i++) {
+					if (batch.get(i).world == w) {
+						batch.remove(i);
+						break;
+					}
+				}
+			}
+		}
+
+		private void stepBatch(int frames) {
+			// Step one world at a time so that its arrays stay in cache
+			for (int i = 0; i < batch.size(); i++) {
+				Entry e = batch.get(i);
+				for (int f = 0; f < frames; f++) {
+					long start = System.nanoTime();
+					e.world.step();
+					e.stats.record(start, System.nanoTime());
+				}
+			}
+		}
+	}
+
+	/** The worker threads. **/
+	private final Worker[] workers;
+
+	/**
+	 * Coordinates the ticks. The controlling thread and the workers each
+	 * arrive twice per tick: once to start it and once to finish it.
+	 */
+	private final Phaser phaser;
+
+	/** Maps each world to the worker that owns it. **/
+	private final Map<PhysicsWorld, Worker> owners = new IdentityHashMap<>();
+
+	/** The number of frames to step each world during the current tick. **/
+	private volatile int framesPerTick;
+
+	/** {@code true} once {@link #close()} has been called. **/
+	private volatile boolean closed = false;
+
+	/** The first exception thrown by a worker during the current tick. **/
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	/**
+	 * Constructs a scheduler and starts its worker threads.
+	 * @param threads The number of worker threads.
+	 */
+	public TableScheduler(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread required");
+		}
+
+		phaser  = new Phaser(threads + 1);
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Constructs a scheduler with one worker thread per available processor.
+	 */
+	public TableScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Adds a world to the least loaded worker's batch. It will be stepped
+	 * starting with the next call to {@link #step(int)}.
+	 *
+	 * @param world The world to add.
+	 * @return The statistics that will be collected for the world.
+	 * @throws IllegalArgumentException If the world was already added.
+	 */
+	public synchronized WorldStats add(PhysicsWorld world) {
+		checkOpen();
+		if (owners.containsKey(world)) {
+			throw new IllegalArgumentException("World already scheduled");
+		}
+
+		Worker owner = workers[0];
+		for (Worker w : workers) {
+			if (w.load < owner.load) {
+				owner = w;
+			}
+		}
+
+		WorldStats stats = new WorldStats();
+		owner.added.add(new Entry(world, stats));
+		owner.load++;
+		owners.put(world, owner);
+		return stats;
+	}
+
+	/**
+	 * Removes a world. It will no longer be stepped after the current tick.
+	 *
+	 * @param world The world to remove.
+	 * @return {@code true} iff the world had been added.
+	 */
+	public synchronized boolean remove(PhysicsWorld world) {
+		Worker owner = owners.remove(world);
+		if (owner == null) {
+			return false;
+		}
+		owner.removed.add(world);
+		owner.load--;
+		return true;
+	}
+
+	/** Returns the number of worlds being run by this scheduler. **/
+	public synchronized int size() {
+		return owners.size();
+	}
+
+	/**
+	 * Steps every world the given number of times, blocking until all the
+	 * workers have finished.
+	 *
+	 * @param frames The number of frames by which to advance each world.
+	 * @throws IllegalStateException If the scheduler has been closed.
+	 * @throws RuntimeException If a world threw while being stepped.
+	 */
+	public synchronized void step(int frames) {
+		checkOpen();
+		framesPerTick = frames;
+		phaser.arriveAndAwaitAdvance(); // Start the tick
+		phaser.arriveAndAwaitAdvance(); // Wait for it to finish
+
+		Throwable t = failure.getAndSet(null);
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		} else if (t != null) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/** Stops the worker threads. Worlds are left in their current state. **/
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		phaser.arriveAndAwaitAdvance(); // Let the workers see the flag
+		phaser.arriveAndDeregister();
+
+		for (Worker w : workers) {
+			try {
+				w.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Scheduler is closed");
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.brianmccutchon.pool3d;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands values from one producer thread to one consumer thread without
+ * locking, copying or tearing. There are three slots: the producer writes
+ * into the back slot while the consumer reads the front slot, and the third
+ * slot holds the latest value that has been published but not yet taken.
+ * Publishing and acquiring each swap a slot with the middle one atomically,
+ * so neither thread ever waits for the other, and the consumer always gets
+ * the latest complete value.
+ *
+ * @param <T> The type of the values. They are mutable and reused.
+ * @author Brian McCutchon
+ */
+public class TripleBuffer<T> {
+
+	/** Set on {@link #middle} when it holds a value not yet acquired. **/
+	private static final int FRESH = 4;
+
+	private final Object[] slots = new Object[3];
+
+	/** The index of the middle slot, possibly with {@link #FRESH} set. **/
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	/** The index of the slot the producer writes. Only it touches this. **/
+	private int back = 0;
+
+	/** The index of the slot the consumer reads. Only it touches this. **/
+	private int front = 2;
+
+	/**
+	 * Constructs a triple buffer.
+	 * @param factory Called three times to make the values of the slots.
+	 */
+	public TripleBuffer(Supplier<? extends T> factory) {
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = factory.get();
+		}
+	}
+
+	/**
+	 * Returns the value for the producer to write. It stays the same until
+	 * the next call to {@link #publish()}, and holds whatever was written to
+	 * it some time ago, not necessarily the latest value.
+	 */
+	@SuppressWarnings("unchecked")
+	public T back() {
+		return (T) slots[back];
+	}
+
+	/**
+	 * Makes the value returned by {@link #back()} available to the consumer.
+	 * Only the producer may call this.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & ~FRESH;
+	}
+
+	/**
+	 * Returns the latest value published. The consumer may read it until the
+	 * next call to this method. If nothing has been published since the last
+	 * call, the same value is returned again. Only the consumer may call this.
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & ~FRESH;
+		}
+		return (T) slots[front];
+	}
+
+}
@@ -0,0 +1,251 @@
+package com.brianmccutchon.pool3d;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Saves the whole state of a {@link PhysicsWorld} to a {@link ByteBuffer}
+ * and restores it, so that a restored world steps exactly as the original
+ * would have. The buffer is supplied by the caller and may be on the heap or
+ * direct; nothing is allocated. Snapshots are written at the buffer's
+ * position, which is then advanced past them, and the buffer's byte order is
+ * left as it was.
+ *
+ * <p>The layout is little-endian, whatever the buffer's byte order is, and
+ * starts with a {@value #HEADER_BYTES} byte header:</p>
+ * <pre>
+ *   int    magic ({@link #MAGIC})
+ *   int    version ({@link #VERSION})
+ *   int    the number of balls, n
+ *   int    flags: bit 0 is set iff the balls were moving
+ *   int    the number of awake balls
+ *   int    reserved, 0
+ *   double tableX, tableY, tableZ
+ *   double restitution
+ *   double the sub-step fraction
+ * </pre>
+ * <p>It is followed by the arrays px, py, pz, vx, vy, vz and ori as doubles,
+ * the number of steps for which each ball has been at rest as n ints, and
+ * the indices of the awake balls in the order in which the world visits
+ * them, padded to n ints. A ball is asleep iff it is not among the awake
+ * balls, which are those that have been at rest for fewer than
+ * {@link PhysicsWorld#SLEEP_STEPS} steps, and those that have been hit
+ * since they were last at rest.</p>
+ *
+ * <p>The broadphase is not part of a snapshot. It catches up with the
+ * restored positions on the next step.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class WorldSnapshot {
+
+	/** Identifies a snapshot: "P3DS". **/
+	public static final int MAGIC = 0x50334453;
+
+	/** The version of the layout. **/
+	public static final int VERSION = 2;
+
+	static final int HEADER_BYTES = 64;
+
+	private WorldSnapshot() {
+		// Not instantiable
+	}
+
+	/** Returns the number of bytes in a snapshot of a world of n balls. **/
+	public static int bytes(int n) {
+		return HEADER_BYTES + 10*8*n + 2*4*n;
+	}
+
+	/**
+	 * Writes a snapshot of a world at the buffer's position, and advances
+	 * the position past it.
+	 *
+	 * @throws BufferOverflowException If the snapshot does not fit.
+	 */
+	public static void save(PhysicsWorld world, ByteBuffer out) {
+		int n = world.size();
+		int start = out.position();
+		if (out.limit() - start < bytes(n)) {
+			throw new BufferOverflowException();
+		}
+
+		ByteOrder order = out.order();
+		out.order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(start,      MAGIC);
+		out.putInt(start + 4,  VERSION);
+		out.putInt(start + 8,  n);
+		out.putInt(start + 12, world.moving ? 1 : 0);
+		out.putInt(start + 16, world.awakeCount);
+		out.putInt(start + 20, 0);
+		out.putDouble(start + 24, world.tableX);
+		out.putDouble(start + 32, world.tableY);
+		out.putDouble(start + 40, world.tableZ);
+		out.putDouble(start + 48, world.getRestitution());
+		out.putDouble(start + 56, world.getSubstepFraction());
+
+		int at = start + HEADER_BYTES;
+		at = putDoubles(out, at, world.px,  n);
+		at = putDoubles(out, at, world.py,  n);
+		at = putDoubles(out, at, world.pz,  n);
+		at = putDoubles(out, at, world.vx,  n);
+		at = putDoubles(out, at, world.vy,  n);
+		at = putDoubles(out, at, world.vz,  n);
+		at = putDoubles(out, at, world.ori, 4*n);
+		at = putInts(out, at, world.restSteps, n);
+		at = putInts(out, at, world.awake, n);
+		out.order(order);
+		out.position(at);
+	}
+
+	/**
+	 * Reads a snapshot from the buffer's position into a world, and advances
+	 * the position past it. The world must have the same number of balls and
+	 * table size as the world the snapshot was taken of.
+	 *
+	 * @throws IllegalArgumentException If the buffer does not hold a
+	 *   snapshot of this version, or the snapshot does not match the world.
+	 *   The world is left as it was.
+	 */
+	public static void restore(ByteBuffer in, PhysicsWorld world) {
+		int n = world.size();
+		int start = in.position();
+		if (in.limit() - start < HEADER_BYTES) {
+			throw new IllegalArgumentException("Truncated snapshot");
+		}
+
+		ByteOrder order = in.order();
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			if (in.getInt(start) != MAGIC) {
+				throw new IllegalArgumentException("Not a snapshot");
+			}
+			if (in.getInt(start + 4) != VERSION) {
+				throw new IllegalArgumentException(
+						"Unsupported snapshot version: " + in.getInt(start + 4));
+			}
+			if (in.getInt(start + 8) != n ||
+					in.getDouble(start + 24) != world.tableX ||
+					in.getDouble(start + 32) != world.tableY ||
+					in.getDouble(start + 40) != world.tableZ) {
+				throw new IllegalArgumentException(
+						"Snapshot is of a different world");
+			}
+			if (in.limit() - start < bytes(n)) {
+				throw new IllegalArgumentException("Truncated snapshot");
+			}
+			int awakeCount = in.getInt(start + 16);
+			double restitution = in.getDouble(start + 48);
+			double substepFraction = in.getDouble(start + 56);
+			if (awakeCount < 0 || awakeCount > n) {
+				throw new IllegalArgumentException(
+						"Invalid awake count: " + awakeCount);
+			}
+			if (!(substepFraction > 0)) {
+				throw new IllegalArgumentException(
+						"Invalid sub-step fraction: " + substepFraction);
+			}
+			checkAwake(in, start, n, awakeCount, world);
+
+			world.setRestitution(restitution);
+			world.setSubstepFraction(substepFraction);
+			world.moving = (in.getInt(start + 12) & 1) != 0;
+			world.awakeCount = awakeCount;
+
+			int at = start + HEADER_BYTES;
+			at = getDoubles(in, at, world.px,  n);
+			at = getDoubles(in, at, world.py,  n);
+			at = getDoubles(in, at, world.pz,  n);
+			at = getDoubles(in, at, world.vx,  n);
+			at = getDoubles(in, at, world.vy,  n);
+			at = getDoubles(in, at, world.vz,  n);
+			at = getDoubles(in, at, world.ori, 4*n);
+			at = getInts(in, at, world.restSteps, n);
+			at = getInts(in, at, world.awake, n);
+			markAsleep(world);
+			world.updateAll = true;
+			in.position(at);
+		} finally {
+			in.order(order);
+		}
+	}
+
+	/**
+	 * Checks that the first awakeCount indices of the awake balls in a
+	 * snapshot are distinct balls, and exactly those that should be awake.
+	 * The world's {@link PhysicsWorld#asleep} flags are used to mark the
+	 * balls seen, and are put back from its own awake balls if the check
+	 * fails.
+	 */
+	private static void checkAwake(ByteBuffer in, int start, int n,
+			int awakeCount, PhysicsWorld world) {
+		int v    = start + HEADER_BYTES + 3*8*n;
+		int rest = start + HEADER_BYTES + 10*8*n;
+		int wake = rest + 4*n;
+		boolean[] asleep = world.asleep;
+		Arrays.fill(asleep, 0, n, true);
+		try {
+			for (int k = 0; k < awakeCount; k++) {
+				int i = in.getInt(wake + 4*k);
+				if (i < 0 || i >= n || !asleep[i]) {
+					throw new IllegalArgumentException(
+							"Invalid awake ball: " + i);
+				}
+				asleep[i] = false;
+			}
+			for (int i = 0; i < n; i++) {
+				int steps = in.getInt(rest + 4*i);
+				boolean moving = in.getDouble(v + 8*i) != 0 ||
+						in.getDouble(v + 8*(n + i)) != 0 ||
+						in.getDouble(v + 8*(2*n + i)) != 0;
+				if (steps < 0 || asleep[i] !=
+						(steps >= PhysicsWorld.SLEEP_STEPS && !moving)) {
+					throw new IllegalArgumentException(
+							"Ball " + i + " should be " +
+							(asleep[i] ? "awake" : "asleep"));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			markAsleep(world);
+			throw e;
+		}
+	}
+
+	/** Sets the asleep flags of a world from its list of awake balls. **/
+	private static void markAsleep(PhysicsWorld world) {
+		Arrays.fill(world.asleep, true);
+		for (int k = 0; k < world.awakeCount; k++) {
+			world.asleep[world.awake[k]] = false;
+		}
+	}
+
+	private static int putDoubles(ByteBuffer out, int at, double[] a, int n) {
+		for (int i = 0; i < n; i++, at += 8) {
+			out.putDouble(at, a[i]);
+		}
+		return at;
+	}
+
+	private static int putInts(ByteBuffer out, int at, int[] a, int n) {
+		for (int i = 0; i < n; i++, at += 4) {
+			out.putInt(at, a[i]);
+		}
+		return at;
+	}
+
+	private static int getDoubles(ByteBuffer in, int at, double[] a, int n) {
+		for (int i = 0; i < n; i++, at += 8) {
+			a[i] = in.getDouble(at);
+		}
+		return at;
+	}
+
+	private static int getInts(ByteBuffer in, int at, int[] a, int n) {
+		for (int i = 0; i < n; i++, at += 4) {
+			a[i] = in.getInt(at);
+		}
+		return at;
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.brianmccutchon.pool3d;
+
+/**
+ * Step-rate statistics for one world run by a {@link TableScheduler}. Only
+ * the worker thread that owns the world writes to these; any thread may read
+ * them.
+ *
+ * @author Brian McCutchon
+ */
+public class WorldStats {
+
+	/** The number of steps taken so far. **/
+	private volatile long steps;
+
+	/** The total time spent stepping, in nanoseconds. **/
+	private volatile long busyNanos;
+
+	/** The time taken by the longest step so far, in nanoseconds. **/
+	private volatile long maxStepNanos;
+
+	/** The {@link System#nanoTime()} at which the first step started. **/
+	private volatile long firstStart;
+
+	/** The {@link System#nanoTime()} at which the latest step ended. **/
+	private volatile long lastEnd;
+
+	/**
+	 * Records a step.
+	 * @param start The time at which the step started.
+	 * @param end The time at which the step ended.
+	 */
+	void record(long start, long end) {
+		long n = steps;
+		if (n == 0) {
+			firstStart = start;
+		}
+		long nanos = end - start;
+		busyNanos += nanos;
+		if (nanos > maxStepNanos) {
+			maxStepNanos = nanos;
+		}
+		lastEnd = end;
+		steps = n + 1;
+	}
+
+	/** Returns the number of steps taken so far. **/
+	public long getSteps() {
+		return steps;
+	}
+
+	/** Returns the mean time taken by a step, in nanoseconds. **/
+	public double getMeanStepNanos() {
+		long n = steps;
+		return n == 0 ? 0 : (double) busyNanos / n;
+	}
+
+	/** Returns the time taken by the longest step so far, in nanoseconds. **/
+	public long getMaxStepNanos() {
+		return maxStepNanos;
+	}
+
+	/**
+	 * Returns the number of steps taken per second of wall-clock time between
+	 * the start of the first step and the end of the latest one.
+	 */
+	public double getStepsPerSecond() {
+		long n = steps;
+		long elapsed = lastEnd - firstStart;
+		return (n == 0 || elapsed <= 0) ? 0 : n * 1e9 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d steps, %.0f steps/s, mean %.0f ns, max %d ns",
+				getSteps(), getStepsPerSecond(), getMeanStepNanos(),
+				getMaxStepNanos());
+	}
+
+}
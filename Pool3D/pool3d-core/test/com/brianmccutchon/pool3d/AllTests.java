@@ -0,0 +1,17 @@
+package com.brianmccutchon.pool3d;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+@RunWith(Suite.class)
+@SuiteClasses({ BroadphaseTest.class, EventDrivenSimulatorTest.class,
+		PhysTest.class, PhysicsWorldTest.class, PoolBallTest.class,
+		JfrEventsTest.class, LatencyHistogramTest.class,
+		ParallelNarrowphaseTest.class, RacksTest.class, ReplayTest.class,
+		ShotSearchTest.class, SimulationThreadTest.class,
+		TableSchedulerTest.class,
+		TripleBufferTest.class, WorldSnapshotTest.class })
+public class AllTests {
+
+}
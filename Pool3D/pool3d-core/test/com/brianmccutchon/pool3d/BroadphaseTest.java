@@ -0,0 +1,196 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BroadphaseTest {
+
+	@Test
+	public void testGridFindsAllCollisions() {
+		checkAgainstBruteForce(new GridBroadphase());
+	}
+
+	@Test
+	public void testSweepAndPruneFindsAllCollisions() {
+		checkAgainstBruteForce(new SweepAndPruneBroadphase());
+		checkAgainstBruteForce(new SweepAndPruneBroadphase(1));
+	}
+
+	@Test
+	public void testSweepAndPruneRanges() {
+		PhysicsWorld world = randomWorld(new Random(7), 300, 12);
+		Broadphase bp = new SweepAndPruneBroadphase();
+		Set<Long> all = collisions(world, bp);
+
+		// Splitting the range must not lose or duplicate any pairs
+		Set<Long> split = new HashSet<>();
+		for (int from = 0; from < world.size(); from += 70) {
+			int to = Math.min(world.size(), from + 70);
+			bp.findPairs(world, from, to, (i, j) -> {
+				if (world.intersects(i, j)) {
+					assertTrue(split.add((long) i * world.size() + j));
+				}
+			});
+		}
+		assertEquals(all, split);
+	}
+
+	@Test
+	public void testUpdateMovedBalls() {
+		for (Broadphase bp : new Broadphase[] { new GridBroadphase(),
+				new SweepAndPruneBroadphase(),
+				new SweepAndPruneBroadphase(2) }) {
+			Random rand = new Random(11);
+			PhysicsWorld world = randomWorld(rand, 500, 10);
+			bp.update(world);
+
+			// A few balls at a time move, the rest stay put
+			int[] moved = new int[world.size()];
+			for (int frame = 0; frame < 30; frame++) {
+				int count = 0;
+				for (int i = 0; i < world.size(); i++) {
+					if (rand.nextInt(10) == 0) {
+						moved[count++] = i;
+						world.px[i] += rand.nextGaussian() * 0.5;
+						world.py[i] += rand.nextGaussian() * 0.5;
+						world.pz[i] += rand.nextGaussian() * 0.5;
+					}
+				}
+				bp.update(world, moved, count);
+				Set<Long> expected =
+						collisions(world, new BruteForceBroadphase());
+				assertEquals(expected, pairs(world, bp));
+				assertEquals(expected, neighborCollisions(world, bp));
+			}
+		}
+	}
+
+	@Test
+	public void testAutoAxisFromMovedBalls() {
+		// A cube of balls, a few of which then spread out along z
+		PhysicsWorld world = randomWorld(new Random(3), 60, 10);
+		SweepAndPruneBroadphase bp = new SweepAndPruneBroadphase();
+		bp.update(world);
+		int[] moved = new int[20];
+		for (int k = 0; k < moved.length; k++) {
+			moved[k] = 3*k;
+			world.pz[3*k] = 10 * k;
+		}
+		bp.update(world, moved, moved.length);
+		assertEquals(2, bp.getAxis());
+		assertEquals(collisions(world, new BruteForceBroadphase()),
+				pairs(world, bp));
+	}
+
+	@Test
+	public void testAutoAxis() {
+		// A long, thin line of balls along z
+		PhysicsWorld world = new PhysicsWorld(20);
+		for (int i = 0; i < world.size(); i++) {
+			world.setPosition(i, 0.1 * (i % 3), 0, 2.5 * i);
+		}
+
+		SweepAndPruneBroadphase bp = new SweepAndPruneBroadphase();
+		bp.update(world);
+		assertEquals(2, bp.getAxis());
+	}
+
+	/**
+	 * Checks that a broadphase reports the same intersecting pairs as the
+	 * brute force broadphase for a dense rack and a sparse table, both before
+	 * and after the balls move.
+	 */
+	private static void checkAgainstBruteForce(Broadphase broadphase) {
+		Random rand = new Random(42);
+
+		// Dense: 500 balls in a 10x10x10 box
+		PhysicsWorld dense = randomWorld(rand, 500, 10);
+		// Sparse: 40 balls on the standard table
+		PhysicsWorld sparse = randomWorld(rand, 40, Physics.TABLE_Y);
+
+		for (PhysicsWorld world : new PhysicsWorld[] { dense, sparse }) {
+			for (int frame = 0; frame < 20; frame++) {
+				broadphase.update(world);
+				Set<Long> expected =
+						collisions(world, new BruteForceBroadphase());
+				assertEquals(expected, collisions(world, broadphase));
+				assertEquals(expected, neighborCollisions(world, broadphase));
+
+				// Move everything a little, as a step would
+				for (int i = 0; i < world.size(); i++) {
+					world.px[i] += rand.nextGaussian() * 0.5;
+					world.py[i] += rand.nextGaussian() * 0.5;
+					world.pz[i] += rand.nextGaussian() * 0.5;
+				}
+			}
+		}
+	}
+
+	/** Returns a world with balls placed uniformly at random in a cube. **/
+	private static PhysicsWorld randomWorld(Random rand, int size, double side) {
+		PhysicsWorld world = new PhysicsWorld(size);
+		for (int i = 0; i < size; i++) {
+			world.setPosition(i, (rand.nextDouble() - 0.5) * side,
+					(rand.nextDouble() - 0.5) * side,
+					(rand.nextDouble() - 0.5) * side);
+		}
+		return world;
+	}
+
+	/**
+	 * Returns the intersecting pairs reported by a broadphase, encoded as
+	 * {@code i*size + j}. Fails if any pair is reported twice.
+	 */
+	private static Set<Long> collisions(PhysicsWorld world, Broadphase bp) {
+		bp.update(world);
+		return pairs(world, bp);
+	}
+
+	/**
+	 * Returns the intersecting pairs reported by a broadphase that is
+	 * already up to date, as {@link #collisions} does.
+	 */
+	private static Set<Long> pairs(PhysicsWorld world, Broadphase bp) {
+		Set<Long> reported  = new HashSet<>();
+		Set<Long> colliding = new HashSet<>();
+		bp.findPairs(world, 0, world.size(), (i, j) -> {
+			assertTrue(i < j);
+			long key = (long) i * world.size() + j;
+			assertTrue("Pair reported twice", reported.add(key));
+			if (world.intersects(i, j)) {
+				colliding.add(key);
+			}
+		});
+		return colliding;
+	}
+
+	/**
+	 * Returns the intersecting pairs found by asking a broadphase for the
+	 * neighbors of each ball, encoded as in {@link #collisions}. Fails if any
+	 * neighbor is reported twice for the same ball.
+	 */
+	private static Set<Long> neighborCollisions(PhysicsWorld world,
+			Broadphase bp) {
+		Set<Long> colliding = new HashSet<>();
+		for (int ball = 0; ball < world.size(); ball++) {
+			Set<Integer> reported = new HashSet<>();
+			int queried = ball;
+			bp.findNeighbors(world, ball, (i, j) -> {
+				assertEquals(queried, i);
+				assertNotEquals(i, j);
+				assertTrue("Neighbor reported twice", reported.add(j));
+				if (world.intersects(i, j)) {
+					colliding.add((long) Math.min(i, j) * world.size() +
+							Math.max(i, j));
+				}
+			});
+		}
+		return colliding;
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EventDrivenSimulatorTest {
+
+	@Test
+	public void testPolynomialRoots() {
+		// (x-1)(x-2)(x-3)(x-4) = x^4 - 10x^3 + 35x^2 - 50x + 24
+		double[] c = { 24, -50, 35, -10, 1 };
+		double[] roots = new double[5];
+		double[] work = new double[Polynomials.workspaceSize(4)];
+
+		assertEquals(4, Polynomials.roots(c, 4, 0, 5, roots, work));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i + 1, roots[i], 1e-9);
+		}
+
+		assertEquals(2, Polynomials.roots(c, 4, 1.5, 3.5, roots, work));
+		assertEquals(2, roots[0], 1e-9);
+		assertEquals(3, roots[1], 1e-9);
+
+		// x^2 + 1 has no real roots
+		assertEquals(0, Polynomials.roots(new double[] { 1, 0, 1 }, 2,
+				-10, 10, roots, work));
+
+		// (x-1)(x-2)(x-3) = x^3 - 6x^2 + 11x - 6, sharing the workspace
+		double[] cubic = { -6, 11, -6, 1 };
+		assertEquals(3, Polynomials.roots(cubic, 3, 0, 5, roots, work));
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i + 1, roots[i], 1e-9);
+		}
+	}
+
+	@Test
+	public void testHeadOn() {
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, -5, 0, 0);
+		world.setPosition(1,  5, 0, 0);
+		world.setVelocity(0,  0.2, 0, 0);
+		world.setVelocity(1, -0.2, 0, 0);
+
+		EventDrivenSimulator sim = new EventDrivenSimulator(world);
+		assertEquals(1, sim.runToRest());
+
+		// Each ball covers 4 units by the time they touch:
+		// 0.2t - AIR_RESISTANCE/2*t^2 = 4
+		double a = Physics.AIR_RESISTANCE;
+		double t = (0.2 - Math.sqrt(0.04 - 8*a)) / a;
+		double speed = 0.2 - a*t;
+		double after = speed*speed / (2*a);
+
+		assertEquals(-1 - after, world.px[0], 1e-9);
+		assertEquals( 1 + after, world.px[1], 1e-9);
+		assertEquals(0.0, world.vx[0], 0.0);
+		assertEquals(0.0, world.vx[1], 0.0);
+	}
+
+	@Test
+	public void testFastBallDoesNotTunnel() {
+		// Moves more than a diameter per frame, so frame stepping could jump
+		// right over the other ball
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, -15.5, 0, 0);
+		world.setPosition(1,   0.0, 0, 0);
+		world.setVelocity(0, 3, 0, 0);
+
+		EventDrivenSimulator sim = new EventDrivenSimulator(world);
+		sim.advanceTo(5);
+
+		assertEquals(1, sim.getEventCount());
+		assertTrue(world.vx[1] > 2.9);
+		assertEquals(0.0, world.vx[0], 1e-12);
+		assertEquals(-PoolBall.DIAMETER, world.px[0], 1e-9);
+	}
+
+	@Test
+	public void testWallBounce() {
+		PhysicsWorld world = new PhysicsWorld(1);
+		world.setVelocity(0, 5, 0, 0);
+
+		EventDrivenSimulator sim = new EventDrivenSimulator(world);
+		assertTrue(sim.runToRest() > 1);
+
+		double limit = Physics.TABLE_X/2 - PoolBall.RADIUS;
+		assertTrue(Math.abs(world.px[0]) <= limit + 1e-9);
+	}
+
+	@Test
+	public void testBreakStaysConsistent() {
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		world.setVelocity(0, -1, 0.013, -0.007);
+
+		EventDrivenSimulator sim = new EventDrivenSimulator(world);
+		assertTrue(sim.runToRest() > 0);
+
+		for (int i = 0; i < world.size(); i++) {
+			assertTrue(Math.abs(world.px[i]) <= Physics.TABLE_X/2 + 1e-6);
+			assertTrue(Math.abs(world.py[i]) <= Physics.TABLE_Y/2 + 1e-6);
+			assertTrue(Math.abs(world.pz[i]) <= Physics.TABLE_Z/2 + 1e-6);
+			assertEquals(0.0, world.vx[i], 0.0);
+
+			for (int j = i+1; j < world.size(); j++) {
+				double dx = world.px[i] - world.px[j];
+				double dy = world.py[i] - world.py[j];
+				double dz = world.pz[i] - world.pz[j];
+				assertTrue(Math.sqrt(dx*dx + dy*dy + dz*dz) >
+						PoolBall.DIAMETER - 1e-6);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrEventsTest {
+
+	@Test
+	public void testEventsMatchWorld() throws IOException {
+		assertTrue(Jfr.AVAILABLE);
+
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		world.setVelocity(0, -1, 0.02, 0.01);
+		int steps = 300;
+		long collisions = 0, bounces = 0;
+
+		Path file = Files.createTempFile("pool3d", ".jfr");
+		try (Recording rec = new Recording()) {
+			rec.enable(JfrEvents.StepEvent.class);
+			rec.enable(JfrEvents.CollisionEvent.class);
+			rec.enable(JfrEvents.WallBounceEvent.class);
+			rec.start();
+			for (int n = 0; n < steps; n++) {
+				world.step();
+				collisions += world.getCollisionCount();
+				bounces    += world.getWallBounceCount();
+			}
+			rec.stop();
+			rec.dump(file);
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			long stepEvents = 0, collisionEvents = 0, bounceEvents = 0;
+			for (RecordedEvent e : events) {
+				switch (e.getEventType().getName()) {
+				case "com.brianmccutchon.pool3d.Step":
+					stepEvents++;
+					assertEquals(world.size(), e.getInt("balls"));
+					break;
+				case "com.brianmccutchon.pool3d.Collision":
+					collisionEvents++;
+					assertTrue(e.getDouble("relativeSpeed") > 0);
+					assertNotEquals(e.getInt("ball1"), e.getInt("ball2"));
+					break;
+				case "com.brianmccutchon.pool3d.WallBounce":
+					bounceEvents++;
+					assertTrue(e.getInt("axis") >= 0 && e.getInt("axis") < 3);
+					break;
+				default:
+				}
+			}
+			assertEquals(steps, stepEvents);
+			assertTrue(collisions > 0);
+			assertEquals(collisions, collisionEvents);
+			assertEquals(bounces, bounceEvents);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testPhysicsRunsWithoutJfr() throws Exception {
+		WithoutJfr loader = new WithoutJfr(getClass().getClassLoader());
+
+		// A class from another loader is in another package at run time
+		Field available = loader.loadClass(Jfr.class.getName())
+				.getDeclaredField("AVAILABLE");
+		available.setAccessible(true);
+		assertFalse(available.getBoolean(null));
+		assertFalse(loader.loaded.contains(JfrEvents.class.getName()));
+
+		// Step a world that collides and bounces off a wall, as a JRE
+		// without jdk.jfr would
+		Class<?> worldClass = loader.loadClass(PhysicsWorld.class.getName());
+		Object world = worldClass.getConstructor(int.class).newInstance(2);
+		worldClass.getMethod("setPosition", int.class,
+				double.class, double.class, double.class)
+				.invoke(world, 1, 3, 0, 0);
+		worldClass.getMethod("setVelocity", int.class,
+				double.class, double.class, double.class)
+				.invoke(world, 0, 1, 0, 0);
+		for (int n = 0; n < 100; n++) {
+			worldClass.getMethod("step").invoke(world);
+		}
+
+		assertTrue(loader.loaded.contains(PhysicsWorld.class.getName()));
+		assertFalse(loader.loaded.contains(JfrEvents.class.getName()));
+	}
+
+	/**
+	 * Loads the classes of this package afresh, as if {@code jdk.jfr} were
+	 * missing, and remembers which it loaded.
+	 */
+	private static class WithoutJfr extends ClassLoader {
+		private static final String PACKAGE = "com.brianmccutchon.pool3d.";
+
+		final Set<String> loaded = ConcurrentHashMap.newKeySet();
+
+		WithoutJfr(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (name.startsWith("jdk.jfr.")) {
+				throw new ClassNotFoundException(name);
+			}
+			if (!name.startsWith(PACKAGE)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					byte[] bytes = read(name.replace('.', '/') + ".class");
+					c = defineClass(name, bytes, 0, bytes.length);
+					loaded.add(name);
+				}
+				return c;
+			}
+		}
+
+		private byte[] read(String resource) throws ClassNotFoundException {
+			try (InputStream in = getParent().getResourceAsStream(resource)) {
+				if (in == null) {
+					throw new ClassNotFoundException(resource);
+				}
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buf = new byte[8192];
+				for (int n; (n = in.read(buf)) > 0; ) {
+					out.write(buf, 0, n);
+				}
+				return out.toByteArray();
+			} catch (IOException e) {
+				throw new ClassNotFoundException(resource, e);
+			}
+		}
+	}
+
+}
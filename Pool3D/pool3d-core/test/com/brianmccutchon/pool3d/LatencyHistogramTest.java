@@ -0,0 +1,121 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		// Every value is in a bucket whose top is at least the value, and
+		// within the promised relative error of it
+		long[] values = { 0, 1, 63, 64, 65, 127, 128, 1000, 16_666_667,
+				1L << 40, (1L << 42) - 1 };
+		for (long v : values) {
+			int b = LatencyHistogram.bucket(v);
+			long top = LatencyHistogram.highestInBucket(b);
+			assertTrue(v + " above " + top, v <= top);
+			if (v < 1L << 41) {
+				assertTrue(v + " far below " + top,
+						top - v <= v / LatencyHistogram.SUB_BUCKETS);
+			}
+			if (b > 0) {
+				assertTrue(LatencyHistogram.highestInBucket(b - 1) < v);
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getPercentile(99));
+
+		for (long v = 1; v <= 10_000; v++) {
+			h.record(v * 1000);
+		}
+		assertEquals(10_000, h.getCount());
+		assertEquals(10_000_000, h.getMax());
+		assertEquals(5_000_500, h.getMean(), 1e-6);
+		for (double p : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+			double exact = p * 100_000;
+			long got = h.getPercentile(p);
+			assertTrue(p + ": " + got, got >= exact &&
+					got <= exact * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+		}
+
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		LatencyHistogram h = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			long seed = t;
+			threads[t] = new Thread(() -> {
+				SplittableRandom rand = new SplittableRandom(seed);
+				for (int k = 0; k < 100_000; k++) {
+					h.record(rand.nextLong(1_000_000));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(400_000, h.getCount());
+		assertTrue(h.getMax() < 1_000_000);
+	}
+
+	@Test
+	public void testFrameMetrics() {
+		FrameMetrics m = new FrameMetrics();
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		world.setVelocity(0, -1, 0.02, 0.01);
+		long collisions = 0, bounces = 0, substeps = 0;
+		int maxSubsteps = 0;
+		for (int n = 0; n < 500; n++) {
+			world.step();
+			collisions += world.getCollisionCount();
+			bounces    += world.getWallBounceCount();
+			substeps   += world.getSubstepCount();
+			maxSubsteps = Math.max(maxSubsteps, world.getSubstepCount());
+			m.recordStep(world, 1000);
+		}
+		m.record(FrameMetrics.Phase.RENDER, 2000);
+
+		assertTrue(collisions > 0);
+		assertTrue(bounces > 0);
+		assertEquals(collisions, m.getCollisions());
+		assertEquals(bounces, m.getWallBounces());
+		assertEquals(world.getAwakeCount(), m.getActiveBalls());
+		assertEquals(500, m.getSteps());
+		assertTrue(substeps >= 500);
+		assertEquals(substeps, m.getSubsteps());
+		assertEquals(maxSubsteps, m.getMaxSubsteps());
+
+		world.setVelocity(0, 0, 0, 40);
+		world.step();
+		m.recordStep(world, 1000);
+		assertEquals(substeps + 40, m.getSubsteps());
+		assertEquals(40, m.getMaxSubsteps());
+
+		Map<String, Double> render = m.getRenderLatency();
+		assertEquals(1, render.get("count"), 0.0);
+		assertEquals(2, render.get("p99.9"), 0.1);
+		assertEquals(0, m.getInputLatency().get("count"), 0.0);
+
+		m.reset();
+		assertEquals(0, m.getSteps());
+		assertEquals(0, m.getCollisions());
+		assertEquals(0, m.getSubsteps());
+		assertEquals(0, m.getMaxSubsteps());
+	}
+
+}
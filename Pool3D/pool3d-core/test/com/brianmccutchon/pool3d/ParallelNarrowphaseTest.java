@@ -0,0 +1,193 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.TestWorlds.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class ParallelNarrowphaseTest {
+
+	/** A dense gas, in which many balls touch every step. **/
+	private static PhysicsWorld gas(int n) {
+		return Racks.gas(n, 0.3, 0.3, 9);
+	}
+
+	/**
+	 * A dense gas in which every other ball starts at rest, so that it falls
+	 * asleep until the others hit it.
+	 */
+	private static PhysicsWorld halfAsleep(int n) {
+		PhysicsWorld world = gas(n);
+		for (int i = 0; i < n; i += 2) {
+			world.setVelocity(i, 0, 0, 0);
+		}
+		return world;
+	}
+
+	/** Steps a world a number of times, with a broadphase and a pool. **/
+	private static PhysicsWorld run(PhysicsWorld world,
+			Supplier<Broadphase> broadphase, ForkJoinPool pool, int steps) {
+		world.setBroadphase(broadphase.get());
+		world.setNarrowphasePool(pool);
+		for (int s = 0; s < steps; s++) {
+			world.step();
+		}
+		return world;
+	}
+
+	@Test
+	public void testPack() {
+		long p = ParallelNarrowphase.pack(7, Integer.MAX_VALUE);
+		assertEquals(7, ParallelNarrowphase.first(p));
+		assertEquals(Integer.MAX_VALUE, ParallelNarrowphase.second(p));
+		assertTrue(p < ParallelNarrowphase.pack(8, 0));
+		assertTrue(p > ParallelNarrowphase.pack(7, 100));
+	}
+
+	@Test
+	public void testFindsEveryContact() {
+		PhysicsWorld world = gas(3000);
+		for (int i = 0; i < world.size(); i += 2) {
+			// Push half the balls into their neighbors' space
+			world.px[i] += 0.3;
+		}
+		Broadphase broadphase = new GridBroadphase();
+		broadphase.update(world);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelNarrowphase parallel =
+					new ParallelNarrowphase(world.size(), pool);
+			int n = parallel.find(world, broadphase);
+			long[] found = Arrays.copyOf(parallel.contacts(), n);
+
+			long[] expected = new long[n + 1];
+			int k = 0;
+			for (int i = 0; i < world.size(); i++) {
+				for (int j = i + 1; j < world.size(); j++) {
+					if (world.intersects(i, j)) {
+						assertTrue(k < n);
+						expected[k++] = ParallelNarrowphase.pack(i, j);
+					}
+				}
+			}
+			assertTrue(n > 0);
+			assertEquals(k, n);
+			assertArrayEquals(Arrays.copyOf(expected, n), found);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testFindsEveryContactWhileSomeSleep() {
+		PhysicsWorld world = halfAsleep(3000);
+		world.setBroadphase(new GridBroadphase());
+		for (int s = 0; s <= PhysicsWorld.SLEEP_STEPS; s++) {
+			world.step();
+		}
+		assertTrue(world.getAwakeCount() >= 2*ParallelNarrowphase.MIN_RANGE);
+		assertTrue(world.getAwakeCount() < world.size());
+		for (int i = 0; i < world.size(); i += 3) {
+			world.px[i] += 0.3;
+		}
+		Broadphase broadphase = new GridBroadphase();
+		broadphase.update(world);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelNarrowphase parallel =
+					new ParallelNarrowphase(world.size(), pool);
+			int n = parallel.find(world, broadphase);
+			long[] found = Arrays.copyOf(parallel.contacts(), n);
+
+			// Every contact but those between two sleeping balls
+			long[] expected = new long[n + 1];
+			int k = 0;
+			for (int i = 0; i < world.size(); i++) {
+				for (int j = i + 1; j < world.size(); j++) {
+					if (world.intersects(i, j) &&
+							!(world.isAsleep(i) && world.isAsleep(j))) {
+						assertTrue(k < n);
+						expected[k++] = ParallelNarrowphase.pack(i, j);
+					}
+				}
+			}
+			assertTrue(n > 0);
+			assertEquals(k, n);
+			assertArrayEquals(Arrays.copyOf(expected, n), found);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSameOnAnyPoolWhileSomeSleep() {
+		for (Supplier<Broadphase> broadphase : Arrays.<Supplier<Broadphase>>
+				asList(GridBroadphase::new, SweepAndPruneBroadphase::new)) {
+			PhysicsWorld expected = run(halfAsleep(4000), broadphase,
+					new ForkJoinPool(1), 60);
+			assertTrue(expected.getAwakeCount() < expected.size());
+			for (int threads : new int[] { 2, 3, 8 }) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					PhysicsWorld actual =
+							run(halfAsleep(4000), broadphase, pool, 60);
+					assertSameState(expected, actual);
+					assertEquals(expected.getAwakeCount(),
+							actual.getAwakeCount());
+				} finally {
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSameOnAnyPool() {
+		for (Supplier<Broadphase> broadphase : Arrays.<Supplier<Broadphase>>
+				asList(GridBroadphase::new, SweepAndPruneBroadphase::new)) {
+			PhysicsWorld expected = run(gas(4000), broadphase,
+					new ForkJoinPool(1), 60);
+			for (int threads : new int[] { 2, 3, 8 }) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					assertSameState(expected,
+							run(gas(4000), broadphase, pool, 60));
+				} finally {
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsSerial() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (Supplier<Broadphase> broadphase : Arrays.<Supplier<Broadphase>>
+					asList(BruteForceBroadphase::new, GridBroadphase::new,
+							SweepAndPruneBroadphase::new)) {
+				assertSameState(run(gas(2000), broadphase, null, 60),
+						run(gas(2000), broadphase, pool, 60));
+				assertSameState(run(halfAsleep(2000), broadphase, null, 60),
+						run(halfAsleep(2000), broadphase, pool, 60));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testPool() {
+		PhysicsWorld world = new PhysicsWorld(2);
+		assertNull(world.getNarrowphasePool());
+		world.setNarrowphasePool(ForkJoinPool.commonPool());
+		assertSame(ForkJoinPool.commonPool(), world.getNarrowphasePool());
+		world.setNarrowphasePool(null);
+		assertNull(world.getNarrowphasePool());
+	}
+
+}
@@ -0,0 +1,240 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PhysTest {
+	private static double[][] identity = {
+			{ 1, 0, 0 },
+			{ 0, 1, 0 },
+			{ 0, 0, 1 }
+		};
+
+	@Test
+	public void testDeterminant() {
+		assertEquals(1.0, determinant(identity), 0.0);
+		assertEquals(1.0, determinant(
+				new double[][]{{1, 0, 0}, {0, 0, -1}, {0, 1, 0}}), 0.0);
+		assertEquals(1.0, determinant(
+				new double[][]{{1, 0, 0}, {0, Math.cos(Math.PI/6), -0.5},
+						{0, 0.5, Math.cos(Math.PI/6)}}), 0.0);
+		assertEquals(1.0, determinant(
+				new double[][]{{0, 1, 0}, {0, 0, -1}, {-1, 0, 0}}), 0.0);
+	}
+
+	/**
+	 * Computes the determinant of a 3x3 matrix.
+	 * @param mat A 3x3 matrix.
+	 * @return The determinant of mat.
+	 */
+	private double determinant(double[][] mat) {
+		int n = mat.length;
+		if (n != 3) {
+			throw new IllegalArgumentException("3x3 matrix required");
+		}
+		double det = 0;
+		for (int i = 0; i < n; i++) {
+			double diag1 = 1;
+			double diag2 = 1;
+			for (int j = 0; j < n; j++) {
+				diag1 *= mat[j][(i+j)%n];
+				diag2 *= mat[n-1-j][(i+j)%n];
+			}
+			det += diag1 - diag2;
+		}
+		return det;
+	}
+
+	@Test
+	public void testRotationMat() {
+		double[] ball1 = { 0, 0, 0 };
+		double[] ball2 = { PoolBall.DIAMETER - Physics.EPSILON, 0, 0 };
+
+		// No rotation required, should return the identity matrix
+		assertArrayEquals(identity,
+				Physics.findCollisionRotationMat(ball1, ball2));
+
+		checkRotationMat(point(2, 2, 2),
+				point(2 + Math.sqrt(PoolBall.DIAMETER),
+						2 + Math.sqrt(PoolBall.DIAMETER), 2));
+
+		checkRotationMat(point(-2, -3, -5),
+				point(-2, -3 - Math.sqrt(PoolBall.DIAMETER),
+						-5 + Math.sqrt(PoolBall.DIAMETER)));
+
+		checkRotationMat(point(5, 4, 3), point(6, 5, 2));
+	}
+
+	/**
+	 * Performs assertions to ensure that the rotation matrix is computed
+	 * correctly for the two pool balls provided.
+	 */
+	private void checkRotationMat(double[] ball1, double[] ball2) {
+		double[][] rotationMat =
+				Physics.findCollisionRotationMat(ball1, ball2);
+
+		// Every rotation matrix should have a determinant of 1.0
+		assertEquals(1.0, determinant(rotationMat), Physics.EPSILON);
+
+		double[] p = {
+				ball2[0] - ball1[0], ball2[1] - ball1[1], ball2[2] - ball1[2] };
+		Physics.rotateVec(p, rotationMat);
+
+		assertEquals(0.0, p[1], Physics.EPSILON);
+		assertEquals(0.0, p[2], Physics.EPSILON);
+	}
+
+	/** Returns the point (x, y, z) as an array. **/
+	private static double[] point(double x, double y, double z) {
+		return new double[] { x, y, z };
+	}
+
+	@Test
+	public void testHandleCollision() {
+		PoolBall ball1 = new PoolBall(0, 0, 0, 0, null, 0);
+		PoolBall ball2 = new PoolBall(
+				PoolBall.DIAMETER - Physics.EPSILON, 0, 0, 0, null, 1);
+
+		ball1.setVelocity( 1, 0, 0);
+		ball2.setVelocity(-1, 0, 0);
+
+		Physics.handleCollision(ball1, ball2);
+
+		assertArrayEquals(point(-1, 0, 0), ball1.getVelocity(), 0.0);
+		assertArrayEquals(point( 1, 0, 0), ball2.getVelocity(), 0.0);
+
+		// Now they're headed in opposite directions; a collision check
+		// shouldn't do anything
+		Physics.handleCollision(ball1, ball2);
+
+		assertArrayEquals(point(-1, 0, 0), ball1.getVelocity(), 0.0);
+		assertArrayEquals(point( 1, 0, 0), ball2.getVelocity(), 0.0);
+
+		// Now with a nonzero y in velocity
+		ball1 = new PoolBall(2, 2, 2, 0, null, 0);
+		ball2 = new PoolBall(2 + Math.sqrt(PoolBall.DIAMETER),
+				2 + Math.sqrt(PoolBall.DIAMETER), 2, 0, null, 0);
+		ball1.setVelocity(0, 0, 0);
+		ball2.setVelocity(-Math.sqrt(2), -Math.sqrt(2), 0);
+
+		Physics.handleCollision(ball1, ball2);
+
+		assertEquals(-Math.sqrt(2), ball1.getVelocity()[0], Physics.EPSILON);
+		assertEquals(-Math.sqrt(2), ball1.getVelocity()[1], Physics.EPSILON);
+		assertEquals(          0.0, ball1.getVelocity()[2], Physics.EPSILON);
+
+		// Now with more irregular coords -- dist is about 1.73
+		ball1 = new PoolBall(5, 4, 3, 0, null, 0);
+		ball2 = new PoolBall(6, 5, 2, 0, null, 0);
+
+		ball1.setVelocity(2, 2, 2);
+		ball2.setVelocity(0, 0, 0);
+
+		Physics.handleCollision(ball2, ball1);
+
+		assertEquals( 1.33, ball1.getVelocity()[0], 0.01);
+		assertEquals( 1.33, ball1.getVelocity()[1], 0.01);
+		assertEquals( 2.67, ball1.getVelocity()[2], 0.01);
+
+		assertEquals( 0.67, ball2.getVelocity()[0], 0.01);
+		assertEquals( 0.67, ball2.getVelocity()[1], 0.01);
+		assertEquals(-0.67, ball2.getVelocity()[2], 0.01);
+
+		// Now the two balls are going in opposite directions
+		Physics.handleCollision(ball2, ball1);
+
+		assertEquals( 1.33, ball1.getVelocity()[0], 0.01);
+		assertEquals( 1.33, ball1.getVelocity()[1], 0.01);
+		assertEquals( 2.67, ball1.getVelocity()[2], 0.01);
+
+		assertEquals( 0.67, ball2.getVelocity()[0], 0.01);
+		assertEquals( 0.67, ball2.getVelocity()[1], 0.01);
+		assertEquals(-0.67, ball2.getVelocity()[2], 0.01);
+
+		// What if the balls are going in the same direction,
+		// but still getting farther apart?
+		ball2.setVelocity(1.3, 1.3, 2.0);
+
+		Physics.handleCollision(ball1, ball2);
+
+		assertEquals( 1.33, ball1.getVelocity()[0], 0.01);
+		assertEquals( 1.33, ball1.getVelocity()[1], 0.01);
+		assertEquals( 2.67, ball1.getVelocity()[2], 0.01);
+
+		// TODO Make this more precise by eliminating rounding error
+		assertEquals(1.3, ball2.getVelocity()[0], Physics.EPSILON);
+		assertEquals(1.3, ball2.getVelocity()[1], Physics.EPSILON);
+		assertEquals(2.0, ball2.getVelocity()[2], Physics.EPSILON);
+	}
+
+	@Test
+	public void testHandleCollisionMatchesRotated() {
+		java.util.Random rand = new java.util.Random(12);
+		PhysicsWorld projected = new PhysicsWorld(2);
+		PhysicsWorld rotated   = new PhysicsWorld(2);
+		double[] m = new double[9];
+
+		for (int trial = 0; trial < 1000; trial++) {
+			for (PhysicsWorld w : new PhysicsWorld[] { projected, rotated }) {
+				rand.setSeed(trial);
+				for (int i = 0; i < 2; i++) {
+					w.setPosition(i, rand.nextDouble()*2, rand.nextDouble()*2,
+							rand.nextDouble()*2);
+					w.setVelocity(i, rand.nextGaussian(), rand.nextGaussian(),
+							rand.nextGaussian());
+				}
+			}
+
+			Physics.handleCollision(projected, 0, projected, 1, 1.0);
+			Physics.handleCollisionRotated(rotated, 0, rotated, 1, m);
+
+			for (int i = 0; i < 2; i++) {
+				assertEquals(rotated.vx[i], projected.vx[i], 1e-12);
+				assertEquals(rotated.vy[i], projected.vy[i], 1e-12);
+				assertEquals(rotated.vz[i], projected.vz[i], 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testRestitution() {
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, 0, 0, 0);
+		world.setPosition(1, 1.2, 1.2, 0);
+
+		// Perfectly inelastic: the normal components become equal, and the
+		// tangential components are untouched
+		world.setRestitution(0);
+		world.setVelocity(0, 1, 0, 0.5);
+		world.setVelocity(1, 0, 0, 0);
+		Physics.handleCollision(world, 0, world, 1, world.getRestitution());
+		double sqrtHalf = Math.sqrt(0.5);
+		assertEquals(0.0, world.vx[1]*sqrtHalf + world.vy[1]*sqrtHalf -
+				(world.vx[0]*sqrtHalf + world.vy[0]*sqrtHalf), 1e-12);
+		assertEquals(0.5, world.vz[0], 0.0);
+		assertEquals(0.0, world.vz[1], 0.0);
+
+		// Momentum is conserved for any restitution
+		world.setPosition(0, 0, 0, 0);
+		world.setPosition(1, 1.2, 1.2, 0);
+		world.setVelocity(0, 1, -0.3, 0.5);
+		world.setVelocity(1, -0.2, 0, 0.1);
+		world.setRestitution(0.5);
+		Physics.handleCollision(world, 0, world, 1, world.getRestitution());
+		assertEquals(0.8, world.vx[0] + world.vx[1], 1e-12);
+		assertEquals(-0.3, world.vy[0] + world.vy[1], 1e-12);
+		assertEquals(0.6, world.vz[0] + world.vz[1], 1e-12);
+
+		// The separating speed is half of the approaching speed
+		double separate = (world.vx[1] - world.vx[0] + world.vy[1] -
+				world.vy[0]) * sqrtHalf;
+		assertEquals(0.5 * (1.2 - 0.3) * sqrtHalf, separate, 1e-12);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRestitution() {
+		new PhysicsWorld(1).setRestitution(1.5);
+	}
+
+}
@@ -0,0 +1,309 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PhysicsWorldTest {
+
+	@Test
+	public void testStepMovesAndCollides() {
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, -1.5, 0, 0);
+		world.setPosition(1,  1.5, 0, 0);
+		world.setVelocity(0,  1, 0, 0);
+		world.setVelocity(1, -1, 0, 0);
+
+		world.step();
+
+		assertTrue(world.ballsAreMoving());
+		assertEquals(-0.5, world.px[0], Physics.EPSILON);
+		assertEquals( 0.5, world.px[1], Physics.EPSILON);
+
+		// The balls now overlap, so they should have swapped velocities
+		assertEquals(-(1 - Physics.AIR_RESISTANCE), world.vx[0], 1e-12);
+		assertEquals(  1 - Physics.AIR_RESISTANCE,  world.vx[1], 1e-12);
+	}
+
+	@Test
+	public void testStepBouncesOffWalls() {
+		PhysicsWorld world = new PhysicsWorld(1);
+		world.setPosition(0, Physics.TABLE_X/2 - PoolBall.RADIUS, 0, 0);
+		world.setVelocity(0, 0.5, 0, 0);
+
+		world.step();
+
+		assertTrue(world.vx[0] < 0);
+	}
+
+	@Test
+	public void testStepStopsSlowBalls() {
+		PhysicsWorld world = new PhysicsWorld(1);
+		world.setVelocity(0, Physics.MOVEMENT_EPSILON / 2, 0, 0);
+
+		world.step();
+
+		assertFalse(world.ballsAreMoving());
+		assertEquals(0.0, world.vx[0], 0.0);
+		assertEquals(0.0, world.px[0], 0.0);
+	}
+
+	@Test
+	public void testSleeping() {
+		PhysicsWorld world = new PhysicsWorld(3);
+		world.setPosition(0, -5, 0, 0);
+		world.setPosition(1,  0, 0, 0);
+		world.setPosition(2,  1.9, 0, 0);
+		assertEquals(3, world.getAwakeCount());
+
+		// Balls at rest fall asleep, but not right away
+		for (int i = 0; i < PhysicsWorld.SLEEP_STEPS - 1; i++) {
+			world.step();
+		}
+		assertEquals(3, world.getAwakeCount());
+		world.step();
+		assertEquals(0, world.getAwakeCount());
+		assertTrue(world.isAsleep(1));
+
+		// Setting a velocity wakes a ball; hitting a ball wakes it, and the
+		// contact spreads along the line of touching balls
+		world.setVelocity(0, 1, 0, 0);
+		assertFalse(world.isAsleep(0));
+		assertTrue(world.isAsleep(1));
+		for (int i = 0; i < 5 && world.vx[2] == 0; i++) {
+			world.step();
+		}
+		assertFalse(world.isAsleep(1));
+		assertFalse(world.isAsleep(2));
+		assertTrue(world.vx[2] > 0);
+
+		// Everything comes to rest and sleeps again
+		for (int i = 0; i < 10_000 && world.getAwakeCount() > 0; i++) {
+			world.step();
+		}
+		assertEquals(0, world.getAwakeCount());
+		assertFalse(world.ballsAreMoving());
+	}
+
+	@Test
+	public void testKernelPassesOverSleepingBalls() {
+		// Three balls moving slowly along y, and one at rest
+		PhysicsWorld world = new PhysicsWorld(4);
+		for (int i = 0; i < 4; i++) {
+			world.setPosition(i, 4*i - 6, 0, 0);
+		}
+		for (int i = 0; i < 3; i++) {
+			world.setVelocity(i, 0, 0.05, 0);
+		}
+		for (int i = 0; i < PhysicsWorld.SLEEP_STEPS; i++) {
+			world.step();
+		}
+		assertTrue(world.isAsleep(3));
+		assertTrue(world.getAwakeCount() >= PhysicsWorld.DENSE_SHARE * 4);
+
+		// The kernel goes through the sleeping ball, but leaves it be
+		double y = world.py[0];
+		world.step();
+		assertTrue(world.py[0] > y);
+		assertTrue(world.isAsleep(3));
+		assertEquals(3, world.getAwakeCount());
+		assertEquals(-6 + 12.0, world.px[3], 0.0);
+		assertEquals(0.0, world.py[3], 0.0);
+	}
+
+	@Test
+	public void testBroadphaseSeesOnlyAwakeBalls() {
+		PhysicsWorld world = Racks.gas(200, 0.1, 0, 1);
+		for (int i = 0; i < PhysicsWorld.SLEEP_STEPS; i++) {
+			world.step();
+		}
+		assertEquals(0, world.getAwakeCount());
+
+		// Counts the balls that each update looks at
+		int[] seen = new int[1];
+		world.setBroadphase(new GridBroadphase() {
+			@Override
+			public void update(PhysicsWorld w) {
+				seen[0] += w.size();
+				super.update(w);
+			}
+
+			@Override
+			public void update(PhysicsWorld w, int[] moved, int count) {
+				seen[0] += count;
+				super.update(w, moved, count);
+			}
+		});
+		world.setVelocity(5, 0.01, 0, 0);
+		world.step();
+		assertEquals(world.size(), seen[0]);
+
+		// Once it has been updated with every ball, only the one that is
+		// awake is looked at
+		seen[0] = 0;
+		world.step();
+		assertEquals(1, seen[0]);
+		assertEquals(1, world.getAwakeCount());
+	}
+
+	@Test
+	public void testHitBallDoesNotSleep() {
+		// Ball 0 reaches ball 1 in the very step in which ball 1 has been at
+		// rest long enough to fall asleep
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, -1.5 - PhysicsWorld.SLEEP_STEPS, 0, 0);
+		world.setVelocity(0, 1, 0, 0);
+		world.setRestitution(0);
+		for (int i = 0; i < PhysicsWorld.SLEEP_STEPS - 1; i++) {
+			world.step();
+		}
+		assertEquals(0, world.getCollisionCount());
+		world.step();
+		assertEquals(1, world.getCollisionCount());
+		assertTrue(world.vx[1] > 0);
+		assertFalse(world.isAsleep(1));
+	}
+
+	@Test
+	public void testStepDoesNotAllocate() {
+		java.lang.management.ThreadMXBean bean =
+				ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		world.setVelocity(0, -1, 0.01, 0.02);
+
+		// Warm up
+		for (int i = 0; i < 10_000; i++) {
+			world.step();
+		}
+
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 10_000; i++) {
+			world.step();
+		}
+		long after = threads.getThreadAllocatedBytes(id);
+
+		// Leave a little room for the measurement itself
+		assertTrue(after - before < 1024);
+	}
+
+	@Test
+	public void testSubsteps() {
+		PhysicsWorld world = new PhysicsWorld(1);
+		world.setVelocity(0, 0.5, 0, 0);
+		world.step();
+		assertEquals(1, world.getSubstepCount());
+
+		world.setVelocity(0, 0, 3, 0);
+		world.step();
+		assertEquals(3, world.getSubstepCount());
+		// Moved by about its whole velocity, as it would have without
+		// sub-steps, but slowed down a little on the way
+		assertEquals(3, world.py[0], Physics.AIR_RESISTANCE);
+		assertEquals(3 - Physics.AIR_RESISTANCE, world.vy[0], 1e-12);
+
+		world.setVelocity(0, 1000, 0, 0);
+		world.step();
+		assertEquals(PhysicsWorld.MAX_SUBSTEPS, world.getSubstepCount());
+
+		world.setSubstepFraction(Double.POSITIVE_INFINITY);
+		world.setVelocity(0, 0, 3, 0);
+		world.step();
+		assertEquals(1, world.getSubstepCount());
+	}
+
+	@Test
+	public void testSleepCountsStepsNotSubsteps() {
+		// Ball 0 moves fast enough to split every step, well away from ball
+		// 1, which is at rest
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, 5, 0, 0);
+		world.setVelocity(0, 0, 0, 3);
+		world.setPosition(1, -5, 0, 0);
+		for (int i = 0; i < PhysicsWorld.SLEEP_STEPS - 1; i++) {
+			world.step();
+			assertTrue(world.getSubstepCount() > 1);
+		}
+		assertFalse(world.isAsleep(1));
+		world.step();
+		assertTrue(world.isAsleep(1));
+		assertFalse(world.isAsleep(0));
+	}
+
+	@Test
+	public void testHitBallStaysWithinFraction() {
+		// Balls 0 and 2 hit ball 1, at rest, at right angles in the first of
+		// two sub-steps, which sends it off at about root 2 times their
+		// speed
+		PhysicsWorld world = new PhysicsWorld(3);
+		world.setPosition(0, -2.5, 0, 0);
+		world.setVelocity(0, 1.5, 0, 0);
+		world.setPosition(2, 0, -2.5, 0);
+		world.setVelocity(2, 0, 1.5, 0);
+
+		// Records ball 1's position after each sub-step moves it
+		List<double[]> seen = new ArrayList<>();
+		world.setBroadphase(new BruteForceBroadphase() {
+			@Override
+			public void update(PhysicsWorld w) {
+				seen.add(new double[] { w.px[1], w.py[1], w.pz[1] });
+			}
+		});
+		world.step();
+
+		assertEquals(2, world.getCollisionCount());
+		assertTrue(Math.hypot(world.vx[1], world.vy[1]) > 2);
+		assertTrue(world.getSubstepCount() > 2);
+		assertEquals(world.getSubstepCount(), seen.size());
+		double most = world.getSubstepFraction() * PoolBall.RADIUS;
+		for (int s = 1; s < seen.size(); s++) {
+			double[] a = seen.get(s - 1), b = seen.get(s);
+			assertTrue(Math.hypot(b[0] - a[0], b[1] - a[1]) <= most);
+		}
+		// It has moved through the rest of the frame all the same
+		assertEquals(0.5 * world.vx[1], seen.get(seen.size() - 1)[0],
+				Physics.AIR_RESISTANCE);
+	}
+
+	@Test
+	public void testFastBallDoesNotPassThrough() {
+		PhysicsWorld split = new PhysicsWorld(2);
+		split.setPosition(0, -6, 0, 0);
+		split.setVelocity(0, 12, 0, 0);
+		PhysicsWorld whole = new PhysicsWorld(2);
+		whole.copyFrom(split);
+		whole.setSubstepFraction(Double.POSITIVE_INFINITY);
+
+		split.step();
+		whole.step();
+
+		// In one step, ball 0 jumps from one side of ball 1 to the other
+		assertEquals(0, whole.getCollisionCount());
+		assertEquals(0.0, whole.vx[1], 0.0);
+		assertEquals(1, split.getCollisionCount());
+		assertTrue(split.vx[1] > 0);
+		assertTrue(split.px[0] < split.px[1]);
+	}
+
+	@Test
+	public void testScalarKernelByDefault() {
+		// The core alone registers no other kernel
+		assertTrue(StepKernel.load() instanceof ScalarKernel);
+		PhysicsWorld world = new PhysicsWorld(2);
+		assertTrue(world.getKernel() instanceof ScalarKernel);
+		StepKernel kernel = new ScalarKernel();
+		world.setKernel(kernel);
+		assertSame(kernel, world.getKernel());
+	}
+
+}
@@ -4,8 +4,6 @@ import static org.junit.Assert.*;
 
 import java.util.Iterator;
 
-import javax.vecmath.Point3d;
-
 import org.junit.Test;
 
 public class PoolBallTest {
@@ -23,13 +21,30 @@ public class PoolBallTest {
 			assertEquals(counter++, b.ballNum);
 		}
 
-		assertEquals(new Point3d(0, 0, 0), balls[8].getTranslation());
+		assertArrayEquals(new double[] { 0, 0, 0 }, balls[8].getTranslation(),
+				0.0);
 
 		for (int i : range(0, balls.length-1))
 			for (int j : range(i+1, balls.length-1))
 				assertFalse(balls[i].intersects(balls[j]));
 	}
 
+	@Test
+	public void testClone() {
+		PoolBall ball = PoolBall.rack()[5];
+		ball.setVelocity(0.1, 0.2, 0.3);
+		PoolBall copy = (PoolBall) ball.clone();
+
+		assertNotSame(ball.world, copy.world);
+		assertEquals(ball.ballNum, copy.ballNum);
+		assertArrayEquals(ball.getTranslation(), copy.getTranslation(), 0.0);
+		assertArrayEquals(ball.getVelocity(), copy.getVelocity(), 0.0);
+		for (int c = 0; c < 4; c++) {
+			assertEquals(ball.world.ori[4*ball.slot + c], copy.world.ori[c],
+					0.0);
+		}
+	}
+
 	/**
 	 * Python style range method. Use to iterate through the set
 	 * <code>{i, i+1,..., j-1, j}</code>. There are two ways to use this:
@@ -0,0 +1,152 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.TestWorlds.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RacksTest {
+
+	/**
+	 * Checks that no two balls intersect and that every ball is inside the
+	 * table, hashing the balls into cells a diameter wide so that large
+	 * worlds can be checked quickly.
+	 */
+	private static void assertValid(PhysicsWorld w) {
+		int n = w.size();
+		double r = PoolBall.RADIUS;
+		HashMap<Long, List<Integer>> cells = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			assertTrue("Ball " + i + " outside table",
+					Math.abs(w.px[i]) <= w.tableX/2 - r &&
+					Math.abs(w.py[i]) <= w.tableY/2 - r &&
+					Math.abs(w.pz[i]) <= w.tableZ/2 - r);
+			cells.computeIfAbsent(cell(w, i, 0, 0, 0), c -> new ArrayList<>())
+					.add(i);
+		}
+
+		double d2 = PoolBall.DIAMETER * PoolBall.DIAMETER;
+		for (int i = 0; i < n; i++) {
+			for (int c = 0; c < 27; c++) {
+				List<Integer> near = cells.get(
+						cell(w, i, c % 3 - 1, c / 3 % 3 - 1, c / 9 - 1));
+				if (near == null) {
+					continue;
+				}
+				for (int j : near) {
+					double dx = w.px[i] - w.px[j];
+					double dy = w.py[i] - w.py[j];
+					double dz = w.pz[i] - w.pz[j];
+					assertTrue("Balls " + i + " and " + j + " intersect",
+							i == j || dx*dx + dy*dy + dz*dz >= d2);
+				}
+			}
+		}
+	}
+
+	/** Returns the key of the cell offset from ball i's by (x, y, z) cells. **/
+	private static long cell(PhysicsWorld w, int i, int x, int y, int z) {
+		long cx = (long) Math.floor(w.px[i] / PoolBall.DIAMETER) + x;
+		long cy = (long) Math.floor(w.py[i] / PoolBall.DIAMETER) + y;
+		long cz = (long) Math.floor(w.pz[i] / PoolBall.DIAMETER) + z;
+		return (cx & 0x1FFFFF) << 42 | (cy & 0x1FFFFF) << 21 | (cz & 0x1FFFFF);
+	}
+
+	@Test
+	public void testClosePacked() {
+		for (Racks.Lattice lattice : Racks.Lattice.values()) {
+			for (int n : new int[] { 1, 2, 16, 1000 }) {
+				PhysicsWorld w = Racks.closePacked(n, lattice, 7);
+				assertEquals(n, w.size());
+				assertValid(w);
+				assertFalse(w.ballsAreMoving());
+			}
+		}
+	}
+
+	@Test
+	public void testClosePackedIsDense() {
+		// No ball of a close-packed cluster touches more than 12 others, and
+		// those inside it touch exactly 12
+		for (Racks.Lattice lattice : Racks.Lattice.values()) {
+			PhysicsWorld w = Racks.closePacked(1001, lattice, 1);
+			int most = 0;
+			for (int i = 1; i < w.size(); i++) {
+				int touching = 0;
+				for (int j = 1; j < w.size(); j++) {
+					double dx = w.px[i] - w.px[j];
+					double dy = w.py[i] - w.py[j];
+					double dz = w.pz[i] - w.pz[j];
+					double d = Math.sqrt(dx*dx + dy*dy + dz*dz);
+					if (j != i && d < Racks.SPACING * 1.001) {
+						touching++;
+					}
+				}
+				most = Math.max(most, touching);
+			}
+			assertEquals(12, most);
+		}
+	}
+
+	@Test
+	public void testGas() {
+		PhysicsWorld w = Racks.gas(2000, 0.2, 0.3, 3);
+		assertValid(w);
+		for (int i = 0; i < w.size(); i++) {
+			assertEquals(0.3, Math.sqrt(w.vx[i]*w.vx[i] + w.vy[i]*w.vy[i] +
+					w.vz[i]*w.vz[i]), 1e-9);
+		}
+	}
+
+	@Test
+	public void testClusters() {
+		PhysicsWorld w = Racks.clusters(1000, 5, Racks.Lattice.HCP, 11);
+		assertEquals(1000, w.size());
+		assertValid(w);
+		for (int c = 0; c < 5; c++) {
+			assertTrue(w.vx[c] < 0);
+		}
+		assertEquals(0, w.vx[5], 0.0);
+	}
+
+	@Test
+	public void testDeterministic() {
+		assertSameState(Racks.closePacked(500, Racks.Lattice.HCP, 5),
+				Racks.closePacked(500, Racks.Lattice.HCP, 5));
+		assertSameState(Racks.gas(500, 0.1, 0.2, 5), Racks.gas(500, 0.1, 0.2, 5));
+		assertSameState(Racks.clusters(500, 4, Racks.Lattice.FCC, 5),
+				Racks.clusters(500, 4, Racks.Lattice.FCC, 5));
+		assertFalse(Arrays.equals(Racks.gas(500, 0.1, 0.2, 5).px,
+				Racks.gas(500, 0.1, 0.2, 6).px));
+	}
+
+	@Test(timeout = 10_000)
+	public void testLarge() {
+		assertValid(Racks.closePacked(100_000, Racks.Lattice.FCC, 1));
+		assertValid(Racks.gas(100_000, 0.3, 0.1, 1));
+		assertValid(Racks.clusters(100_000, 16, Racks.Lattice.HCP, 1));
+	}
+
+	@Test
+	public void testBreak() {
+		PhysicsWorld w = HeadlessMain.generate("hcp", 200, 1);
+		w.setBroadphase(new GridBroadphase());
+		long collisions = 0;
+		for (int s = 0; s < 200; s++) {
+			w.step();
+			collisions += w.getCollisionCount();
+		}
+		assertTrue(collisions > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDensityTooHigh() {
+		Racks.gas(10, 0.5, 0.1, 1);
+	}
+
+}
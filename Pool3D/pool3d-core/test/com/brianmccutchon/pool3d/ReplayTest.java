@@ -0,0 +1,146 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayTest {
+
+	/** The largest error that quantizing a position can introduce. **/
+	private static final double POSITION_ERROR =
+			0.5 / StateCodec.POSITION_SCALE;
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("pool3d", ".replay");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testVarint() {
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		int[] values = { 0, 1, -1, 63, -64, 64, 300, -300,
+				Integer.MAX_VALUE, Integer.MIN_VALUE };
+		for (int v : values) {
+			StateCodec.putVarint(buf, v);
+		}
+		buf.flip();
+		for (int v : values) {
+			assertEquals(v, StateCodec.getVarint(buf));
+		}
+		assertFalse(buf.hasRemaining());
+	}
+
+	@Test
+	public void testJoinMidStream() {
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		StateCodec encoder = new StateCodec(world.size());
+		ByteBuffer buf = ByteBuffer.allocate(encoder.maxFrameBytes());
+		encoder.encodeKey(world, buf);
+		assertEquals(0, encoder.encodeDelta(world, (ByteBuffer) buf.clear()));
+
+		world.setVelocity(0, -1, 0.02, 0.01);
+		world.step();
+		assertEquals(1, encoder.encodeDelta(world, (ByteBuffer) buf.clear()));
+
+		// A decoder that joins now starts from the encoder's state, even
+		// though the world has moved on since
+		world.setPosition(5, 3, 3, 3);
+		StateCodec decoder = new StateCodec(world.size());
+		buf.clear();
+		encoder.encodeState(buf);
+		decoder.decodeKey((ByteBuffer) buf.flip());
+		world.step();
+		assertTrue(encoder.encodeDelta(world, (ByteBuffer) buf.clear()) > 1);
+		decoder.decodeDelta((ByteBuffer) buf.flip());
+
+		PhysicsWorld copy = new PhysicsWorld(world.size());
+		decoder.apply(copy);
+		assertArrayEquals(world.px, copy.px, POSITION_ERROR);
+		assertArrayEquals(world.py, copy.py, POSITION_ERROR);
+		assertArrayEquals(world.pz, copy.pz, POSITION_ERROR);
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		world.setVelocity(0, -1, 0.02, 0.01);
+		int frames = 1000, interval = 50;
+		double[][] px = new double[frames][], pz = new double[frames][];
+
+		try (ReplayRecorder rec = new ReplayRecorder(file, world, interval)) {
+			for (int f = 0; f < frames; f++) {
+				world.step();
+				rec.record(world);
+				px[f] = world.px.clone();
+				pz[f] = world.pz.clone();
+			}
+			assertEquals(frames, rec.getFrameCount());
+		}
+
+		try (ReplayReader reader = new ReplayReader(file)) {
+			assertEquals(frames, reader.getFrameCount());
+			assertEquals(world.size(), reader.size());
+			PhysicsWorld replay = reader.newWorld();
+
+			// In order, then jumping around, including back and across
+			// keyframes
+			int[] order = { 0, 1, 2, 3, 49, 50, 51, 999, 10, 500, 499, 777 };
+			for (int f : order) {
+				reader.read(f, replay);
+				assertArrayEquals(px[f], replay.px, POSITION_ERROR);
+				assertArrayEquals(pz[f], replay.pz, POSITION_ERROR);
+			}
+			for (int f = 0; f < frames; f++) {
+				reader.read(f, replay);
+				assertArrayEquals(px[f], replay.px, POSITION_ERROR);
+			}
+
+			// Orientations come back as unit quaternions close to the
+			// originals
+			for (int k = 0; k < world.ori.length; k++) {
+				assertEquals(world.ori[k], replay.ori[k], 1e-4);
+			}
+		}
+	}
+
+	@Test
+	public void testRestingFramesAreSmall() throws IOException {
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		int frames = 10_000;
+		long size;
+		try (ReplayRecorder rec = new ReplayRecorder(file, world)) {
+			for (int f = 0; f < frames; f++) {
+				world.step();
+				rec.record(world);
+			}
+			size = rec.getBytesWritten();
+		}
+
+		// Two bytes of bitmask per delta frame for 16 balls, plus keyframes
+		assertTrue(size < frames * 2 + 50_000);
+		assertTrue(Files.size(file) > size);
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnclosedRecording() throws IOException {
+		try (ReplayRecorder rec = new ReplayRecorder(file, new PhysicsWorld(1))) {
+			rec.record(new PhysicsWorld(1));
+			new ReplayReader(file).close();
+		}
+	}
+
+}
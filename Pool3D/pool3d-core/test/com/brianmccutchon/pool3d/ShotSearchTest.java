@@ -0,0 +1,97 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ShotSearchTest {
+
+	/** A cue ball at (10, 0, 0) and one object ball at the origin. **/
+	private static PhysicsWorld twoBalls() {
+		PhysicsWorld world = new PhysicsWorld(2);
+		world.setPosition(0, 10, 0, 0);
+		return world;
+	}
+
+	@Test
+	public void testDirection() {
+		double[] v = new double[3];
+		new ShotSearch.Shot(0, 0, 2, 0, 0).velocity(v);
+		assertArrayEquals(new double[] { 0, 0, -2 }, v, 1e-15);
+		new ShotSearch.Shot(Math.PI/2, 0, 1, 0, 0).velocity(v);
+		assertArrayEquals(new double[] { -1, 0, 0 }, v, 1e-15);
+		new ShotSearch.Shot(0, Math.PI/2, 1, 0, 0).velocity(v);
+		assertArrayEquals(new double[] { 0, 1, 0 }, v, 1e-15);
+	}
+
+	@Test
+	public void testFindsObjectBall() throws Exception {
+		PhysicsWorld world = twoBalls();
+		ShotSearch search = new ShotSearch(world, 0, ShotSearch.SPREAD);
+		List<ShotSearch.Shot> improvements = new CopyOnWriteArrayList<>();
+
+		ShotSearch.Shot best = search.start(500, 4, 1, improvements::add)
+				.get(1, TimeUnit.MINUTES);
+
+		// The search works on a copy
+		assertEquals(10, world.px[0], 0.0);
+		assertEquals(0, world.vx[0], 0.0);
+
+		// It hit the object ball, and the shot can be replayed
+		assertTrue(best.score > 0);
+		assertEquals(best.score,
+				search.evaluate(best.deg1, best.deg2, best.power).score, 0.0);
+		assertSame(best, search.getBest());
+		assertEquals(2001, search.getEvaluated());
+
+		// The last shot reported is the best one
+		assertFalse(improvements.isEmpty());
+		assertSame(best, improvements.get(improvements.size() - 1));
+	}
+
+	@Test
+	public void testSameResultOnAnyNumberOfThreads() throws Exception {
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		ForkJoinPool one  = new ForkJoinPool(1);
+		ForkJoinPool four = new ForkJoinPool(4);
+		try {
+			ShotSearch.Shot a = new ShotSearch(world, 0, ShotSearch.SPREAD, one)
+					.start(64, 3, 42, null).get(1, TimeUnit.MINUTES);
+			ShotSearch.Shot b = new ShotSearch(world, 0, ShotSearch.SPREAD, four)
+					.start(64, 3, 42, null).get(1, TimeUnit.MINUTES);
+			assertEquals(a.deg1,  b.deg1,  0.0);
+			assertEquals(a.deg2,  b.deg2,  0.0);
+			assertEquals(a.power, b.power, 0.0);
+			assertEquals(a.score, b.score, 0.0);
+		} finally {
+			one.shutdown();
+			four.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		ShotSearch search = new ShotSearch(PoolBall.rack()[0].world, 0,
+				ShotSearch.SPREAD);
+		CompletableFuture<ShotSearch.Shot> result =
+				search.start(1_000_000, 1_000, 3, null);
+		Thread.sleep(50);
+		search.cancel();
+		result.get(1, TimeUnit.MINUTES);
+		assertTrue(search.getEvaluated() < 1_000_000);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartTwice() {
+		ShotSearch search = new ShotSearch(twoBalls(), 0, ShotSearch.SPREAD);
+		search.start(1, 1, 0, null);
+		search.start(1, 1, 0, null);
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.TestWorlds.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SimulationThreadTest {
+
+	/** 1 ms steps, so the tests do not take long. **/
+	private static final long STEP = 1_000_000;
+
+	@Test
+	public void testMatchesSerialStepping() throws InterruptedException {
+		PhysicsWorld world  = PoolBall.rack()[0].world;
+		PhysicsWorld serial = copy(world);
+		RenderFrame frame;
+
+		long start = System.nanoTime();
+		try (SimulationThread sim = new SimulationThread(world, STEP)) {
+			TripleBuffer<RenderFrame> frames = sim.subscribe();
+			assertEquals(0, frames.acquire().getSteps());
+
+			sim.submit(w -> w.setVelocity(0, -1, 0.02, 0.01));
+			sim.start();
+			Thread.sleep(100);
+			sim.close();
+			frame = frames.acquire();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// The command ran before the first step, and the thread never took
+		// more steps than the time that passed allows
+		assertTrue(frame.getSteps() > 0);
+		assertTrue(frame.getSteps() <= elapsed / STEP);
+		serial.setVelocity(0, -1, 0.02, 0.01);
+		for (long f = 0; f < frame.getSteps(); f++) {
+			serial.step();
+		}
+		assertSameState(serial, world);
+
+		double[] pos = new double[3];
+		for (int i = 0; i < world.size(); i++) {
+			frame.position(i, 1, pos);
+			assertArrayEquals(
+					new double[] { world.px[i], world.py[i], world.pz[i] },
+					pos, 0.0);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSubscribeAfterStart() {
+		try (SimulationThread sim = new SimulationThread(new PhysicsWorld(1))) {
+			sim.start();
+			sim.subscribe();
+		}
+	}
+
+	@Test
+	public void testInterpolation() {
+		PhysicsWorld world = new PhysicsWorld(1);
+		RenderFrame frame = new RenderFrame(1);
+		world.setPosition(0, 0, 2, 4);
+		world.setOrientation(0, 1, 0, 0, 0);
+		frame.capturePrevious(world);
+		world.setPosition(0, 2, 2, 0);
+		// A quarter turn about z, stored with the sign that is farther away
+		double h = Math.sqrt(0.5);
+		world.setOrientation(0, -h, 0, 0, -h);
+		frame.captureCurrent(world);
+		frame.time = 1000;
+		frame.stepNanos = 100;
+
+		assertEquals(0.0,  frame.alpha(900),  0.0);
+		assertEquals(0.0,  frame.alpha(1000), 0.0);
+		assertEquals(0.25, frame.alpha(1025), 0.0);
+		assertEquals(1.0,  frame.alpha(1500), 0.0);
+
+		double[] pos = new double[3];
+		frame.position(0, 0.5, pos);
+		assertArrayEquals(new double[] { 1, 2, 2 }, pos, 1e-15);
+
+		// Halfway is an eighth turn about z
+		double[] q = new double[4];
+		frame.orientation(0, 0.5, q);
+		assertArrayEquals(new double[] { Math.cos(Math.PI/8), 0, 0,
+				Math.sin(Math.PI/8) }, q, 1e-15);
+	}
+
+}
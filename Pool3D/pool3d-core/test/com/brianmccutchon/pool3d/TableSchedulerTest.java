@@ -0,0 +1,60 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.TestWorlds.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TableSchedulerTest {
+
+	@Test
+	public void testMatchesSerialStepping() {
+		int tables = 50;
+		PhysicsWorld[] scheduled = new PhysicsWorld[tables];
+		PhysicsWorld[] serial    = new PhysicsWorld[tables];
+		WorldStats[]   stats     = new WorldStats[tables];
+
+		try (TableScheduler scheduler = new TableScheduler(4)) {
+			for (int i = 0; i < tables; i++) {
+				scheduled[i] = PoolBall.rack()[0].world;
+				scheduled[i].setVelocity(0, -1, 0.01 * (i % 7), 0.02);
+				serial[i] = copy(scheduled[i]);
+				stats[i] = scheduler.add(scheduled[i]);
+			}
+
+			assertEquals(tables, scheduler.size());
+
+			scheduler.step(100);
+			scheduler.step(100);
+		}
+
+		for (int i = 0; i < tables; i++) {
+			for (int f = 0; f < 200; f++) {
+				serial[i].step();
+			}
+
+			assertSameState(serial[i], scheduled[i]);
+			assertEquals(200, stats[i].getSteps());
+			assertTrue(stats[i].getStepsPerSecond() > 0);
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		try (TableScheduler scheduler = new TableScheduler(2)) {
+			PhysicsWorld kept    = new PhysicsWorld(1);
+			PhysicsWorld removed = new PhysicsWorld(1);
+			WorldStats keptStats    = scheduler.add(kept);
+			WorldStats removedStats = scheduler.add(removed);
+
+			scheduler.step(1);
+			assertTrue(scheduler.remove(removed));
+			assertFalse(scheduler.remove(removed));
+			scheduler.step(1);
+
+			assertEquals(2, keptStats.getSteps());
+			assertEquals(1, removedStats.getSteps());
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copies and compares worlds for the tests that check that two ways of
+ * stepping a world give the same results.
+ *
+ * @author Brian McCutchon
+ */
+final class TestWorlds {
+
+	private TestWorlds() {
+		// Not instantiable
+	}
+
+	/** Returns a new world with the same state as the given one. **/
+	static PhysicsWorld copy(PhysicsWorld w) {
+		PhysicsWorld c = new PhysicsWorld(w.size(), w.tableX, w.tableY,
+				w.tableZ);
+		c.copyFrom(w);
+		return c;
+	}
+
+	/** Checks that two arrays hold the same doubles, down to the bit. **/
+	static void assertSameBits(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("At " + i, Double.doubleToRawLongBits(expected[i]),
+					Double.doubleToRawLongBits(actual[i]));
+		}
+	}
+
+	/**
+	 * Checks that two worlds hold the same balls, down to the bit, and have
+	 * the same settings.
+	 */
+	static void assertSameState(PhysicsWorld expected, PhysicsWorld actual) {
+		assertSameBits(expected.px,  actual.px);
+		assertSameBits(expected.py,  actual.py);
+		assertSameBits(expected.pz,  actual.pz);
+		assertSameBits(expected.vx,  actual.vx);
+		assertSameBits(expected.vy,  actual.vy);
+		assertSameBits(expected.vz,  actual.vz);
+		assertSameBits(expected.ori, actual.ori);
+		assertEquals(expected.ballsAreMoving(), actual.ballsAreMoving());
+		assertEquals(expected.getAwakeCount(), actual.getAwakeCount());
+		assertEquals(expected.getRestitution(), actual.getRestitution(), 0.0);
+		assertEquals(expected.getSubstepFraction(),
+				actual.getSubstepFraction(), 0.0);
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TripleBufferTest {
+
+	@Test
+	public void testHandoff() {
+		TripleBuffer<long[]> buffer = new TripleBuffer<>(() -> new long[1]);
+		long[] initial = buffer.acquire();
+
+		buffer.back()[0] = 1;
+		buffer.publish();
+		buffer.back()[0] = 2;
+		buffer.publish();
+		// The consumer skips straight to the latest value
+		assertEquals(2, buffer.acquire()[0]);
+		assertNotSame(initial, buffer.acquire());
+
+		// Nothing new has been published, so the value stays the same
+		long[] latest = buffer.acquire();
+		assertSame(latest, buffer.acquire());
+
+		// The producer never writes the slot being read
+		buffer.back()[0] = 3;
+		assertNotSame(latest, buffer.back());
+		assertEquals(2, latest[0]);
+	}
+
+	@Test
+	public void testNoTearing() throws InterruptedException {
+		int length = 64;
+		long count = 200_000;
+		TripleBuffer<long[]> buffer =
+				new TripleBuffer<>(() -> new long[length]);
+
+		Thread producer = new Thread(() -> {
+			for (long n = 1; n <= count; n++) {
+				long[] back = buffer.back();
+				for (int i = 0; i < length; i++) {
+					back[i] = n;
+				}
+				buffer.publish();
+			}
+		});
+		producer.start();
+
+		long last = 0;
+		while (last < count) {
+			long[] front = buffer.acquire();
+			long n = front[0];
+			for (int i = 1; i < length; i++) {
+				assertEquals(n, front[i]);
+			}
+			assertTrue(n >= last);
+			last = n;
+		}
+		producer.join();
+	}
+
+}
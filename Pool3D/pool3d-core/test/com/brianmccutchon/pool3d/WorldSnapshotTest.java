@@ -0,0 +1,186 @@
+package com.brianmccutchon.pool3d;
+
+import static com.brianmccutchon.pool3d.TestWorlds.*;
+import static org.junit.Assert.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class WorldSnapshotTest {
+
+	/** Returns a racked world that has been broken and stepped a while. **/
+	private static PhysicsWorld broken() {
+		PhysicsWorld world = PoolBall.rack()[0].world;
+		world.setVelocity(0, -1, 0.02, 0.01);
+		world.setRestitution(0.9);
+		for (int n = 0; n < 300; n++) {
+			world.step();
+		}
+		return world;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		PhysicsWorld world = broken();
+		PhysicsWorld copy = new PhysicsWorld(world.size());
+
+		for (ByteBuffer buf : new ByteBuffer[] {
+				ByteBuffer.allocate(WorldSnapshot.bytes(world.size()) + 8),
+				ByteBuffer.allocateDirect(WorldSnapshot.bytes(world.size()) + 8)
+						.order(ByteOrder.LITTLE_ENDIAN) }) {
+			ByteOrder order = buf.order();
+			buf.putLong(42);
+			WorldSnapshot.save(world, buf);
+			assertEquals(8 + WorldSnapshot.bytes(world.size()), buf.position());
+			assertEquals(order, buf.order());
+
+			buf.flip();
+			assertEquals(42, buf.getLong());
+			WorldSnapshot.restore(buf, copy);
+			assertFalse(buf.hasRemaining());
+			assertEquals(order, buf.order());
+			assertSameState(world, copy);
+		}
+	}
+
+	@Test
+	public void testRestoredWorldStepsTheSame() {
+		PhysicsWorld world = broken();
+		world.setSubstepFraction(0.25);
+		ByteBuffer buf = ByteBuffer.allocateDirect(
+				WorldSnapshot.bytes(world.size()));
+		WorldSnapshot.save(world, buf);
+
+		PhysicsWorld copy = new PhysicsWorld(world.size());
+		copy.setVelocity(3, 5, 5, 5);
+		buf.flip();
+		WorldSnapshot.restore(buf, copy);
+
+		// A shot fast enough to be split into sub-steps
+		world.setVelocity(0, 1.5, 0.3, 0.1);
+		copy.setVelocity(0, 1.5, 0.3, 0.1);
+		world.step();
+		copy.step();
+		assertTrue(copy.getSubstepCount() > 1);
+		for (int n = 1; n < 2000; n++) {
+			world.step();
+			copy.step();
+		}
+		assertSameState(world, copy);
+
+		// Restoring rewinds a world in place
+		buf.flip();
+		WorldSnapshot.restore(buf, world);
+		buf.flip();
+		WorldSnapshot.restore(buf, copy);
+		world.step();
+		copy.step();
+		assertSameState(world, copy);
+	}
+
+	@Test
+	public void testRejectsBadSnapshots() {
+		PhysicsWorld world = broken();
+		ByteBuffer buf = ByteBuffer.allocate(WorldSnapshot.bytes(world.size()));
+		WorldSnapshot.save(world, buf);
+		buf.flip();
+
+		try {
+			WorldSnapshot.restore(buf, new PhysicsWorld(world.size() - 1));
+			fail("Restored into a world of a different size");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		assertEquals(0, buf.position());
+
+		buf.order(ByteOrder.LITTLE_ENDIAN).putInt(4, 1);
+		try {
+			WorldSnapshot.restore(buf, new PhysicsWorld(world.size()));
+			fail("Restored a snapshot of an older version");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		buf.putInt(0, 0);
+		try {
+			WorldSnapshot.restore(buf, new PhysicsWorld(world.size()));
+			fail("Restored a buffer without a snapshot");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		try {
+			WorldSnapshot.save(world, ByteBuffer.allocate(100));
+			fail("Saved into a buffer that was too small");
+		} catch (BufferOverflowException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testRejectsInconsistentAwakeBalls() {
+		PhysicsWorld world = broken();
+		world.setVelocity(3, 0.5, 0, 0);
+		world.setVelocity(5, 0, 0.5, 0);
+		assertEquals(2, world.getAwakeCount());
+		int n = world.size();
+		ByteBuffer buf = ByteBuffer.allocate(WorldSnapshot.bytes(n))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		WorldSnapshot.save(world, buf);
+		int rest = WorldSnapshot.HEADER_BYTES + 10*8*n;
+		int wake = rest + 4*n;
+
+		// Out of range, repeated, and a sleeping ball in place of an awake one
+		int[][] edits = { { wake, n }, { wake, -1 }, { wake + 4, 3 },
+				{ wake + 4, 7 } };
+		for (int[] edit : edits) {
+			ByteBuffer bad = ByteBuffer.allocate(buf.capacity())
+					.order(ByteOrder.LITTLE_ENDIAN);
+			bad.put(buf.array()).flip();
+			bad.putInt(edit[0], edit[1]);
+			assertRejectedAndUnchanged(bad, world);
+		}
+
+		// An awake ball that has been at rest too long
+		ByteBuffer bad = ByteBuffer.allocate(buf.capacity())
+				.order(ByteOrder.LITTLE_ENDIAN);
+		bad.put(buf.array()).flip();
+		bad.putInt(rest + 4*7, 0);
+		assertRejectedAndUnchanged(bad, world);
+
+		// A ball that was hit at rest stays awake
+		world.vx[7] = 0.5;
+		world.wake(7);
+		world.restSteps[7] = PhysicsWorld.SLEEP_STEPS;
+		buf.clear();
+		WorldSnapshot.save(world, buf);
+		buf.flip();
+		PhysicsWorld copy = new PhysicsWorld(n);
+		WorldSnapshot.restore(buf, copy);
+		assertFalse(copy.isAsleep(7));
+		assertTrue(copy.isAsleep(8));
+		assertEquals(3, copy.getAwakeCount());
+	}
+
+	private static void assertRejectedAndUnchanged(ByteBuffer bad,
+			PhysicsWorld original) {
+		PhysicsWorld world = new PhysicsWorld(original.size());
+		world.setVelocity(1, 0, 0, 1);
+		try {
+			WorldSnapshot.restore(bad, world);
+			fail("Restored an inconsistent snapshot");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		assertEquals(0, bad.position());
+		assertEquals(original.size(), world.getAwakeCount());
+		for (int i = 0; i < world.size(); i++) {
+			assertFalse(world.isAsleep(i));
+		}
+		assertEquals(1.0, world.vz[1], 0.0);
+	}
+
+}
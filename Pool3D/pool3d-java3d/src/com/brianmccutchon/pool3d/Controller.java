@@ -0,0 +1,367 @@
+package com.brianmccutchon.pool3d;
+
+import static java.awt.event.KeyEvent.*;
+
+import java.awt.Component;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+import javax.media.j3d.*;
+import javax.swing.SwingUtilities;
+import javax.vecmath.*;
+
+public class Controller {
+	private static final double MOVE_SPEED = 0.5;
+
+	private static final double ROT_SPEED = 0.02;
+
+	/** The number of shots simulated in each round of a shot search. **/
+	private static final int SEARCH_SAMPLES = 2000;
+
+	/** The number of rounds in a shot search. **/
+	private static final int SEARCH_ROUNDS = 6;
+
+	/**
+	 * The translation of the camera from the ball when {@link #camDeg1} and
+	 * {@link #camDeg2} are both zero.
+	 */
+	private static final Vector3d SHOOTING_TRANS = new Vector3d(0, 0, -6);
+
+	/**
+	 * The number of key codes that can have handlers. Keys with larger codes
+	 * are ignored.
+	 */
+	private static final int KEY_CODES = 256;
+
+	/**
+	 * Holds the keys that are currently being pressed, one bit per key code.
+	 */
+	private final long[] keysDown = new long[KEY_CODES / 64];
+
+	/** Key handlers for the moving mode, indexed by key code. **/
+	private final Runnable[] moveHandlers  = new Runnable[KEY_CODES];
+
+	/** Key handlers for the shooting mode, indexed by key code. **/
+	private final Runnable[] shootHandlers = new Runnable[KEY_CODES];
+
+	private TransformGroup cam;
+	private Matrix3d       camRotMat;
+	private Transform3D    camTransform;
+	private Pool3D pool;
+
+	/** The frames from which the position of the cue ball is read. **/
+	private final TripleBuffer<RenderFrame> frames;
+
+	/** The search suggesting a shot, or null if there is none. **/
+	private ShotSearch search;
+
+	/** The speed of the next shot. **/
+	private double shotPower = 1;
+
+	/** The center of the cue ball, read from the simulation. **/
+	private final double[] cuePosition = new double[3];
+
+	/** Reused when moving the camera, so that doing so allocates nothing. **/
+	private final Vector3d    scratchVec   = new Vector3d();
+	private final Vector3d    scratchCue   = new Vector3d();
+	private final Transform3D scratchTrans = new Transform3D();
+	private final Matrix3d    scratchRot   = new Matrix3d();
+	private final Matrix3d    scratchTilt  = new Matrix3d();
+
+	/**
+	 * The camera's first degree of freedom, a rotation around the y axis.
+	 * This only applies in shooting mode.
+	 */
+	public double camDeg1 = 0.0;
+
+	/**
+	 * The camera's second degree of freedom, a rotation towards the y axis.
+	 * This only applies in shooting mode.
+	 */
+	public double camDeg2 = 0.0;
+
+	public Controller(Pool3D pool, Component comp, TransformGroup camera) {
+		this.pool = pool;
+		frames = pool.sim.subscribe();
+		cam = camera;
+		camTransform = new Transform3D();
+		cam.getTransform(camTransform);
+		camRotMat    = new Matrix3d();
+		camTransform.getRotationScale(camRotMat);
+
+		moveHandlers[VK_RIGHT]  = this::rotateRight;
+		moveHandlers[VK_LEFT]   = this::rotateLeft;
+		moveHandlers[VK_DOWN]   = this::moveBackward;
+		moveHandlers[VK_UP]     = this::moveForward;
+		moveHandlers[VK_S]      = this::moveDown;
+		moveHandlers[VK_W]      = this::moveUp;
+		moveHandlers[VK_D]      = this::moveRight;
+		moveHandlers[VK_A]      = this::moveLeft;
+
+		shootHandlers[VK_RIGHT] = this::rotateRightShooting;
+		shootHandlers[VK_D]     = this::rotateRightShooting;
+		shootHandlers[VK_LEFT]  = this::rotateLeftShooting;
+		shootHandlers[VK_A]     = this::rotateLeftShooting;
+		shootHandlers[VK_DOWN]  = this::rotateDownShooting;
+		shootHandlers[VK_S]     = this::rotateDownShooting;
+		shootHandlers[VK_UP]    = this::rotateUpShooting;
+		shootHandlers[VK_W]     = this::rotateUpShooting;
+		shootHandlers[VK_SPACE] = this::shoot;
+
+		comp.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent ke) {
+				int code = ke.getKeyCode();
+
+				if (code == KeyEvent.VK_Q) {
+					switchMode();
+				} else if (code == KeyEvent.VK_H && pool.shooting) {
+					suggestShot();
+				} else if (code == KeyEvent.VK_F3) {
+					pool.toggleMetrics();
+				}
+
+				if (code >= 0 && code < KEY_CODES) {
+					keysDown[code >>> 6] |= 1L << code;
+				}
+			}
+
+			@Override
+			public void keyReleased(KeyEvent ke) {
+				int code = ke.getKeyCode();
+				if (code >= 0 && code < KEY_CODES) {
+					keysDown[code >>> 6] &= ~(1L << code);
+				}
+			}
+		});
+	}
+
+	/** Runs the handler of each key being pressed, in order of key code. **/
+	public void processEvents() {
+		Runnable[] handlers = pool.shooting ? shootHandlers : moveHandlers;
+
+		for (int w = 0; w < keysDown.length; w++) {
+			long bits = keysDown[w];
+			while (bits != 0) {
+				int code = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				Runnable handler = handlers[code];
+				if (handler != null) {
+					handler.run();
+				}
+			}
+		}
+	}
+
+	void switchMode() {
+		// Can't switch to shooting mode when balls are moving
+		if (pool.sim.ballsAreMoving()) {
+			return;
+		}
+
+		cancelSearch();
+		pool.shooting = !pool.shooting;
+
+		if (pool.shooting) {
+			camDeg1 = 0;
+			camDeg2 = 0;
+			applyShootingRotation();
+		}
+	}
+
+	void shoot() {
+		Vector3d translation = new Vector3d();
+		camTransform.get(translation);
+		frames.acquire().position(pool.balls[0].slot, 1, cuePosition);
+		Vector3d velocity = new Vector3d(cuePosition);
+		velocity.sub(translation);
+		velocity.normalize();
+		velocity.scale(shotPower);
+		int cue = pool.balls[0].slot;
+		pool.sim.submit(w ->
+				w.setVelocity(cue, velocity.x, velocity.y, velocity.z));
+		pool.shooting = false;
+		cancelSearch();
+		shotPower = 1;
+	}
+
+	/**
+	 * Starts searching for a good shot in the background. The camera is
+	 * aimed at each better shot as it is found, until the player shoots,
+	 * aims by hand, or leaves shooting mode.
+	 */
+	void suggestShot() {
+		cancelSearch();
+		int cue = pool.balls[0].slot;
+		// The world belongs to the simulation thread, so copy it there
+		pool.sim.submit(w -> {
+			ShotSearch s = new ShotSearch(w, cue, ShotSearch.SPREAD);
+			SwingUtilities.invokeLater(() -> startSearch(s));
+		});
+	}
+
+	private void startSearch(ShotSearch s) {
+		if (!pool.shooting || search != null) {
+			return;
+		}
+		search = s;
+		s.start(SEARCH_SAMPLES, SEARCH_ROUNDS, System.nanoTime(), shot ->
+				SwingUtilities.invokeLater(() -> {
+					if (search == s) {
+						aim(shot);
+					}
+				}));
+	}
+
+	/** Aims the camera, and the next shot, at a suggested shot. **/
+	private void aim(ShotSearch.Shot shot) {
+		camDeg1   = shot.deg1;
+		camDeg2   = shot.deg2;
+		shotPower = shot.power;
+		applyShootingRotation();
+	}
+
+	private void cancelSearch() {
+		if (search != null) {
+			search.cancel();
+			search = null;
+		}
+	}
+
+	void moveForward() {
+		moveBy(0, 0, -MOVE_SPEED);
+	}
+
+	void moveBackward() {
+		moveBy(0, 0,  MOVE_SPEED);
+	}
+
+	void moveLeft() {
+		moveBy(-MOVE_SPEED, 0, 0);
+	}
+
+	void moveRight() {
+		moveBy( MOVE_SPEED, 0, 0);
+	}
+
+	void moveUp() {
+		moveBy(0,  MOVE_SPEED, 0);
+	}
+
+	void moveDown() {
+		moveBy(0, -MOVE_SPEED, 0);
+	}
+
+	/**
+	 * Translates the camera by the vector (x, y, z) in a coordinate system
+	 * where the z axis is the camera's line of sight, y is up from the
+	 * camera's point of view, and x is to the camera's right.
+	 */
+	private void moveBy(double x, double y, double z) {
+		// Rotate the vector by the camera's rotation matrix
+		Vector3d trans = scratchVec;
+		trans.set(x, y, z);
+		vecMatMult(camRotMat, trans);
+
+		// Create a translation matrix from the vector
+		Transform3D transform = scratchTrans;
+		transform.set(trans);
+
+		// Add the new translation to the camera
+		camTransform.mul(transform);
+		cam.setTransform(camTransform);
+	}
+
+	/**
+	 * Sets v to m*v.
+	 * @param m A matrix
+	 * @param v A vector
+	 */
+	private void vecMatMult(Matrix3d m, Vector3d v) {
+		v.set(
+			v.x*m.m00 + v.y*m.m01 + v.z*m.m02,
+			v.x*m.m10 + v.y*m.m11 + v.z*m.m12,
+			v.x*m.m20 + v.y*m.m21 + v.z*m.m22);
+	}
+
+	void rotateLeft() {
+		rotateRight(-ROT_SPEED);
+	}
+
+	void rotateRight() {
+		rotateRight(ROT_SPEED);
+	}
+
+	void rotateRight(double angle) {
+		Transform3D trans = scratchTrans;
+		trans.rotY(-angle);
+
+		camTransform.mul(trans);
+		cam.setTransform(camTransform);
+	}
+
+	void rotateLeftShooting() {
+		rotateRightShooting(-ROT_SPEED);
+	}
+
+	void rotateRightShooting() {
+		rotateRightShooting(ROT_SPEED);
+	}
+
+	void rotateRightShooting(double angle) {
+		aimByHand();
+		camDeg1 = (camDeg1 + angle) % (Math.PI * 2);
+		applyShootingRotation();
+	}
+
+	/** Stops following a suggested shot. **/
+	private void aimByHand() {
+		cancelSearch();
+		shotPower = 1;
+	}
+
+	private void applyShootingRotation() {
+		Matrix3d rot = scratchRot;
+		rot.rotY(camDeg1);
+		Matrix3d temp = scratchTilt;
+		temp.rotX(camDeg2);
+		rot.mul(temp);
+		rotateAroundCue(rot);
+	}
+
+	void rotateAroundCue(Matrix3d rot) {
+		// Rotate the camera around the cue ball
+		// Get the translational component of the camera's transform
+		Vector3d translateVec = scratchVec;
+		translateVec.set(SHOOTING_TRANS);
+
+		// Rotate the vector
+		vecMatMult(rot, translateVec);
+
+		translateVec.negate();
+
+		// Add the cue ball back
+		frames.acquire().position(pool.balls[0].slot, 1, cuePosition);
+		scratchCue.set(cuePosition);
+		translateVec.add(scratchCue);
+
+		// Set the camera's transform to the rotation and translation
+		camTransform.set(rot, translateVec, 1);
+		cam.setTransform(camTransform);
+	}
+
+	void rotateDownShooting() {
+		rotateUpShooting(-ROT_SPEED);
+	}
+
+	void rotateUpShooting() {
+		rotateUpShooting(ROT_SPEED);
+	}
+
+	void rotateUpShooting(double angle) {
+		aimByHand();
+		camDeg2 = (camDeg2 - angle) % (Math.PI * 2);
+		applyShootingRotation();
+	}
+
+}
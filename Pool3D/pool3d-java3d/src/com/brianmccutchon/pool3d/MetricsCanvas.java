@@ -0,0 +1,79 @@
+package com.brianmccutchon.pool3d;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GraphicsConfiguration;
+
+import javax.media.j3d.Canvas3D;
+import javax.media.j3d.J3DGraphics2D;
+
+/**
+ * A canvas that can draw a {@link FrameMetrics} over the scene, as a few
+ * lines of text in its top left corner. The text is only rebuilt a few
+ * times a second, so that the overlay costs little and can be read.
+ *
+ * @author Brian McCutchon
+ */
+public class MetricsCanvas extends Canvas3D {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The time between updates of the text, in nanoseconds. **/
+	private static final long REFRESH_NANOS = 250_000_000;
+
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+	/** The color behind the text, so that it can be read over the balls. **/
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+	private final FrameMetrics metrics;
+
+	private volatile boolean showing;
+
+	/** The lines of text drawn, and when they were built. **/
+	private String[] lines = new String[0];
+	private long linesTime;
+
+	/** Constructs a canvas drawing the given metrics, which starts hidden. **/
+	public MetricsCanvas(GraphicsConfiguration config, FrameMetrics metrics) {
+		super(config);
+		this.metrics = metrics;
+	}
+
+	/** Shows the metrics if they are hidden, or hides them if they are shown. **/
+	public void toggleMetrics() {
+		showing = !showing;
+	}
+
+	/** Draws the metrics, if they are shown, over the rendered scene. **/
+	@Override
+	public void postRender() {
+		if (!showing) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		if (now - linesTime >= REFRESH_NANOS) {
+			lines = metrics.toString().split("\\R");
+			linesTime = now;
+		}
+
+		J3DGraphics2D g = getGraphics2D();
+		g.setFont(FONT);
+		FontMetrics fm = g.getFontMetrics();
+		int width = 0;
+		for (String line : lines) {
+			width = Math.max(width, fm.stringWidth(line));
+		}
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, width + 8, fm.getHeight() * lines.length + 8);
+		g.setColor(Color.WHITE);
+		for (int l = 0; l < lines.length; l++) {
+			g.drawString(lines[l], 4,
+					4 + fm.getHeight() * (l + 1) - fm.getDescent());
+		}
+		g.flush(false);
+	}
+
+}
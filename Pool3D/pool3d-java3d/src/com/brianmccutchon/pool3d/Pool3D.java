@@ -0,0 +1,512 @@
+package com.brianmccutchon.pool3d;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.media.j3d.*;
+import javax.swing.*;
+import javax.vecmath.*;
+
+import com.sun.j3d.utils.geometry.*;
+import com.sun.j3d.utils.universe.*;
+
+import static com.brianmccutchon.pool3d.Physics.*;
+
+/**
+ * This class represents the main class and GUI of 3D pool.
+ * Currently, the game has two modes, shooting and not shooting, as
+ * represented by {@link #shooting}. Each has its own set of event handlers.
+ *
+ * @author Brian McCutchon
+ */
+public class Pool3D {
+
+	/** {@code true} iff we are in shooting mode **/
+	boolean shooting = false;
+
+	/** Timer for handling input. **/
+	private Timer t;
+
+	/** The table being simulated. **/
+	final PhysicsWorld world = new PhysicsWorld(16);
+
+	/**
+	 * The pool balls, in order of their ball numbers.
+	 * balls[0] is the cue ball,
+	 * balls[1] is the 1 ball,
+	 * ...
+	 */
+	final PoolBall[] balls = PoolBall.rack(world);
+
+	/** Steps {@link #world}, which belongs to it once it has started. **/
+	final SimulationThread sim = new SimulationThread(world);
+
+	private HashMap<PoolBall, TransformGroup> ballsToSpheres = new HashMap<>();
+
+	/** Times each phase of a frame. **/
+	final FrameMetrics metrics = sim.getMetrics();
+
+	/** The canvas the game is drawn on, which can show {@link #metrics}. **/
+	private MetricsCanvas canvas;
+
+	/** The frames drawn by {@link #updateGraphics()}. **/
+	private final TripleBuffer<RenderFrame> frames = sim.subscribe();
+
+	/** Reused by {@link #updateGraphics()} so that it allocates nothing. **/
+	private final double[]    framePosition = new double[3];
+	private final double[]    frameRotation = new double[4];
+	private final Transform3D ballTransform = new Transform3D();
+	private final Quat4d      ballRotation  = new Quat4d();
+	private final Vector3d    ballPosition  = new Vector3d();
+
+	/** The side of each ball's tile in the texture atlas. **/
+	static final int TEXTURE_TILE = 1 << 9;
+
+	/** The gutter around each ball's texture in its tile. **/
+	static final int TEXTURE_GUTTER = 1 << 4;
+
+	/**
+	 * The height of the ball textures, which are twice as wide. Their left
+	 * halves just fill the tiles of the atlas, within the gutters.
+	 */
+	static final int TEXTURE_HEIGHT = TEXTURE_TILE - 2*TEXTURE_GUTTER;
+
+	/** Supplies the ball textures, painting them only on the first run. **/
+	private final TextureCache textures =
+			new TextureCache(TextureCache.defaultDirectory(), TEXTURE_HEIGHT);
+
+	/** The corners of the table. **/
+	static Point3d[] corners = {
+			new Point3d( TABLE_X,  TABLE_Y,  TABLE_Z),
+			new Point3d( TABLE_X,  TABLE_Y, -TABLE_Z),
+			new Point3d( TABLE_X, -TABLE_Y,  TABLE_Z),
+			new Point3d( TABLE_X, -TABLE_Y, -TABLE_Z),
+			new Point3d(-TABLE_X,  TABLE_Y,  TABLE_Z),
+			new Point3d(-TABLE_X,  TABLE_Y, -TABLE_Z),
+			new Point3d(-TABLE_X, -TABLE_Y,  TABLE_Z),
+			new Point3d(-TABLE_X, -TABLE_Y, -TABLE_Z),
+	};
+
+	// Divide each of the points above by two here so that we don't have to
+	// have "/2" 24 times and the code looks cleaner
+	static {
+		Arrays.asList(corners).forEach(p -> {
+			p.x /= 2;
+			p.y /= 2;
+			p.z /= 2;
+		});
+	}
+
+	Controller controls;
+
+	/**
+	 * The vertices of each of the triangles as indices into {@link #corners}.
+	 */
+	static int[][] triangles = {
+			{ 0, 1, 3 }, { 0, 3, 2 },
+			{ 4, 7, 5 }, { 4, 6, 7 },
+			{ 0, 5, 1 }, { 0, 4, 5 },
+			{ 2, 3, 7 }, { 2, 7, 6 },
+			{ 1, 7, 3 }, { 1, 5, 7 },
+			{ 0, 2, 6 }, { 0, 6, 4 },
+	};
+
+	/** Constructs a new Pool3D JFrame and starts the game. **/
+	public Pool3D() {
+		try {
+			init(null);
+		} catch (IOException e) {
+			throw new AssertionError(e); // Nothing is written
+		}
+	}
+
+	/**
+	 * Constructs a new Pool3D JFrame and starts the game, recording every
+	 * frame of it to a replay file.
+	 *
+	 * @param replay The file to record to. It is closed when the JVM exits.
+	 */
+	public Pool3D(Path replay) throws IOException {
+		init(replay);
+	}
+
+	private void init(Path replay) throws IOException {
+		// Set up the window as SimpleUniverse would, but with a canvas that
+		// can show the metrics
+		canvas = new MetricsCanvas(SimpleUniverse.getPreferredConfiguration(),
+				metrics);
+		canvas.setFocusable(true);
+		JFrame frame = new JFrame();
+		frame.getContentPane().setLayout(new BorderLayout());
+		frame.getContentPane().add(canvas, BorderLayout.CENTER);
+		frame.setSize(256, 256);
+		frame.setVisible(true);
+
+		SimpleUniverse univ = new SimpleUniverse(canvas);
+		BranchGroup group = new BranchGroup();
+
+		controls = new Controller(this, univ.getCanvas(),
+				univ.getViewingPlatform().getViewPlatformTransform());
+
+		// The balls are drawn in plain colors until their textures are ready.
+		// The textures are loaded in parallel and packed into one atlas,
+		// which is then put on every ball, each showing its own tile. A ball's
+		// texture repeats halfway around, so only its left half is packed.
+		TextureAtlas atlas = new TextureAtlas(balls.length,
+				TEXTURE_TILE, TEXTURE_TILE, TEXTURE_GUTTER);
+		Appearance[] appears = new Appearance[balls.length];
+		@SuppressWarnings("unchecked")
+		CompletableFuture<BufferedImage>[] images =
+				new CompletableFuture[balls.length];
+		for (PoolBall ball : balls) {
+			Appearance appear = makeBallAppearance(ball, atlas);
+			TransformGroup ballSphere = makeBallSphere(ball, appear);
+			ballsToSpheres.put(ball, ballSphere);
+			group.addChild(ballSphere);
+
+			appears[ball.slot] = appear;
+			images[ball.slot] = textures.getAsync(ball,
+					ForkJoinPool.commonPool());
+		}
+		CompletableFuture.allOf(images).thenRun(() -> {
+			BufferedImage[] tiles = new BufferedImage[images.length];
+			for (int i = 0; i < tiles.length; i++) {
+				tiles[i] = images[i].join().getSubimage(0, 0,
+						TEXTURE_HEIGHT, TEXTURE_HEIGHT);
+			}
+			Texture tex = makeTexture(atlas.mipmap(atlas.pack(tiles)));
+			for (Appearance appear : appears) {
+				setTexture(appear, tex);
+			}
+		}).exceptionally(e -> {
+			e.printStackTrace();
+			return null;
+		});
+
+		// Add a directional light
+		DirectionalLight light1 = new DirectionalLight(
+				new Color3f(1, 1, 1),
+				new Vector3f(-4.0f, -7.0f, -3.0f));
+		light1.setInfluencingBounds(
+				new BoundingSphere(new Point3d(0, 0, 0), 100));
+		group.addChild(light1);
+
+		// Move the balls every time a frame is drawn
+		Behavior updater = new Behavior() {
+			private final WakeupCondition everyFrame =
+					new WakeupOnElapsedFrames(0);
+
+			@Override
+			public void initialize() {
+				wakeupOn(everyFrame);
+			}
+
+			@Override
+			public void processStimulus(Enumeration criteria) {
+				updateGraphics();
+				wakeupOn(everyFrame);
+			}
+		};
+		updater.setSchedulingBounds(
+				new BoundingSphere(new Point3d(0, 0, 0), 1000));
+		group.addChild(updater);
+
+		univ.getViewingPlatform().setNominalViewingTransform();
+		univ.addBranchGraph(group);
+		univ.getViewer().getView().setBackClipDistance(100);
+
+		//for (int[] tri : triangles) {
+		//	env.addTriangle(new Triangle3D(corners[tri[0]],
+		//			corners[tri[1]], corners[tri[2]], Color.GREEN));
+		//}
+
+		t = new Timer(16, (e) -> {
+			long start = System.nanoTime();
+			controls.processEvents();
+			metrics.record(FrameMetrics.Phase.INPUT, System.nanoTime() - start);
+		});
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					new ObjectName("com.brianmccutchon.pool3d:type=FrameMetrics"));
+		} catch (JMException e) {
+			// Another game in this JVM got there first
+			e.printStackTrace();
+		}
+
+		if (replay != null) {
+			ReplayRecorder recorder = new ReplayRecorder(replay, world);
+			sim.addStepListener(recorder::record);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				sim.close();
+				try {
+					recorder.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}));
+		}
+
+		sim.start();
+		t.start();
+	}
+
+	/** Shows the metrics over the game if they are hidden, or hides them. **/
+	void toggleMetrics() {
+		canvas.toggleMetrics();
+	}
+
+	/**
+	 * Draws each ball where it is at this moment, between the two latest
+	 * states of the simulation.
+	 */
+	private void updateGraphics() {
+		long start = System.nanoTime();
+		RenderFrame frame = frames.acquire();
+		double alpha = frame.alpha(System.nanoTime());
+		for (PoolBall b : balls) {
+			frame.position(b.slot, alpha, framePosition);
+			frame.orientation(b.slot, alpha, frameRotation);
+			ballRotation.set(frameRotation[1], frameRotation[2],
+					frameRotation[3], frameRotation[0]);
+			ballPosition.set(framePosition);
+			ballTransform.set(ballRotation, ballPosition, 1);
+			ballsToSpheres.get(b).setTransform(ballTransform);
+		}
+		metrics.record(FrameMetrics.Phase.RENDER, System.nanoTime() - start);
+	}
+
+	/**
+	 * Stores the rotation and translation of a ball into a transform.
+	 * @param ball The ball.
+	 * @param rot Scratch space for the ball's rotation.
+	 * @param pos Scratch space for the ball's translation.
+	 * @param out The transform to set.
+	 */
+	static void getBallTransform(PoolBall ball, Quat4d rot, Vector3d pos,
+			Transform3D out) {
+		PhysicsWorld w = ball.world;
+		int i = 4*ball.slot;
+		rot.set(w.ori[i+1], w.ori[i+2], w.ori[i+3], w.ori[i]);
+		pos.set(w.px[ball.slot], w.py[ball.slot], w.pz[ball.slot]);
+		out.set(rot, pos, 1);
+	}
+
+	/**
+	 * Starts the game.
+	 * @param args Optionally, the path of a file to record a replay to.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			new Pool3D(Paths.get(args[0]));
+		} else {
+			new Pool3D();
+		}
+	}
+
+	/**
+	 * Makes the appearance of a ball, without its texture. Until
+	 * {@link #setTexture} is called, the ball is drawn in its own color.
+	 *
+	 * @param ball The ball.
+	 * @param atlas The atlas in which the ball's texture is the tile at its
+	 *   slot.
+	 */
+	static Appearance makeBallAppearance(PoolBall ball, TextureAtlas atlas) {
+		Color3f color = new Color3f(new Color(ball.type == BallType.CUE ?
+				Color.WHITE.getRGB() : ball.hue));
+		Color3f black = new Color3f(Color.BLACK);
+
+		Appearance appear = new Appearance();
+		appear.setCapability(Appearance.ALLOW_TEXTURE_WRITE);
+
+		// Make a material so that shading can work
+		Material mat = new Material(color, black, color, black, 1);
+		mat.setCapability(Material.ALLOW_COMPONENT_WRITE);
+		appear.setMaterial(mat);
+
+		// Set the mode for the texture so that it can be shaded properly
+		TextureAttributes texAttr = new TextureAttributes();
+		texAttr.setTextureMode(TextureAttributes.MODULATE);
+		Transform3D tile = new Transform3D();
+		atlas.tileTransform(ball.slot, tile);
+		texAttr.setTextureTransform(tile);
+		appear.setTextureAttributes(texAttr);
+
+		return appear;
+	}
+
+	/**
+	 * Makes a mipmapped texture out of an atlas of ball textures.
+	 * @param levels The levels made by {@link TextureAtlas#mipmap}.
+	 */
+	static Texture makeTexture(BufferedImage[] levels) {
+		Texture2D tex = new Texture2D(Texture.MULTI_LEVEL_MIPMAP, Texture.RGB,
+				levels[0].getWidth(), levels[0].getHeight());
+		// Any lower level would blend the tiles together
+		tex.setMaximumLevel(levels.length - 1);
+		for (int l = 0; l < levels.length; l++) {
+			tex.setImage(l, new ImageComponent2D(ImageComponent.FORMAT_RGB,
+					levels[l]));
+		}
+		// Each ball's coordinates stay inside its tile
+		tex.setBoundaryModeS(Texture.CLAMP_TO_EDGE);
+		tex.setBoundaryModeT(Texture.CLAMP_TO_EDGE);
+		tex.setMinFilter(Texture.MULTI_LEVEL_LINEAR);
+		tex.setMagFilter(Texture.BASE_LEVEL_LINEAR);
+		return tex;
+	}
+
+	/**
+	 * Puts a texture on a ball made by {@link #makeBallAppearance}, and
+	 * whitens its material so that the texture shows its own colors.
+	 */
+	static void setTexture(Appearance appear, Texture tex) {
+		Material mat = appear.getMaterial();
+		mat.setAmbientColor(1, 1, 1);
+		mat.setDiffuseColor(1, 1, 1);
+		appear.setTexture(tex);
+	}
+
+	/**
+	 * The number of divisions of the sphere drawn at each level of detail,
+	 * from nearest to farthest.
+	 */
+	static final int[] LOD_DIVISIONS = { 120, 60, 30, 12 };
+
+	/**
+	 * The distances from the camera to the center of a ball at which it
+	 * switches from each level of detail to the next.
+	 */
+	static final float[] LOD_DISTANCES = { 6, 15, 35 };
+
+	/**
+	 * The geometry of a unit sphere at each level of detail, shared by all
+	 * of the balls.
+	 */
+	private static Geometry[] sphereLevels;
+
+	/** Returns {@link #sphereLevels}, tessellating the spheres if needed. **/
+	private static synchronized Geometry[] sphereLevels() {
+		if (sphereLevels == null) {
+			sphereLevels = new Geometry[LOD_DIVISIONS.length];
+			for (int l = 0; l < sphereLevels.length; l++) {
+				Sphere sphere = new Sphere(1, Primitive.GENERATE_NORMALS |
+						Primitive.GENERATE_TEXTURE_COORDS |
+						Primitive.GEOMETRY_NOT_SHARED, LOD_DIVISIONS[l]);
+				sphereLevels[l] = sphere.getShape(Sphere.BODY).getGeometry();
+				wrapTwice((TriangleStripArray) sphereLevels[l]);
+			}
+		}
+		return sphereLevels;
+	}
+
+	/**
+	 * Doubles the texture coordinates of a sphere around its axis, so that
+	 * the left half of a ball's texture, which is all that the atlas holds,
+	 * goes twice around it. Each strip of the sphere lies within a quarter
+	 * turn, and so within one of the two copies.
+	 */
+	private static void wrapTwice(TriangleStripArray strips) {
+		int[] counts = new int[strips.getNumStrips()];
+		strips.getStripVertexCounts(counts);
+		float[] coord = new float[2];
+		int start = 0;
+		for (int count : counts) {
+			float sum = 0;
+			for (int i = start; i < start + count; i++) {
+				strips.getTextureCoordinate(0, i, coord);
+				sum += coord[0];
+			}
+			float copy = (float) Math.floor(2 * sum / count);
+			for (int i = start; i < start + count; i++) {
+				strips.getTextureCoordinate(0, i, coord);
+				coord[0] = 2*coord[0] - copy;
+				strips.setTextureCoordinate(0, i, coord);
+			}
+			start += count;
+		}
+	}
+
+	static TransformGroup makeBallSphere(PoolBall ball, Appearance appear) {
+		// Create a ball out of the shared spheres, one per level of detail,
+		// and switch between them by the distance from the camera
+		Switch levels = new Switch(0);
+		levels.setCapability(Switch.ALLOW_SWITCH_WRITE);
+		for (Geometry geom : sphereLevels()) {
+			levels.addChild(new Shape3D(geom, appear));
+		}
+		DistanceLOD lod = new DistanceLOD(LOD_DISTANCES);
+		lod.addSwitch(levels);
+		lod.setSchedulingBounds(new BoundingSphere(new Point3d(0, 0, 0), 1000));
+
+		TransformGroup group = new TransformGroup();
+		group.addChild(levels);
+		group.addChild(lod);
+		group.setCapability(TransformGroup.ALLOW_TRANSFORM_WRITE);
+
+		// Set the proper translation and rotation
+		Transform3D trans = new Transform3D();
+		getBallTransform(ball, new Quat4d(), new Vector3d(), trans);
+		group.setTransform(trans);
+
+		return group;
+	}
+
+	/**
+	 * Paints the texture of a ball. Its right half repeats its left half.
+	 * @param height The height of the image, which is twice as wide.
+	 */
+	static BufferedImage makeTextureImage(PoolBall ball, int height) {
+		int width  = 2 * height;
+
+		BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = img.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.fillRect(0, 0, width, height);
+
+		if (ball.type != BallType.CUE) {
+			g.setColor(new Color(ball.hue));
+			int margin = (ball.type == BallType.STRIPE) ?
+					(int) (height / 3.5) : 0;
+			g.fillRect(0, margin, width, height - 2*margin);
+
+			drawNumber(g, ball.ballNum, width/4,   height/2, height/7);
+			drawNumber(g, ball.ballNum, width/4*3, height/2, height/7);
+		}
+
+		return img;
+	}
+
+	private static void drawNumber(Graphics2D g,
+			int number, int x, int y, int radius) {
+		g.setColor(Color.WHITE);
+		g.fillOval(x-radius, y-radius, radius*2, radius*2);
+
+		g.setColor(Color.BLACK);
+		// 100 points at the default texture height
+		g.setFont(g.getFont().deriveFont(radius * 100f / (TEXTURE_HEIGHT/7)));
+		drawStringCentered(g, Integer.toString(number), x, y);
+	}
+
+	private static void drawStringCentered(Graphics2D g,
+			String string, int x, int y) {
+		FontMetrics fm = g.getFontMetrics();
+		g.drawString(string, x - fm.stringWidth(string)/2, y -
+				(fm.getAscent() + fm.getDescent())/2 + fm.getAscent());
+	}
+
+}
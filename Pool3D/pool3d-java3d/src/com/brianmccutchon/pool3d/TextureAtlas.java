@@ -0,0 +1,191 @@
+package com.brianmccutchon.pool3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.media.j3d.Transform3D;
+import javax.vecmath.Vector3d;
+
+/**
+ * Lays out images of the same size as tiles of one larger image, so that
+ * they can share a texture. The tiles are laid out in a grid, left to right
+ * and then top to bottom, and both sides of the atlas are powers of two so
+ * that it can be mipmapped. A shape textured with a tile keeps its own
+ * texture coordinates, from 0 to 1, and is given a texture transform that
+ * maps them into its tile.
+ *
+ * <p>Each image is framed by a gutter, which repeats the image's opposite
+ * side to its left and right, since the images wrap around a sphere, and
+ * its top and bottom rows above and below it. Filtering near the edge of an
+ * image thus sees the image's own pixels and never its neighbors'. The
+ * gutter is {@code 2^k} pixels wide, so the mipmaps are made tile by tile
+ * down to level {@code k}, where it is one pixel wide; a texture made from
+ * them must not use any lower level.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class TextureAtlas {
+
+	private final int tileWidth, tileHeight;
+
+	private final int gutter;
+
+	private final int columns, rows;
+
+	private final int tiles;
+
+	/**
+	 * Constructs the layout of an atlas.
+	 * @param tiles The number of tiles.
+	 * @param tileWidth The width of each tile, including its gutter, which
+	 *   should be a power of two.
+	 * @param tileHeight The height of each tile, including its gutter, which
+	 *   should be a power of two.
+	 * @param gutter The width of the gutter on each side of an image, which
+	 *   must be a power of two and at most a quarter of each side of a tile.
+	 */
+	public TextureAtlas(int tiles, int tileWidth, int tileHeight, int gutter) {
+		if (Integer.bitCount(gutter) != 1 ||
+				4*gutter > tileWidth || 4*gutter > tileHeight) {
+			throw new IllegalArgumentException("Bad gutter: " + gutter);
+		}
+		this.tiles      = tiles;
+		this.tileWidth  = tileWidth;
+		this.tileHeight = tileHeight;
+		this.gutter     = gutter;
+
+		// Keep the atlas about square
+		int c = 1;
+		while ((long) c*tileWidth * c*tileWidth < (long) tiles*tileWidth*tileHeight) {
+			c <<= 1;
+		}
+		columns = c;
+		int r = 1;
+		while (r * columns < tiles) {
+			r <<= 1;
+		}
+		rows = r;
+	}
+
+	/** Returns the width of the atlas, in pixels. **/
+	public int getWidth() {
+		return columns * tileWidth;
+	}
+
+	/** Returns the height of the atlas, in pixels. **/
+	public int getHeight() {
+		return rows * tileHeight;
+	}
+
+	/** Returns the width of the image in each tile, without its gutter. **/
+	public int getImageWidth() {
+		return tileWidth - 2*gutter;
+	}
+
+	/** Returns the height of the image in each tile, without its gutter. **/
+	public int getImageHeight() {
+		return tileHeight - 2*gutter;
+	}
+
+	/** Returns the lowest mipmap level in which the tiles stay apart. **/
+	public int getMaxLevel() {
+		return Integer.numberOfTrailingZeros(gutter);
+	}
+
+	/**
+	 * Copies images into their tiles of a new atlas image, and fills in their
+	 * gutters.
+	 * @param images The image of each tile, all of the size given by
+	 *   {@link #getImageWidth()} and {@link #getImageHeight()}.
+	 */
+	public BufferedImage pack(BufferedImage[] images) {
+		if (images.length != tiles) {
+			throw new IllegalArgumentException("Expected " + tiles +
+					" images, got " + images.length);
+		}
+
+		int w = getImageWidth(), h = getImageHeight();
+		BufferedImage atlas = new BufferedImage(getWidth(), getHeight(),
+				BufferedImage.TYPE_INT_RGB);
+		int[] dst = ((DataBufferInt) atlas.getRaster().getDataBuffer())
+				.getData();
+		int[] row = new int[w];
+		for (int t = 0; t < tiles; t++) {
+			BufferedImage img = images[t];
+			if (img.getWidth() != w || img.getHeight() != h) {
+				throw new IllegalArgumentException("Image " + t + " is " +
+						img.getWidth() + "x" + img.getHeight());
+			}
+			int x0 = (t % columns) * tileWidth;
+			int y0 = (t / columns) * tileHeight;
+			for (int y = 0; y < tileHeight; y++) {
+				int src = Math.min(Math.max(y - gutter, 0), h - 1);
+				img.getRGB(0, src, w, 1, row, 0, w);
+				int start = (y0 + y)*getWidth() + x0;
+				System.arraycopy(row, w - gutter, dst, start, gutter);
+				System.arraycopy(row, 0, dst, start + gutter, w);
+				System.arraycopy(row, 0, dst, start + gutter + w, gutter);
+			}
+		}
+		return atlas;
+	}
+
+	/**
+	 * Makes the mipmaps of an atlas made by {@link #pack}, from level 0 down
+	 * to {@link #getMaxLevel()}. Each pixel of a level is the average of the
+	 * four pixels it covers in the one above, which all lie in the same tile.
+	 *
+	 * @return The levels, the first of which is the atlas itself.
+	 */
+	public BufferedImage[] mipmap(BufferedImage atlas) {
+		BufferedImage[] levels = new BufferedImage[getMaxLevel() + 1];
+		levels[0] = atlas;
+		for (int l = 1; l < levels.length; l++) {
+			int w = getWidth() >> l, h = getHeight() >> l;
+			levels[l] = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			int[] src = ((DataBufferInt) levels[l-1].getRaster()
+					.getDataBuffer()).getData();
+			int[] dst = ((DataBufferInt) levels[l].getRaster()
+					.getDataBuffer()).getData();
+			for (int y = 0; y < h; y++) {
+				int top = 2*y*2*w, bottom = top + 2*w;
+				for (int x = 0; x < w; x++) {
+					dst[y*w + x] = average(src[top + 2*x], src[top + 2*x + 1],
+							src[bottom + 2*x], src[bottom + 2*x + 1]);
+				}
+			}
+		}
+		return levels;
+	}
+
+	/** Averages four RGB pixels, channel by channel. **/
+	private static int average(int a, int b, int c, int d) {
+		int rgb = 0;
+		for (int shift = 0; shift < 24; shift += 8) {
+			int sum = (a >>> shift & 0xFF) + (b >>> shift & 0xFF) +
+					(c >>> shift & 0xFF) + (d >>> shift & 0xFF);
+			rgb |= (sum + 2) >> 2 << shift;
+		}
+		return rgb;
+	}
+
+	/**
+	 * Stores the texture transform that maps texture coordinates from 0 to 1
+	 * onto the image in a tile, within its gutter.
+	 *
+	 * @param tile The index of the tile.
+	 * @param out The transform to set.
+	 */
+	public void tileTransform(int tile, Transform3D out) {
+		double w = getWidth(), h = getHeight();
+		int column = tile % columns, row = tile / columns;
+
+		// Texture coordinates run upwards, while rows run downwards
+		out.setIdentity();
+		out.setScale(new Vector3d(getImageWidth() / w, getImageHeight() / h,
+				1));
+		out.setTranslation(new Vector3d((column*tileWidth + gutter) / w,
+				1 - ((row + 1)*tileHeight - gutter) / h, 0));
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.brianmccutchon.pool3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the texture images of the balls in files, so that they only have to
+ * be painted the first time the game is run. Each image is stored in a file
+ * of its own, named after everything that goes into painting it: the ball's
+ * number, color and type, and the image's size. On later runs the file is
+ * memory-mapped and its pixels are copied straight into a new image.
+ *
+ * <p>A file holds a {@value #HEADER_BYTES} byte header, then the image's RGB
+ * pixels, one big-endian int each, row by row:</p>
+ * <pre>
+ *   int    magic ({@link #MAGIC})
+ *   int    version ({@link #VERSION})
+ *   int    width
+ *   int    height
+ * </pre>
+ * <p>A file that cannot be read, or does not match, is painted again and
+ * overwritten. If the directory cannot be written to, the images are still
+ * painted; they are just not kept.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class TextureCache {
+
+	/** Identifies a cached texture: "P3DT". **/
+	static final int MAGIC = 0x50334454;
+
+	/** The version of the file layout and of the painting code. **/
+	static final int VERSION = 1;
+
+	static final int HEADER_BYTES = 16;
+
+	/** The cache used when no directory is given. **/
+	public static Path defaultDirectory() {
+		String dir = System.getProperty("pool3d.textureCache");
+		if (dir != null) {
+			return Paths.get(dir);
+		}
+		return Paths.get(System.getProperty("user.home"), ".pool3d",
+				"textures");
+	}
+
+	private final Path dir;
+
+	/** The height of the images. They are twice as wide. **/
+	private final int height;
+
+	/**
+	 * Constructs a cache.
+	 * @param dir The directory holding the files. It is created if needed.
+	 * @param height The height of the images, which are twice as wide.
+	 */
+	public TextureCache(Path dir, int height) {
+		this.dir    = dir;
+		this.height = height;
+	}
+
+	/**
+	 * Returns the texture image of a ball, reading it from the cache if it is
+	 * there, or painting it and adding it to the cache if it is not. Safe to
+	 * call from many threads at once.
+	 */
+	public BufferedImage get(PoolBall ball) {
+		Path file = file(ball);
+		if (Files.isRegularFile(file)) {
+			try {
+				BufferedImage img = read(file);
+				if (img != null) {
+					return img;
+				}
+			} catch (IOException e) {
+				// Paint it again
+			}
+		}
+
+		BufferedImage img = Pool3D.makeTextureImage(ball, height);
+		try {
+			write(file, img);
+		} catch (IOException e) {
+			System.err.println("Could not cache texture: " + e);
+		}
+		return img;
+	}
+
+	/**
+	 * Gets the texture image of a ball on an executor.
+	 * @see #get(PoolBall)
+	 */
+	public CompletableFuture<BufferedImage> getAsync(PoolBall ball,
+			Executor executor) {
+		return CompletableFuture.supplyAsync(() -> get(ball), executor);
+	}
+
+	/** Returns the file in which the image of a ball is kept. **/
+	Path file(PoolBall ball) {
+		return dir.resolve(String.format("ball%d-%06x-%s-%dx%d-v%d.rgb",
+				ball.ballNum, ball.hue & 0xFFFFFF, ball.type, 2*height, height,
+				VERSION));
+	}
+
+	/**
+	 * Reads an image from a file, or returns null if the file does not hold
+	 * an image of the right size.
+	 */
+	private BufferedImage read(Path file) throws IOException {
+		int width = 2*height;
+		try (FileChannel ch = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			if (ch.size() != HEADER_BYTES + 4L*width*height) {
+				return null;
+			}
+			MappedByteBuffer data = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+					ch.size());
+			if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION ||
+					data.getInt(8) != width || data.getInt(12) != height) {
+				return null;
+			}
+
+			BufferedImage img = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+			data.position(HEADER_BYTES);
+			data.asIntBuffer().get(pixels(img));
+			return img;
+		}
+	}
+
+	/**
+	 * Writes an image to a temporary file, then moves it into place, so that
+	 * other readers never see a file half written.
+	 */
+	private void write(Path file, BufferedImage img) throws IOException {
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, "texture", ".tmp");
+		try {
+			int[] pixels = pixels(img);
+			ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES +
+					4*pixels.length);
+			data.putInt(MAGIC);
+			data.putInt(VERSION);
+			data.putInt(img.getWidth());
+			data.putInt(img.getHeight());
+			IntBuffer body = data.asIntBuffer();
+			body.put(pixels);
+			data.rewind();
+
+			try (FileChannel ch = FileChannel.open(tmp,
+					StandardOpenOption.WRITE)) {
+				while (data.hasRemaining()) {
+					ch.write(data);
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Returns the array backing the pixels of a TYPE_INT_RGB image. **/
+	private static int[] pixels(BufferedImage img) {
+		return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+	}
+
+}
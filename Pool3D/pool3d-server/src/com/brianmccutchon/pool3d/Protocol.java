@@ -0,0 +1,79 @@
+package com.brianmccutchon.pool3d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The messages sent between a {@link SimulationServer} and its clients over
+ * TCP. Every message is an int giving the number of bytes that follow it,
+ * then a byte giving its type, then its body. Numbers are big-endian.
+ *
+ * <p>The server sends {@link #HELLO} once, then a {@link #KEY} frame, then
+ * {@link #DELTA} frames. A client that falls too far behind has its backlog
+ * dropped and is sent a new {@code KEY} frame instead. Steps in which no
+ * ball changed are not sent at all, so a table at rest costs nothing.</p>
+ *
+ * @author Brian McCutchon
+ */
+final class Protocol {
+
+	/**
+	 * Sent by the server on connecting: the number of balls (int), the
+	 * table's dimensions (three doubles), the index of the cue ball (int)
+	 * and the time between steps in nanoseconds (long).
+	 */
+	static final byte HELLO = 1;
+
+	/** A step number (long), then a {@link StateCodec} keyframe. **/
+	static final byte KEY = 2;
+
+	/** A step number (long), then a {@link StateCodec} delta frame. **/
+	static final byte DELTA = 3;
+
+	/**
+	 * Sent by a client to shoot the cue ball: its velocity (three doubles).
+	 * The server ignores it unless every ball is at rest, as
+	 * {@code Controller} does.
+	 */
+	static final byte SHOOT = 4;
+
+	/** The bytes before the body: the length and the type. **/
+	static final int HEADER_BYTES = 5;
+
+	/** The bytes of the body of a {@link #HELLO}. **/
+	static final int HELLO_BYTES = 4 + 3*8 + 4 + 8;
+
+	/** The bytes of the body of a {@link #SHOOT}. **/
+	static final int SHOOT_BYTES = 3*8;
+
+	/** The bytes of a frame's body before the {@link StateCodec} frame. **/
+	static final int STEP_BYTES = 8;
+
+	private Protocol() {
+		// Not instantiable
+	}
+
+	/**
+	 * Starts a message of a type, leaving room for its length, which
+	 * {@link #end} fills in.
+	 */
+	static void begin(ByteBuffer out, byte type) {
+		out.putInt(0);
+		out.put(type);
+	}
+
+	/** Fills in the length of the message begun at a position. **/
+	static void end(ByteBuffer out, int start) {
+		out.putInt(start, out.position() - start - 4);
+	}
+
+	/** Throws if a message's length cannot be right for its type. **/
+	static void checkLength(byte type, int length, int max)
+			throws IOException {
+		if (length < 1 || length > max) {
+			throw new IOException("Bad message length " + length +
+					" for type " + type);
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.brianmccutchon.pool3d;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Runs a {@link SimulationServer} from the command line, and reports every
+ * few seconds what it costs: the bytes sent per client per second, and the
+ * time taken by each step and by encoding it. Usage:
+ * <pre>
+ *   java -cp pool3d-server.jar:pool3d-core.jar \
+ *       com.brianmccutchon.pool3d.ServerMain [port [balls [seed]]]
+ * </pre>
+ * The table is the standard rack unless a number of balls other than 16 is
+ * given, in which case it is a close-packed {@link Racks cluster}. The cue
+ * ball is ball 0. The port defaults to {@value #DEFAULT_PORT}.
+ *
+ * @author Brian McCutchon
+ */
+public class ServerMain {
+
+	static final int DEFAULT_PORT = 7316;
+
+	/** The time between reports, in milliseconds. **/
+	private static final long REPORT_MILLIS = 5000;
+
+	public static void main(String[] args)
+			throws IOException, InterruptedException {
+		int port  = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int balls = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+		PhysicsWorld world;
+		if (balls == 16) {
+			world = new PhysicsWorld(16);
+			PoolBall.rack(world);
+		} else {
+			world = Racks.closePacked(balls, Racks.Lattice.FCC, seed);
+			world.setBroadphase(new GridBroadphase());
+		}
+
+		try (SimulationServer server = new SimulationServer(world, 0,
+				new InetSocketAddress(port))) {
+			server.start();
+			System.out.println("Serving " + balls + " balls on " +
+					server.getAddress());
+			FrameMetrics metrics = server.getSimulation().getMetrics();
+			long bytes = 0;
+			while (true) {
+				Thread.sleep(REPORT_MILLIS);
+				long sent = server.getBytesSent();
+				int clients = server.getClientCount();
+				System.out.printf("clients %d, %.1f KB/s per client, " +
+						"resyncs %d%n  step: %s%n  publish: %s%n", clients,
+						clients == 0 ? 0.0 : (sent - bytes) * 1000.0 /
+								REPORT_MILLIS / clients / 1024,
+						server.getResyncCount(),
+						metrics.get(FrameMetrics.Phase.STEP),
+						server.getPublishLatency());
+				bytes = sent;
+				metrics.reset();
+				server.getPublishLatency().reset();
+			}
+		}
+	}
+
+}
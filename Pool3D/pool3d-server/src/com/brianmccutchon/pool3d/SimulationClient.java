@@ -0,0 +1,167 @@
+package com.brianmccutchon.pool3d;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client of a {@link SimulationServer}, which keeps a copy of the server's
+ * table up to date from the frames it receives. It stands in for a remote
+ * spectator or player: it can be used to watch a table without a window,
+ * and to test and measure the stream. Its world holds the positions and
+ * orientations of the balls, to within the precision of
+ * {@link StateCodec}; it is never stepped, so velocities stay 0.
+ *
+ * <p>A client is not safe for use by several threads at once, except that
+ * one thread may {@linkplain #shoot shoot} while another receives.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class SimulationClient implements AutoCloseable {
+
+	private final SocketChannel channel;
+
+	private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_BYTES);
+
+	/** The body of the message being read. **/
+	private final ByteBuffer body;
+
+	private final StateCodec codec;
+
+	private final PhysicsWorld world;
+
+	private final int cue;
+
+	private final long stepNanos;
+
+	/** The step of the last frame received, or -1 if there is none. **/
+	private long step = -1;
+
+	private long bytesReceived;
+
+	/**
+	 * Connects to a server and reads the description of its table. The
+	 * balls are all at the origin until the first frame is
+	 * {@linkplain #receive() received}.
+	 */
+	public SimulationClient(InetSocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		try {
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			ByteBuffer hello = ByteBuffer.allocate(Protocol.HELLO_BYTES);
+			if (read(hello) != Protocol.HELLO) {
+				throw new IOException("Expected a greeting");
+			}
+			int size = hello.getInt();
+			world = new PhysicsWorld(size, hello.getDouble(),
+					hello.getDouble(), hello.getDouble());
+			cue = hello.getInt();
+			stepNanos = hello.getLong();
+			codec = new StateCodec(size);
+			body = ByteBuffer.allocate(
+					Protocol.STEP_BYTES + codec.maxFrameBytes());
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Returns the copy of the server's table. **/
+	public PhysicsWorld getWorld() {
+		return world;
+	}
+
+	/** Returns the index of the cue ball. **/
+	public int getCue() {
+		return cue;
+	}
+
+	/** Returns the time between the server's steps, in nanoseconds. **/
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	/** Returns the step of the last frame received, or -1 if there is none. **/
+	public long getStep() {
+		return step;
+	}
+
+	/** Returns the number of bytes received so far, including the greeting. **/
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Waits for the next frame and applies it to the world. Steps in which
+	 * no ball changed are not sent, so this waits for as long as the table
+	 * is at rest.
+	 *
+	 * @throws EOFException If the server closed the connection.
+	 */
+	public void receive() throws IOException {
+		byte type = read(body);
+		step = body.getLong();
+		if (type == Protocol.KEY) {
+			codec.decodeKey(body);
+		} else if (type == Protocol.DELTA) {
+			codec.decodeDelta(body);
+		} else {
+			throw new IOException("Unexpected message " + type);
+		}
+		codec.apply(world);
+	}
+
+	/**
+	 * Asks the server to shoot the cue ball with a velocity. The server
+	 * ignores the shot if any ball is moving, or if it is faster than
+	 * {@link SimulationServer#MAX_SHOT_SPEED}.
+	 */
+	public void shoot(double x, double y, double z) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(
+				Protocol.HEADER_BYTES + Protocol.SHOOT_BYTES);
+		Protocol.begin(out, Protocol.SHOOT);
+		out.putDouble(x);
+		out.putDouble(y);
+		out.putDouble(z);
+		Protocol.end(out, 0);
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads a whole message, leaving its body between the position and the
+	 * limit of a buffer, and returns its type.
+	 */
+	private byte read(ByteBuffer into) throws IOException {
+		header.clear();
+		readFully(header);
+		int length = header.getInt(0);
+		byte type = header.get(4);
+		Protocol.checkLength(type, length, 1 + into.capacity());
+		into.clear();
+		into.limit(length - 1);
+		readFully(into);
+		into.flip();
+		bytesReceived += 4 + length;
+		return type;
+	}
+
+	private void readFully(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) {
+				throw new EOFException("Server closed the connection");
+			}
+		}
+	}
+
+}
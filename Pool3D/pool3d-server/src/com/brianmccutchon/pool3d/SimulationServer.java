@@ -0,0 +1,527 @@
+package com.brianmccutchon.pool3d;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a table on a {@link SimulationThread} with no window, and streams its
+ * state to any number of clients over TCP, as described by
+ * {@link Protocol}. Clients may also shoot the cue ball. The server is the
+ * authority on the state of the table: clients only ever see what it sends.
+ *
+ * <p>After every step, the state is encoded once, by a {@link StateCodec},
+ * into a frame taken from a pool, and the same frame is queued for every
+ * client, so the cost of a step to the simulation thread hardly grows with
+ * the number of clients. A frame goes back to the pool once every client
+ * has written it, so streaming allocates nothing once the pool has grown
+ * to the frames in flight. Balls at
+ * rest cost one bit per frame, and frames in which nothing moved are not
+ * sent. One I/O thread writes the queued frames without blocking. A client
+ * that falls more than {@link #MAX_BACKLOG_BYTES} behind has its queued
+ * frames replaced by a single keyframe, rather than holding up the
+ * others.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class SimulationServer implements AutoCloseable {
+
+	/** The most bytes queued for one client before its backlog is dropped. **/
+	static final int MAX_BACKLOG_BYTES = 1 << 20;
+
+	/** The fastest that a client may shoot the cue ball. **/
+	public static final double MAX_SHOT_SPEED = 2;
+
+	/**
+	 * An encoded message, shared by the clients that it is queued for. Only
+	 * the I/O thread writes it out, and the simulation thread only refills
+	 * it once it is back in the pool.
+	 */
+	private final class Frame {
+		/** The bytes of the message, and room to spare. **/
+		ByteBuffer data = ByteBuffer.allocate(0);
+
+		/** The length of the message. **/
+		int length;
+
+		/** The number of clients that have it queued, and the publisher. **/
+		final AtomicInteger refs = new AtomicInteger();
+
+		void retain() {
+			refs.incrementAndGet();
+		}
+
+		/** Returns the frame to the pool once no one holds it. **/
+		void release() {
+			if (refs.decrementAndGet() == 0) {
+				synchronized (pool) {
+					pool.push(this);
+				}
+			}
+		}
+	}
+
+	/** A connection to one client. **/
+	private final class Client {
+		final SocketChannel channel;
+
+		SelectionKey key;
+
+		/** Partial messages read from the client. Only the I/O thread. **/
+		final ByteBuffer in =
+				ByteBuffer.allocate(Protocol.HEADER_BYTES + Protocol.SHOOT_BYTES);
+
+		/** The messages waiting to be written. Guarded by this. **/
+		final ArrayDeque<Frame> out = new ArrayDeque<>();
+
+		/** The number of bytes in {@link #out}. Guarded by this. **/
+		int queued;
+
+		/** The bytes of the first of {@link #out} written. Guarded by this. **/
+		int written;
+
+		/** Set once the connection is closed, so that streaming stops. **/
+		volatile boolean closed;
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/** Queues a message. Must hold the lock. **/
+		void enqueue(Frame message) {
+			message.retain();
+			out.add(message);
+			queued += message.length;
+		}
+
+		/**
+		 * Queues a frame, or, if too many are already queued, drops them in
+		 * favor of a keyframe. Called on the simulation thread.
+		 */
+		synchronized void send(Frame frame) {
+			if (queued + frame.length <= MAX_BACKLOG_BYTES) {
+				enqueue(frame);
+				return;
+			}
+			// Keep a message that has been partly written, so that the
+			// stream stays whole
+			int partly = written;
+			Frame head = partly > 0 ? out.poll() : null;
+			releaseAll();
+			if (head != null) {
+				out.add(head);
+				queued  = head.length;
+				written = partly;
+			}
+			Frame k = keyframe();
+			enqueue(k);
+			k.release();
+			resyncs.incrementAndGet();
+		}
+
+		/** Drops every queued message. Must hold the lock. **/
+		void releaseAll() {
+			for (Frame f; (f = out.poll()) != null; ) {
+				f.release();
+			}
+			queued  = 0;
+			written = 0;
+		}
+
+		/** Writes as much as the socket takes. Called on the I/O thread. **/
+		synchronized void write() throws IOException {
+			for (Frame head; (head = out.peek()) != null; ) {
+				ByteBuffer data = head.data;
+				data.limit(head.length).position(written);
+				int n = channel.write(data);
+				bytesSent.addAndGet(n);
+				written += n;
+				if (written < head.length) {
+					break;
+				}
+				out.poll();
+				queued -= head.length;
+				written = 0;
+				head.release();
+			}
+			key.interestOps(out.isEmpty() ? SelectionKey.OP_READ :
+					SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+
+		/** Reads and acts on commands. Called on the I/O thread. **/
+		void read() throws IOException {
+			if (channel.read(in) < 0) {
+				throw new IOException("Client disconnected");
+			}
+			in.flip();
+			while (in.remaining() >= 4) {
+				int length = in.getInt(in.position());
+				Protocol.checkLength(Protocol.SHOOT, length,
+						1 + Protocol.SHOOT_BYTES);
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+				in.getInt();
+				byte type = in.get();
+				if (type != Protocol.SHOOT ||
+						length != 1 + Protocol.SHOOT_BYTES) {
+					throw new IOException("Unexpected message " + type);
+				}
+				double x = in.getDouble(), y = in.getDouble(), z = in.getDouble();
+				sim.submit(w -> shoot(w, x, y, z));
+			}
+			in.compact();
+		}
+	}
+
+	private final int cue;
+
+	private final SimulationThread sim;
+
+	/** Encodes every step. Only the simulation thread touches it. **/
+	private final StateCodec codec;
+
+	/** Scratch space for encoding frames. Only the simulation thread. **/
+	private final ByteBuffer frame, key;
+
+	/** The number of steps taken. Only the simulation thread. **/
+	private long step;
+
+	/** The first message sent to every client, which is never released. **/
+	private final Frame hello = new Frame();
+
+	/** The frames that no client holds. Guarded by itself. **/
+	private final ArrayDeque<Frame> pool = new ArrayDeque<>();
+
+	/** The number of frames ever taken from outside the pool. **/
+	private volatile int framesAllocated;
+
+	/** The clients streamed to. Only the simulation thread touches it. **/
+	private final ArrayList<Client> streaming = new ArrayList<>();
+
+	/** The clients connected. Only the I/O thread touches it. **/
+	private final ArrayList<Client> connected = new ArrayList<>();
+
+	private final ServerSocketChannel server;
+
+	private final Selector selector;
+
+	private final Thread io;
+
+	private volatile boolean running = true;
+
+	private final AtomicInteger clientCount = new AtomicInteger();
+
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private final AtomicLong resyncs = new AtomicLong();
+
+	/** Times the encoding and queueing of each step's frame. **/
+	private final LatencyHistogram publishLatency = new LatencyHistogram();
+
+	/**
+	 * Constructs a server stepping at {@link
+	 * SimulationThread#DEFAULT_STEP_NANOS}.
+	 *
+	 * @see #SimulationServer(PhysicsWorld, int, InetSocketAddress, long)
+	 */
+	public SimulationServer(PhysicsWorld world, int cue,
+			InetSocketAddress address) throws IOException {
+		this(world, cue, address, SimulationThread.DEFAULT_STEP_NANOS);
+	}
+
+	/**
+	 * Constructs a server and starts listening. Call {@link #start()} to
+	 * start the simulation and accept clients.
+	 *
+	 * @param world The table, which belongs to the server from now on.
+	 * @param cue The index of the ball that clients may shoot.
+	 * @param address The address on which to listen. A port of 0 picks a
+	 *   free port; see {@link #getAddress()}.
+	 * @param stepNanos The time between steps, in nanoseconds.
+	 */
+	public SimulationServer(PhysicsWorld world, int cue,
+			InetSocketAddress address, long stepNanos) throws IOException {
+		this.cue = cue;
+		codec = new StateCodec(world.size());
+		frame = ByteBuffer.allocate(Protocol.HEADER_BYTES +
+				Protocol.STEP_BYTES + codec.maxFrameBytes());
+		key = ByteBuffer.allocate(frame.capacity());
+		codec.encodeKey(world, frame);
+
+		ByteBuffer h = ByteBuffer.allocate(
+				Protocol.HEADER_BYTES + Protocol.HELLO_BYTES);
+		Protocol.begin(h, Protocol.HELLO);
+		h.putInt(world.size());
+		h.putDouble(world.tableX);
+		h.putDouble(world.tableY);
+		h.putDouble(world.tableZ);
+		h.putInt(cue);
+		h.putLong(stepNanos);
+		Protocol.end(h, 0);
+		hello.data = h;
+		hello.length = h.position();
+		hello.retain();
+
+		sim = new SimulationThread(world, stepNanos);
+		sim.addStepListener(this::publish);
+
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		try {
+			server.bind(address);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+		io = new Thread(this::runIo, "SimulationServer-io");
+		io.setDaemon(true);
+	}
+
+	/** Starts the simulation and accepting clients. **/
+	public void start() {
+		sim.start();
+		io.start();
+	}
+
+	/** Returns the address on which the server is listening. **/
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) server.getLocalAddress();
+	}
+
+	/** Returns the simulation, whose metrics time every step. **/
+	public SimulationThread getSimulation() {
+		return sim;
+	}
+
+	/** Returns the number of clients connected. **/
+	public int getClientCount() {
+		return clientCount.get();
+	}
+
+	/** Returns the number of bytes sent to all clients so far. **/
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/** Returns the number of times a client's backlog has been dropped. **/
+	public long getResyncCount() {
+		return resyncs.get();
+	}
+
+	/**
+	 * Returns the number of frames allocated so far, which stops growing
+	 * once the pool holds as many as are ever in flight.
+	 */
+	int getFramesAllocated() {
+		return framesAllocated;
+	}
+
+	/**
+	 * Returns the time taken after each step to encode the frame and queue
+	 * it for every client, on the simulation thread.
+	 */
+	public LatencyHistogram getPublishLatency() {
+		return publishLatency;
+	}
+
+	/** Stops the simulation and closes every connection. **/
+	@Override
+	public void close() throws IOException {
+		running = false;
+		sim.close();
+		selector.wakeup();
+		try {
+			io.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Client c : connected) {
+			c.channel.close();
+		}
+		server.close();
+		selector.close();
+	}
+
+	/** Encodes a step and queues it for every client. **/
+	private void publish(PhysicsWorld world) {
+		long start = System.nanoTime();
+		step++;
+		frame.clear();
+		Protocol.begin(frame, Protocol.DELTA);
+		frame.putLong(step);
+		int changes = codec.encodeDelta(world, frame);
+		Protocol.end(frame, 0);
+
+		if (changes != 0 && !streaming.isEmpty()) {
+			Frame delta = take(frame);
+			for (int k = 0; k < streaming.size(); k++) {
+				Client c = streaming.get(k);
+				if (c.closed) {
+					streaming.set(k, streaming.get(streaming.size() - 1));
+					streaming.remove(streaming.size() - 1);
+					k--;
+				} else {
+					c.send(delta);
+				}
+			}
+			delta.release();
+			selector.wakeup();
+		}
+		publishLatency.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Takes a frame from the pool, or a new one if it is empty, and copies
+	 * an encoded message into it. The caller holds the frame until it
+	 * releases it. Called on the simulation thread.
+	 */
+	private Frame take(ByteBuffer message) {
+		Frame f;
+		synchronized (pool) {
+			f = pool.poll();
+		}
+		if (f == null) {
+			f = new Frame();
+			framesAllocated++;
+		}
+		int length = message.position();
+		if (f.data.capacity() < length) {
+			f.data = ByteBuffer.allocate(length);
+		}
+		f.data.clear();
+		f.data.put(message.array(), 0, length);
+		f.length = length;
+		f.retain();
+		return f;
+	}
+
+	/**
+	 * Returns a keyframe of the state last encoded, from which the next
+	 * frame can be decoded, which the caller holds. Called on the
+	 * simulation thread.
+	 */
+	private Frame keyframe() {
+		key.clear();
+		Protocol.begin(key, Protocol.KEY);
+		key.putLong(step);
+		codec.encodeState(key);
+		Protocol.end(key, 0);
+		return take(key);
+	}
+
+	/** Starts streaming to a client. Called on the simulation thread. **/
+	private void join(Client c) {
+		Frame k = keyframe();
+		synchronized (c) {
+			c.enqueue(k);
+		}
+		k.release();
+		streaming.add(c);
+		selector.wakeup();
+	}
+
+	/**
+	 * Shoots the cue ball, unless a ball is moving or the shot is too fast.
+	 * Called on the simulation thread.
+	 */
+	private void shoot(PhysicsWorld world, double x, double y, double z) {
+		if (world.ballsAreMoving() ||
+				world.vx[cue] != 0 || world.vy[cue] != 0 || world.vz[cue] != 0 ||
+				!(x*x + y*y + z*z <= MAX_SHOT_SPEED*MAX_SHOT_SPEED)) {
+			return;
+		}
+		world.setVelocity(cue, x, y, z);
+	}
+
+	private void runIo() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey k = it.next();
+					it.remove();
+					if (!k.isValid()) {
+						continue;
+					}
+					if (k.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Client c = (Client) k.attachment();
+					try {
+						if (k.isReadable()) {
+							c.read();
+						}
+					} catch (IOException e) {
+						disconnect(c);
+					}
+				}
+
+				// Write what has been queued since, without waiting to be
+				// told that there is room
+				for (int i = 0; i < connected.size(); i++) {
+					Client c = connected.get(i);
+					try {
+						c.write();
+					} catch (IOException e) {
+						disconnect(c);
+						i--;
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			if (running) {
+				System.err.println("Server stopped: " + e);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		Client c = new Client(channel);
+		c.key = channel.register(selector, SelectionKey.OP_READ, c);
+		synchronized (c) {
+			c.enqueue(hello);
+		}
+		connected.add(c);
+		clientCount.incrementAndGet();
+		sim.submit(w -> join(c));
+	}
+
+	private void disconnect(Client c) {
+		c.closed = true;
+		c.key.cancel();
+		try {
+			c.channel.close();
+		} catch (IOException e) {
+			// Already gone
+		}
+		synchronized (c) {
+			c.releaseAll();
+		}
+		connected.remove(c);
+		clientCount.decrementAndGet();
+	}
+
+}
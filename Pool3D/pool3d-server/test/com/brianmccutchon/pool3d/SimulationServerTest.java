@@ -0,0 +1,141 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimulationServerTest {
+
+	/** The largest error that quantizing a position can introduce. **/
+	private static final double POSITION_ERROR =
+			0.5 / StateCodec.POSITION_SCALE;
+
+	/** Fast steps, so that a break comes to rest in a few seconds. **/
+	private static final long STEP_NANOS = 1_000_000;
+
+	private SimulationServer server;
+
+	/** The rack that the server starts with, which is shuffled. **/
+	private PhysicsWorld rack;
+
+	@Before
+	public void setUp() throws IOException {
+		rack = new PhysicsWorld(16);
+		PoolBall.rack(rack);
+		PhysicsWorld world = new PhysicsWorld(16);
+		world.copyFrom(rack);
+		server = new SimulationServer(world, 0, new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), 0), STEP_NANOS);
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	/** Returns the rack as it is once a shot has come to rest. **/
+	private PhysicsWorld expected(double x, double y, double z) {
+		PhysicsWorld world = new PhysicsWorld(16);
+		world.copyFrom(rack);
+		// Let the balls fall asleep, as the server's have before the shot
+		for (int s = 0; s < 2*PhysicsWorld.SLEEP_STEPS; s++) {
+			world.step();
+		}
+		world.setVelocity(0, x, y, z);
+		do {
+			world.step();
+		} while (world.ballsAreMoving());
+		return world;
+	}
+
+	private static boolean matches(PhysicsWorld expected, PhysicsWorld actual) {
+		for (int i = 0; i < expected.size(); i++) {
+			if (Math.abs(expected.px[i] - actual.px[i]) > POSITION_ERROR ||
+					Math.abs(expected.py[i] - actual.py[i]) > POSITION_ERROR ||
+					Math.abs(expected.pz[i] - actual.pz[i]) > POSITION_ERROR) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Receives frames until a client's table matches another. **/
+	private static void receiveUntil(SimulationClient client,
+			PhysicsWorld expected) throws IOException {
+		do {
+			client.receive();
+		} while (!matches(expected, client.getWorld()));
+	}
+
+	@Test(timeout = 30_000)
+	public void testStream() throws Exception {
+		InetSocketAddress address = server.getAddress();
+		try (SimulationClient player = new SimulationClient(address);
+				SimulationClient spectator = new SimulationClient(address)) {
+			assertEquals(16, player.getWorld().size());
+			assertEquals(0, player.getCue());
+			assertEquals(STEP_NANOS, player.getStepNanos());
+
+			// The keyframe sent on joining holds the rack
+			player.receive();
+			spectator.receive();
+			assertTrue(matches(rack, player.getWorld()));
+			assertEquals(2, server.getClientCount());
+
+			Thread.sleep(100);
+			// Too fast, then a real shot, then one while the balls move
+			player.shoot(-50, 0, 0);
+			player.shoot(-1, 0.02, 0.01);
+			player.shoot(1, 0, 0);
+			PhysicsWorld expected = expected(-1, 0.02, 0.01);
+			receiveUntil(player, expected);
+			receiveUntil(spectator, expected);
+
+			// Nothing is sent while the table is at rest
+			long sent = server.getBytesSent();
+			Thread.sleep(100);
+			assertEquals(sent, server.getBytesSent());
+
+			// Far less than the 56 bytes per ball per step of sending the
+			// state as doubles
+			long steps = spectator.getStep();
+			assertTrue(steps > 100);
+			assertTrue(spectator.getBytesReceived() < steps * 16 * 56 / 4);
+
+			// Each step's frame is shared by both clients, and reused once
+			// they have written it
+			assertTrue(server.getFramesAllocated() < steps / 4);
+
+			// A late joiner starts from a keyframe of the current state
+			try (SimulationClient late = new SimulationClient(address)) {
+				late.receive();
+				assertTrue(matches(expected, late.getWorld()));
+				assertTrue(late.getStep() >= steps);
+			}
+		}
+	}
+
+	@Test(timeout = 10_000)
+	public void testDisconnect() throws Exception {
+		SimulationClient client = new SimulationClient(server.getAddress());
+		client.receive();
+		client.close();
+		while (server.getClientCount() != 0) {
+			Thread.sleep(10);
+		}
+		// The server carries on streaming to others
+		try (SimulationClient other = new SimulationClient(server.getAddress())) {
+			other.receive();
+			other.shoot(-1, 0.02, 0.01);
+			receiveUntil(other, expected(-1, 0.02, 0.01));
+		}
+	}
+
+}
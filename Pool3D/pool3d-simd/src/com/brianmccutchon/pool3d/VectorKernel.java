@@ -0,0 +1,162 @@
+package com.brianmccutchon.pool3d;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link StepKernel} that works on as many balls at once as the CPU's
+ * vector registers hold, using the incubating Vector API. Branches become
+ * masks: every lane computes both outcomes, and the mask picks one, so the
+ * results are exactly those of {@link ScalarKernel}. Balls left over at the
+ * end of a range are done one at a time.
+ *
+ * <p>The JVM must be started with {@code --add-modules jdk.incubator.vector}.
+ * Without it, this class fails to load, and {@link StepKernel#load()} skips
+ * it.</p>
+ *
+ * @author Brian McCutchon
+ */
+public class VectorKernel implements StepKernel {
+
+	private static final VectorSpecies<Double> SPECIES =
+			DoubleVector.SPECIES_PREFERRED;
+
+	/** Returns the number of balls done at once. **/
+	public static int lanes() {
+		return SPECIES.length();
+	}
+
+	@Override
+	public boolean integrate(double[] px, double[] py, double[] pz,
+			double[] vx, double[] vy, double[] vz, int[] restSteps,
+			double dt, int from, int to) {
+		// Broadcast once, rather than in every operation of the loop, which
+		// is then small enough for C2 to compile whole. Whatever it leaves
+		// out boxes every vector that crosses the call.
+		DoubleVector step = DoubleVector.broadcast(SPECIES, dt);
+		DoubleVector resistance =
+				DoubleVector.broadcast(SPECIES, Physics.AIR_RESISTANCE*dt);
+		DoubleVector epsilon =
+				DoubleVector.broadcast(SPECIES, Physics.MOVEMENT_EPSILON);
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		boolean moving = false;
+		int i = from;
+		for (int bound = from + SPECIES.loopBound(to - from); i < bound;
+				i += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, vx, i);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, vy, i);
+			DoubleVector z = DoubleVector.fromArray(SPECIES, vz, i);
+			VectorMask<Double> rest = x.abs().compare(LE, epsilon)
+					.and(y.abs().compare(LE, epsilon))
+					.and(z.abs().compare(LE, epsilon));
+			if (rest.allTrue()) {
+				zero.intoArray(vx, i);
+				zero.intoArray(vy, i);
+				zero.intoArray(vz, i);
+				continue;
+			}
+
+			moving = true;
+			resetRest(vx, vy, vz, restSteps, rest, i);
+			VectorMask<Double> moved = rest.not();
+			DoubleVector.fromArray(SPECIES, px, i).add(x.mul(step), moved)
+					.intoArray(px, i);
+			DoubleVector.fromArray(SPECIES, py, i).add(y.mul(step), moved)
+					.intoArray(py, i);
+			DoubleVector.fromArray(SPECIES, pz, i).add(z.mul(step), moved)
+					.intoArray(pz, i);
+			drag(x, resistance, zero).blend(zero, rest).intoArray(vx, i);
+			drag(y, resistance, zero).blend(zero, rest).intoArray(vy, i);
+			drag(z, resistance, zero).blend(zero, rest).intoArray(vz, i);
+		}
+
+		boolean any = moving;
+		for (; i < to; i++) {
+			any |= ScalarKernel.integrate(px, py, pz, vx, vy, vz, restSteps,
+					dt, i);
+		}
+		return any;
+	}
+
+	/**
+	 * Zeroes the count of steps at rest of the balls from i on that are not
+	 * at rest, before their velocities are stored. The counts are ints,
+	 * which a mask of doubles cannot select without being boxed on JDK 17,
+	 * so the mask is only tested, and the balls are checked one at a time
+	 * when it is mixed.
+	 */
+	private static void resetRest(double[] vx, double[] vy, double[] vz,
+			int[] restSteps, VectorMask<Double> rest, int i) {
+		int end = i + SPECIES.length();
+		if (!rest.anyTrue()) {
+			for (int b = i; b < end; b++) {
+				restSteps[b] = 0;
+			}
+		} else {
+			for (int b = i; b < end; b++) {
+				if (Math.abs(vx[b]) > Physics.MOVEMENT_EPSILON ||
+						Math.abs(vy[b]) > Physics.MOVEMENT_EPSILON ||
+						Math.abs(vz[b]) > Physics.MOVEMENT_EPSILON) {
+					restSteps[b] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns {@link Physics#doAirResistance} of each lane, given the air
+	 * resistance times dt. The sign is taken from the sign bit rather than a
+	 * comparison, so that -0.0 stays -0.0, as it does with
+	 * {@link Math#signum}.
+	 */
+	private static DoubleVector drag(DoubleVector v, DoubleVector resistance,
+			DoubleVector zero) {
+		DoubleVector speed = v.abs().sub(resistance).max(zero);
+		VectorMask<Double> negative = v.viewAsIntegralLanes()
+				.compare(LT, 0).cast(SPECIES);
+		return speed.blend(speed.neg(), negative);
+	}
+
+	@Override
+	public void reflect(double[] p, double[] v, double tableDim, int axis,
+			int from, int to, BounceCallback callback) {
+		double half = tableDim/2;
+		int i = from;
+		for (int bound = from + SPECIES.loopBound(to - from); i < bound;
+				i += SPECIES.length()) {
+			DoubleVector pos = DoubleVector.fromArray(SPECIES, p, i);
+			VectorMask<Double> near =
+					pos.abs().add(PoolBall.RADIUS).compare(GT, half);
+			if (!near.anyTrue()) {
+				// Most balls are nowhere near a wall
+				continue;
+			}
+
+			// Moving into the wall: the signs of the position and the
+			// velocity are equal, as Physics.hitsWall compares them
+			DoubleVector vel = DoubleVector.fromArray(SPECIES, v, i);
+			VectorMask<Double> hits = near.and(
+					pos.compare(GT, 0).and(vel.compare(GT, 0))
+					.or(pos.compare(LT, 0).and(vel.compare(LT, 0)))
+					.or(pos.compare(EQ, 0).and(vel.compare(EQ, 0))));
+			if (hits.anyTrue()) {
+				for (long bits = hits.toLong(); bits != 0; bits &= bits - 1) {
+					int b = i + Long.numberOfTrailingZeros(bits);
+					callback.bounced(b, axis, v[b]);
+				}
+				vel.lanewise(NEG, hits).intoArray(v, i);
+			}
+		}
+
+		for (; i < to; i++) {
+			if (Physics.hitsWall(p[i], v[i], tableDim)) {
+				callback.bounced(i, axis, v[i]);
+				v[i] = -v[i];
+			}
+		}
+	}
+
+}
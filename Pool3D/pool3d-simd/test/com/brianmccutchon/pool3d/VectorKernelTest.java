@@ -0,0 +1,166 @@
+package com.brianmccutchon.pool3d;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class VectorKernelTest {
+
+	/** Values around every boundary the kernels test against. **/
+	private static final double[] SPECIAL = { 0.0, -0.0,
+			Physics.MOVEMENT_EPSILON, -Physics.MOVEMENT_EPSILON,
+			Math.nextUp(Physics.MOVEMENT_EPSILON),
+			Physics.AIR_RESISTANCE, -Physics.AIR_RESISTANCE,
+			Math.nextDown(Physics.AIR_RESISTANCE), 0.002, -0.002, 0.5, -1 };
+
+	/** Returns an array mixing random values with {@link #SPECIAL} ones. **/
+	private static double[] velocities(SplittableRandom rand, int n) {
+		double[] v = new double[n];
+		for (int i = 0; i < n; i++) {
+			v[i] = rand.nextInt(3) == 0 ?
+					SPECIAL[rand.nextInt(SPECIAL.length)] :
+					(rand.nextDouble() - 0.5) * 0.02;
+		}
+		return v;
+	}
+
+	/** Asserts that two arrays hold the same bits, so that -0.0 != 0.0. **/
+	private static void assertSameBits(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("At " + i, Double.doubleToRawLongBits(expected[i]),
+					Double.doubleToRawLongBits(actual[i]));
+		}
+	}
+
+	@Test
+	public void testLoaded() {
+		assertTrue(StepKernel.load() instanceof VectorKernel);
+		assertTrue(new PhysicsWorld(1).getKernel() instanceof VectorKernel);
+	}
+
+	@Test
+	public void testIntegrate() {
+		SplittableRandom rand = new SplittableRandom(1);
+		int n = 1003;
+		double[] dts = { 1, 0.25, 1.0/3 };
+		int[][] ranges = { { 0, n }, { 3, n - 5 }, { 7, 9 } };
+		for (int r = 0; r < ranges.length; r++) {
+			int[] range = ranges[r];
+			double dt = dts[r];
+			double[][] a = new double[6][];
+			for (int k = 0; k < 3; k++) {
+				a[k] = velocities(rand, n);
+				a[k + 3] = velocities(rand, n);
+			}
+			int[] rest = rand.ints(n, 0, 20).toArray();
+
+			double[][] b = new double[6][];
+			for (int k = 0; k < 6; k++) {
+				b[k] = a[k].clone();
+			}
+			int[] restB = rest.clone();
+
+			boolean movedA = new ScalarKernel().integrate(a[0], a[1], a[2],
+					a[3], a[4], a[5], rest, dt, range[0], range[1]);
+			boolean movedB = new VectorKernel().integrate(b[0], b[1], b[2],
+					b[3], b[4], b[5], restB, dt, range[0], range[1]);
+			assertEquals(movedA, movedB);
+			for (int k = 0; k < 6; k++) {
+				assertSameBits(a[k], b[k]);
+			}
+			assertArrayEquals(rest, restB);
+		}
+	}
+
+	@Test
+	public void testIntegrateRuns() {
+		// Runs of balls that are all at rest, all moving, or mixed, so that
+		// whole vectors of each kind are seen
+		SplittableRandom rand = new SplittableRandom(3);
+		int n = 64*6 + 5;
+		double[][] a = new double[6][n];
+		for (int i = 0; i < n; i++) {
+			int run = i / 64 % 3;
+			for (int k = 3; k < 6; k++) {
+				a[k][i] = run == 0 ? Physics.MOVEMENT_EPSILON / 2 :
+						run == 1 ? 0.5 - rand.nextDouble() / 4 :
+						rand.nextBoolean() ? 0 : -0.01;
+			}
+		}
+		int[] rest = rand.ints(n, 0, 20).toArray();
+		double[][] b = new double[6][];
+		for (int k = 0; k < 6; k++) {
+			b[k] = a[k].clone();
+		}
+		int[] restB = rest.clone();
+
+		assertTrue(new ScalarKernel().integrate(a[0], a[1], a[2],
+				a[3], a[4], a[5], rest, 1, 0, n));
+		assertTrue(new VectorKernel().integrate(b[0], b[1], b[2],
+				b[3], b[4], b[5], restB, 1, 0, n));
+		for (int k = 0; k < 6; k++) {
+			assertSameBits(a[k], b[k]);
+		}
+		assertArrayEquals(rest, restB);
+	}
+
+	@Test
+	public void testIntegrateAtRest() {
+		double[] p = new double[64], v = new double[64];
+		v[63] = -Physics.MOVEMENT_EPSILON;
+		assertFalse(new VectorKernel().integrate(p, p.clone(), p.clone(),
+				v, v.clone(), v.clone(), new int[64], 1, 0, 64));
+		assertEquals(0, Double.doubleToRawLongBits(v[63]));
+	}
+
+	@Test
+	public void testReflect() {
+		SplittableRandom rand = new SplittableRandom(2);
+		int n = 517;
+		double table = 10;
+		double[] p = new double[n];
+		for (int i = 0; i < n; i++) {
+			p[i] = rand.nextInt(4) == 0 ? SPECIAL[rand.nextInt(2)] :
+					(rand.nextDouble() - 0.5) * (table - 1.5);
+		}
+		double[] v = velocities(rand, n);
+		double[] w = v.clone();
+
+		List<String> expected = new ArrayList<>(), actual = new ArrayList<>();
+		new ScalarKernel().reflect(p, v, table, 2, 1, n,
+				(i, axis, s) -> expected.add(i + " " + axis + " " + s));
+		new VectorKernel().reflect(p, w, table, 2, 1, n,
+				(i, axis, s) -> actual.add(i + " " + axis + " " + s));
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+		assertSameBits(v, w);
+	}
+
+	@Test
+	public void testWorldsMatch() {
+		PhysicsWorld a = Racks.gas(2000, 0.2, 0.3, 4);
+		PhysicsWorld b = Racks.gas(2000, 0.2, 0.3, 4);
+		a.setKernel(new ScalarKernel());
+		b.setKernel(new VectorKernel());
+		a.setBroadphase(new GridBroadphase());
+		b.setBroadphase(new GridBroadphase());
+		for (int s = 0; s < 200; s++) {
+			a.step();
+			b.step();
+			assertEquals(a.getWallBounceCount(), b.getWallBounceCount());
+			assertEquals(a.getCollisionCount(), b.getCollisionCount());
+		}
+		assertSameBits(a.px, b.px);
+		assertSameBits(a.py, b.py);
+		assertSameBits(a.pz, b.pz);
+		assertSameBits(a.vx, b.vx);
+		assertSameBits(a.vy, b.vy);
+		assertSameBits(a.vz, b.vz);
+	}
+
+}
@@ -1,11 +0,0 @@
-package com.brianmccutchon.pool3d;
-
-import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
-import org.junit.runners.Suite.SuiteClasses;
-
-@RunWith(Suite.class)
-@SuiteClasses({ PhysTest.class, PoolBallTest.class })
-public class AllTests {
-
-}